@@ -0,0 +1,25 @@
+package com.training.restApi.config;
+
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+//Caffeine caches in front of the single book/author lookups
+//size, TTL and stats are set by spring.cache.caffeine.spec in application.properties
+//cache advice wraps @Transactional, so @CacheEvict runs after the commit and a reader cannot
+//load the old row back into the cache between the eviction and the commit
+//a load that read the old row before the commit is kept out of the cache by CacheFill
+@Configuration
+@EnableCaching(order = Ordered.HIGHEST_PRECEDENCE)
+public class CacheConfig {
+
+    //isbn -> book, author reduced to its id so author changes never leave stale copies here
+    public static final String BOOKS = "books";
+
+    //id -> author
+    public static final String AUTHORS = "authors";
+
+    //isbn -> GET /books/{isbn} response body, checked against the book it was written from
+    public static final String BOOK_JSON = "bookJson";
+
+}
@@ -0,0 +1,64 @@
+package com.training.restApi.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+@Configuration
+@EnableConfigurationProperties(DataSourceProperties.class)
+public class DataSourceConfig {
+
+    //Spring Boot skips its JDBC DataSource once an R2DBC ConnectionFactory exists (the /reactive reads),
+    //JPA still needs one, built here from the same spring.datasource.* and spring.datasource.hikari.* properties
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource dataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    //Wraps the (Hikari) primary pool in ConcurrencyLimitedDataSource
+    //static, so it is registered before the DataSource bean is created
+    //ordered ahead of ReplicaConfig's routing post-processor: the permits count physical primary connections
+    //only, not the lazy routing connections handed to every transaction, nor replica connections
+    //(each replica pool has a limiter of its own, see ReplicaPool)
+    @Bean
+    @ConditionalOnProperty(name = "db.max-concurrency")
+    public static ConcurrencyLimitPostProcessor concurrencyLimitedDataSourcePostProcessor(Environment environment) {
+        return new ConcurrencyLimitPostProcessor(environment);
+    }
+
+    static class ConcurrencyLimitPostProcessor implements BeanPostProcessor, Ordered {
+
+        private Environment environment;
+
+        private ConcurrencyLimitPostProcessor(Environment environment) {
+            this.environment = environment;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (!(bean instanceof DataSource dataSource) || bean instanceof ConcurrencyLimitedDataSource) {
+                return bean;
+            }
+            int maxConcurrency = environment.getRequiredProperty("db.max-concurrency", Integer.class);
+            Duration acquireTimeout = environment.getProperty("db.acquire-timeout", Duration.class, Duration.ofSeconds(10));
+            return new ConcurrencyLimitedDataSource(dataSource, maxConcurrency, acquireTimeout);
+        }
+
+        @Override
+        public int getOrder() {
+            return Ordered.LOWEST_PRECEDENCE - 1;
+        }
+    }
+
+}
@@ -1,7 +1,16 @@
 package com.training.restApi.config;
 
+import com.training.restApi.domain.dto.AuthorDto;
+import com.training.restApi.domain.dto.BookDto;
+import com.training.restApi.domain.entities.AuthorEntity;
+import com.training.restApi.domain.entities.BookEntity;
+import com.training.restApi.mappers.Mapper;
+import com.training.restApi.mappers.mapstruct.AuthorMapStructMapper;
+import com.training.restApi.mappers.mapstruct.BookMapStructMapper;
+import org.mapstruct.factory.Mappers;
 import org.modelmapper.ModelMapper;
 import org.modelmapper.convention.MatchingStrategies;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -19,4 +28,18 @@ public class MapperConfig {
         return modelMapper;
     }
 
+    //mapper.implementation=mapstruct (default) -> compile-time generated mappers
+    //mapper.implementation=modelmapper -> reflective BookMapperImpl/AuthorMapperImpl
+    @Bean
+    @ConditionalOnProperty(name = "mapper.implementation", havingValue = "mapstruct", matchIfMissing = true)
+    public Mapper<AuthorEntity, AuthorDto> authorMapStructMapper(){
+        return Mappers.getMapper(AuthorMapStructMapper.class);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "mapper.implementation", havingValue = "mapstruct", matchIfMissing = true)
+    public Mapper<BookEntity, BookDto> bookMapStructMapper(){
+        return Mappers.getMapper(BookMapStructMapper.class);
+    }
+
 }
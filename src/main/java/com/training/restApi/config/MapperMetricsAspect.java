@@ -0,0 +1,46 @@
+package com.training.restApi.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+//Times Mapper.mapTo/mapFrom of every mapper bean (MapStruct or ModelMapper) as mapper.calls,
+//tagged with the mapper class and the method
+//a plain Timer instead of an observation, a MapStruct mapping takes less than the observation would
+@Aspect
+public class MapperMetricsAspect {
+
+    private MeterRegistry meterRegistry;
+    //mapper class -> method name -> timer, looked up without allocating on every call
+    private Map<Class<?>, Map<String, Timer>> timers = new ConcurrentHashMap<>();
+
+    public MapperMetricsAspect(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Around("execution(* com.training.restApi.mappers.Mapper+.*(..))")
+    public Object time(ProceedingJoinPoint joinPoint) throws Throwable {
+        Timer timer = timer(joinPoint.getTarget().getClass(), joinPoint.getSignature().getName());
+        long start = System.nanoTime();
+        try {
+            return joinPoint.proceed();
+        } finally {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private Timer timer(Class<?> mapper, String method) {
+        return timers.computeIfAbsent(mapper, m -> new ConcurrentHashMap<>())
+                .computeIfAbsent(method, m -> Timer.builder("mapper.calls")
+                        .description("Entity <-> DTO mapping time")
+                        .tag("mapper", mapper.getSimpleName())
+                        .tag("method", method)
+                        .register(meterRegistry));
+    }
+}
@@ -0,0 +1,146 @@
+package com.training.restApi.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+
+//Times every JDBC statement execution as jdbc.statements, tagged with the SQL verb (select, insert, ...)
+//of the write the statement makes, if any, see verb()
+//and adds it to the RequestStatements of the current request
+//only execute* is timed, reading the rows of a result set is not included
+//a JDBC batch is one execution, as it is one round trip
+//statements slower than query-guard.slow-statement are logged with their SQL and counted as jdbc.statements.slow
+public class MeteredDataSource extends DelegatingDataSource {
+
+    private static final Logger log = LoggerFactory.getLogger(MeteredDataSource.class);
+
+    //both looked up when the first statement runs, not while the DataSource bean is built
+    private ObjectProvider<MeterRegistry> meterRegistry;
+    private ObjectProvider<QueryGuardProperties> queryGuard;
+
+    //verb -> timer, a handful of entries
+    private Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private Map<String, Counter> slowCounters = new ConcurrentHashMap<>();
+    private volatile long slowStatementNanos = -1;
+
+    public MeteredDataSource(DataSource targetDataSource, ObjectProvider<MeterRegistry> meterRegistry,
+                             ObjectProvider<QueryGuardProperties> queryGuard) {
+        super(targetDataSource);
+        this.meterRegistry = meterRegistry;
+        this.queryGuard = queryGuard;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return metered(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return metered(super.getConnection(username, password));
+    }
+
+    //statements created by the connection are wrapped, everything else goes straight through
+    private Connection metered(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    Object result = invoke(connection, method, args);
+                    //createStatement, prepareStatement, prepareCall
+                    if (result instanceof Statement statement) {
+                        //prepared SQL is the first argument, a plain Statement gets it on execute
+                        return metered(statement, method.getReturnType(), firstString(args));
+                    }
+                    return result;
+                });
+    }
+
+    private Statement metered(Statement statement, Class<?> type, String preparedSql) {
+        return (Statement) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    if (!method.getName().startsWith("execute")) {
+                        return invoke(statement, method, args);
+                    }
+                    String sql = preparedSql != null ? preparedSql : firstString(args);
+                    long start = System.nanoTime();
+                    try {
+                        return invoke(statement, method, args);
+                    } finally {
+                        long nanos = System.nanoTime() - start;
+                        String verb = verb(sql);
+                        timer(verb).record(nanos, TimeUnit.NANOSECONDS);
+                        RequestStatements.record(sql, nanos);
+                        if (nanos > slowStatementNanos()) {
+                            slow(verb, sql, nanos);
+                        }
+                    }
+                });
+    }
+
+    private Timer timer(String verb) {
+        return timers.computeIfAbsent(verb, v -> Timer.builder("jdbc.statements")
+                .description("JDBC statement execution time")
+                .tag("verb", v)
+                .register(meterRegistry.getObject()));
+    }
+
+    private long slowStatementNanos() {
+        if (slowStatementNanos < 0) {
+            slowStatementNanos = queryGuard.getObject().getSlowStatement().toNanos();
+        }
+        return slowStatementNanos;
+    }
+
+    private void slow(String verb, String sql, long nanos) {
+        slowCounters.computeIfAbsent(verb, v -> Counter.builder("jdbc.statements.slow")
+                        .description("JDBC statements slower than query-guard.slow-statement")
+                        .tag("verb", v)
+                        .register(meterRegistry.getObject()))
+                .increment();
+        log.warn("Slow statement ({} ms): {}", TimeUnit.NANOSECONDS.toMillis(nanos), sql);
+    }
+
+    private static String firstString(Object[] args) {
+        return args != null && args.length > 0 && args[0] instanceof String sql ? sql : null;
+    }
+
+    //the first write in the statement, wherever it sits: a CTE (WITH ... UPDATE, WITH ... INSERT),
+    //a delta table (SELECT ... FROM OLD TABLE (DELETE ...)) or an upsert (INSERT ... ON CONFLICT DO UPDATE: insert)
+    //counts as that write, a statement without one as a select
+    //a batch of plain statements has no single SQL
+    static String verb(String sql) {
+        if (sql == null) {
+            return "batch";
+        }
+        Matcher write = ReadWriteRoutingDataSource.WRITE.matcher(sql);
+        if (write.find()) {
+            return write.group(1).split("\\s+", 2)[0].toLowerCase(Locale.ROOT);
+        }
+        String trimmed = sql.stripLeading().toLowerCase(Locale.ROOT);
+        return trimmed.startsWith("select") || trimmed.startsWith("with") ? "select" : "other";
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.training.restApi.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+//Where the time of a request goes, next to what Spring Boot records already:
+//http.server.requests        latency per endpoint (histogram buckets enabled in application.properties)
+//service.calls               @Observed on BookServiceImpl and AuthorServiceImpl, per class and method
+//mapper.calls                MapperMetricsAspect, per mapper and method
+//spring.data.repository.invocations  repository calls, recorded by Spring Boot
+//jdbc.statements             MeteredDataSource, statement execution per SQL verb
+//http.server.requests.statements / .sql  RequestStatementsFilter, statements and SQL time per request
+//hikaricp.connections.acquire          pool wait, recorded by Spring Boot for the Hikari pool
+//db.read.connections         ReplicaPool, where read-only transactions ran, with db.replicas.healthy and db.replica.lag
+//cache.gets                  hits and misses of the Caffeine caches (recordStats in the cache spec)
+//query-guard.* budgets: requests over them are logged and counted (QueryGuardProperties)
+//all of them at /actuator/prometheus
+@Configuration
+@EnableConfigurationProperties(QueryGuardProperties.class)
+public class MetricsConfig {
+
+    //static, so it is registered before the DataSource bean is created
+    //the registry is looked up when the first statement runs, not while the DataSource is built
+    @Bean
+    public static BeanPostProcessor meteredDataSourcePostProcessor(ObjectProvider<MeterRegistry> meterRegistry,
+                                                                   ObjectProvider<QueryGuardProperties> queryGuard) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof DataSource dataSource) || bean instanceof MeteredDataSource) {
+                    return bean;
+                }
+                return new MeteredDataSource(dataSource, meterRegistry, queryGuard);
+            }
+        };
+    }
+
+    @Bean
+    public RequestStatementsFilter requestStatementsFilter(MeterRegistry meterRegistry, QueryGuardProperties queryGuard) {
+        return new RequestStatementsFilter(meterRegistry, queryGuard);
+    }
+
+    @Bean
+    public MapperMetricsAspect mapperMetricsAspect(MeterRegistry meterRegistry) {
+        return new MapperMetricsAspect(meterRegistry);
+    }
+}
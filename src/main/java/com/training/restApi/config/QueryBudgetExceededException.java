@@ -0,0 +1,9 @@
+package com.training.restApi.config;
+
+//A request went over its query-guard budget while query-guard.fail-on-violation is set
+public class QueryBudgetExceededException extends RuntimeException {
+
+    public QueryBudgetExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,52 @@
+package com.training.restApi.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+//query-guard.* in application.properties, checked by RequestStatementsFilter after every request
+@Data
+@ConfigurationProperties("query-guard")
+public class QueryGuardProperties {
+
+    //defaults for every endpoint
+    private Budget budget = new Budget(50, 10, Duration.ofSeconds(1));
+
+    //uri pattern (as in the uri tag, eg. /books/{isbn}) -> budget for any method on it
+    //fields left out of an endpoint budget fall back to the defaults
+    private Map<String, Budget> endpoints = new HashMap<>();
+
+    //a single statement taking longer is logged with its SQL, inside a request or not
+    private Duration slowStatement = Duration.ofMillis(500);
+
+    //throw QueryBudgetExceededException instead of only logging, meant for the integration tests:
+    //the response is already written by then, MockMvc rethrows it and the test fails
+    private boolean failOnViolation = false;
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Budget {
+        private Integer maxStatements;
+        //the same SQL text more often than this within one request, usually an N+1
+        private Integer maxRepeats;
+        private Duration maxSqlTime;
+    }
+
+    //the endpoint budget with the gaps filled from the defaults
+    Budget budgetFor(String uri) {
+        Budget endpoint = endpoints.get(uri);
+        if (endpoint == null) {
+            return budget;
+        }
+        return new Budget(
+                endpoint.getMaxStatements() != null ? endpoint.getMaxStatements() : budget.getMaxStatements(),
+                endpoint.getMaxRepeats() != null ? endpoint.getMaxRepeats() : budget.getMaxRepeats(),
+                endpoint.getMaxSqlTime() != null ? endpoint.getMaxSqlTime() : budget.getMaxSqlTime());
+    }
+}
@@ -0,0 +1,190 @@
+package com.training.restApi.config;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+//Read-only transactions on a replica (ReplicaPool), everything else on the primary
+//read-only: @Transactional(readOnly = true) and Spring Data's own transactions around repository reads
+//the connection handed out is lazy, the real one is taken at the first statement, by then the transaction
+//has marked it read-only or not
+//a commit on the primary that changed rows makes the rest of the request, and the client's requests
+//within the sticky window, read from the primary as well (ReplicaReads)
+public class ReadWriteRoutingDataSource extends LazyConnectionDataSourceProxy {
+
+    //a statement that may change rows and return them, matched anywhere in the SQL (CTE, FINAL/OLD TABLE),
+    //group 1 is the first write of the statement
+    static final Pattern WRITE = Pattern.compile(
+            "\\b(insert\\s+into|delete\\s+from|merge\\s+into|update\\s+[\\w.\"]+\\s+set)\\b", Pattern.CASE_INSENSITIVE);
+
+    public ReadWriteRoutingDataSource(DataSource primary, ObjectProvider<ReplicaPool> replicas) {
+        super(new WriteTracking(primary));
+        setReadOnlyDataSource(new ReadOnly(primary, replicas));
+    }
+
+    private static class ReadOnly extends AbstractDataSource {
+
+        private DataSource primary;
+        //looked up when the first read-only transaction runs, not while the DataSource bean is built
+        private ObjectProvider<ReplicaPool> replicas;
+
+        private ReadOnly(DataSource primary, ObjectProvider<ReplicaPool> replicas) {
+            this.primary = primary;
+            this.replicas = replicas;
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return replicas.getObject().readConnection(primary);
+        }
+
+        //the replica pools log in with the replicas.* credentials, whatever the caller passes
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return getConnection();
+        }
+    }
+
+    //a commit after a statement that changed rows counts as a write, see ReplicaReads.wrote()
+    //a read-write transaction that changed nothing (a PATCH of a missing row) leaves the client on the replicas
+    //rows changed: the update count of executeUpdate/executeBatch, or for a write run as a query
+    //(RETURNING, FINAL TABLE) a row coming back, execute() is taken as a write unless it returned rows
+    private static class WriteTracking extends DelegatingDataSource {
+
+        private WriteTracking(DataSource primary) {
+            super(primary);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return new TrackedConnection(super.getConnection()).proxy();
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return new TrackedConnection(super.getConnection(username, password)).proxy();
+        }
+
+        private static class TrackedConnection {
+
+            private Connection connection;
+            //rows changed by the transaction in progress
+            private boolean changed;
+
+            private TrackedConnection(Connection connection) {
+                this.connection = connection;
+            }
+
+            private Connection proxy() {
+                return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                        (proxy, method, args) -> {
+                            Object result = invoke(connection, method, args);
+                            switch (method.getName()) {
+                                case "commit" -> {
+                                    if (changed) {
+                                        changed = false;
+                                        ReplicaReads.wrote();
+                                    }
+                                }
+                                case "rollback" -> {
+                                    //back to a savepoint, what was changed before it stays
+                                    if (args == null) {
+                                        changed = false;
+                                    }
+                                }
+                                default -> {
+                                    //createStatement, prepareStatement, prepareCall
+                                    if (result instanceof Statement statement) {
+                                        return tracked(statement, method.getReturnType(), firstString(args));
+                                    }
+                                }
+                            }
+                            return result;
+                        });
+            }
+
+            private Statement tracked(Statement statement, Class<?> type, String preparedSql) {
+                return (Statement) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                        (proxy, method, args) -> {
+                            Object result = invoke(statement, method, args);
+                            switch (method.getName()) {
+                                case "executeUpdate", "executeLargeUpdate" -> {
+                                    if (((Number) result).longValue() > 0) {
+                                        changedRows();
+                                    }
+                                }
+                                case "executeBatch" -> {
+                                    if (Arrays.stream((int[]) result).anyMatch(count -> count != 0)) {
+                                        changedRows();
+                                    }
+                                }
+                                case "executeLargeBatch" -> {
+                                    if (Arrays.stream((long[]) result).anyMatch(count -> count != 0)) {
+                                        changedRows();
+                                    }
+                                }
+                                case "execute" -> {
+                                    if (!((Boolean) result)) {
+                                        changedRows();
+                                    }
+                                }
+                                case "executeQuery" -> {
+                                    String sql = preparedSql != null ? preparedSql : firstString(args);
+                                    if (sql != null && WRITE.matcher(sql).find()) {
+                                        return tracked((ResultSet) result);
+                                    }
+                                }
+                                default -> {
+                                }
+                            }
+                            return result;
+                        });
+            }
+
+            //the first row of a write run as a query is a changed row
+            private ResultSet tracked(ResultSet resultSet) {
+                return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                        (proxy, method, args) -> {
+                            Object result = invoke(resultSet, method, args);
+                            if (method.getName().equals("next") && (Boolean) result) {
+                                changedRows();
+                            }
+                            return result;
+                        });
+            }
+
+            //outside a transaction the change is committed already
+            private void changedRows() throws SQLException {
+                if (connection.getAutoCommit()) {
+                    ReplicaReads.wrote();
+                } else {
+                    changed = true;
+                }
+            }
+        }
+
+        private static String firstString(Object[] args) {
+            return args != null && args.length > 0 && args[0] instanceof String sql ? sql : null;
+        }
+
+        private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+    }
+}
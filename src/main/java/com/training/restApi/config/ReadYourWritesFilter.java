@@ -0,0 +1,70 @@
+package com.training.restApi.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.WebUtils;
+
+import java.io.IOException;
+import java.time.Duration;
+
+//Read-your-writes across requests: the first write of a request sets the read-your-writes cookie,
+//the client's requests carrying it read from the primary until replicas.sticky-window has passed
+//(any instance behind the load balancer honours it), within one request ReplicaReads does it alone
+//clients that drop cookies only get the per request part
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    static final String COOKIE = "read-your-writes";
+
+    private ReplicaProperties properties;
+
+    public ReadYourWritesFilter(ReplicaProperties properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        ReplicaReads.start(sticky(request), () -> stick(response));
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            ReplicaReads.stop();
+        }
+    }
+
+    //the cookie holds the end of the window, one further out than the window itself did not come from here
+    private boolean sticky(HttpServletRequest request) {
+        Cookie cookie = WebUtils.getCookie(request, COOKIE);
+        if (cookie == null) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        try {
+            long until = Long.parseLong(cookie.getValue());
+            return until > now && until <= now + properties.getStickyWindow().toMillis();
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    //a write after the response went out (a streamed body) can't set it any more
+    private void stick(HttpServletResponse response) {
+        if (response.isCommitted()) {
+            return;
+        }
+        Duration window = properties.getStickyWindow();
+        ResponseCookie cookie = ResponseCookie.from(COOKIE, Long.toString(System.currentTimeMillis() + window.toMillis()))
+                .path("/")
+                .maxAge(window)
+                .httpOnly(true)
+                .sameSite("Lax")
+                .build();
+        response.addHeader(HttpHeaders.SET_COOKIE, cookie.toString());
+    }
+}
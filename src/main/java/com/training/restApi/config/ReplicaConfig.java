@@ -0,0 +1,67 @@
+package com.training.restApi.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import javax.sql.DataSource;
+
+//Read replicas, on once replicas.urls is set: read-only transactions go to ReplicaPool, the rest to the primary
+//the DataSource of DataSourceConfig becomes a ReadWriteRoutingDataSource over it, wrapped in turn by MeteredDataSource
+//db.max-concurrency limits the primary pool (inside the routing), each replica pool has a limit of its own:
+//every replica adds read concurrency
+//needs spring.jpa.open-in-view=false: a session held open for the whole request keeps its first connection,
+//a write after a read would land on the replica
+//the /reactive reads keep their own R2DBC connection to spring.r2dbc.url
+@Configuration
+@ConditionalOnProperty(name = "replicas.urls")
+@EnableConfigurationProperties(ReplicaProperties.class)
+public class ReplicaConfig {
+
+    //static, so it is registered before the DataSource bean is created
+    //Ordered runs it ahead of the unordered DataSource post-processor of MetricsConfig,
+    //right after the concurrency limit of DataSourceConfig (LOWEST_PRECEDENCE - 1), so it wraps the limited pool
+    //(declared with its own type, Spring reads Ordered off the return type)
+    @Bean
+    public static RoutingPostProcessor readWriteRoutingDataSourcePostProcessor(ObjectProvider<ReplicaPool> replicas) {
+        return new RoutingPostProcessor(replicas);
+    }
+
+    @Bean
+    public ReplicaPool replicaPool(ReplicaProperties properties, DataSourceProperties primary, MeterRegistry meterRegistry) {
+        return new ReplicaPool(properties, primary, meterRegistry);
+    }
+
+    @Bean
+    public ReadYourWritesFilter readYourWritesFilter(ReplicaProperties properties) {
+        return new ReadYourWritesFilter(properties);
+    }
+
+    static class RoutingPostProcessor implements BeanPostProcessor, Ordered {
+
+        private ObjectProvider<ReplicaPool> replicas;
+
+        private RoutingPostProcessor(ObjectProvider<ReplicaPool> replicas) {
+            this.replicas = replicas;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (!(bean instanceof DataSource dataSource) || bean instanceof ReadWriteRoutingDataSource) {
+                return bean;
+            }
+            return new ReadWriteRoutingDataSource(dataSource, replicas);
+        }
+
+        @Override
+        public int getOrder() {
+            return Ordered.LOWEST_PRECEDENCE;
+        }
+    }
+}
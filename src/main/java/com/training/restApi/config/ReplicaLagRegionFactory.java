@@ -0,0 +1,25 @@
+package com.training.restApi.config;
+
+import org.hibernate.cache.jcache.internal.JCacheRegionFactory;
+import org.hibernate.cache.spi.CacheTransactionSynchronization;
+import org.hibernate.cache.spi.StandardCacheTransactionSynchronization;
+import org.hibernate.cache.spi.support.SimpleTimestamper;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+
+//The JCache region factory of SecondLevelCacheConfig, for sessions reading from a replica:
+//their rows may be up to replicas.max-lag old, so what they put in the second-level and query caches
+//is dated back by max-lag, the caches then treat it as older than any write made within that time
+//(a page is not served past a later write to its tables, an author row does not replace a newer one)
+//sessions on the primary are dated as usual
+public class ReplicaLagRegionFactory extends JCacheRegionFactory {
+
+    @Override
+    public CacheTransactionSynchronization createTransactionContext(SharedSessionContractImplementor session) {
+        return new StandardCacheTransactionSynchronization(this) {
+            @Override
+            public long getCachingTimestamp() {
+                return super.getCachingTimestamp() - ReplicaReads.replicaLag().toMillis() * SimpleTimestamper.ONE_MS;
+            }
+        };
+    }
+}
@@ -0,0 +1,196 @@
+package com.training.restApi.config;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.jdbc.DatabaseDriver;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//The read replicas, one Hikari pool each, serving the read-only transactions of ReadWriteRoutingDataSource
+//round robin over the healthy ones, a replica that fails to hand out a connection is taken out on the spot
+//checkHealth() takes out the unreachable ones and those more than max-lag behind the primary,
+//and brings them back once they pass again, with no healthy replica left the reads go to the primary
+//each pool has its own ConcurrencyLimitedDataSource of maximum-pool-size permits, waited for at most
+//connection-timeout: a replica without a free permit is skipped like one that can't hand out a connection
+//db.read.connections   connections for read-only transactions, tags target (replica-N, primary) and reason
+//db.replicas.healthy   replicas in rotation
+//db.replica.lag        per replica, as of the last check
+public class ReplicaPool implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaPool.class);
+
+    //seconds since the last transaction a standby replayed, 0 when it has replayed all it received
+    //(an idle primary sends nothing, the replay time gets old without the standby falling behind)
+    //null on a server that is no standby
+    private static final String POSTGRES_LAG = "SELECT CASE WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0"
+            + " ELSE EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) END";
+
+    private ReplicaProperties properties;
+    private MeterRegistry meterRegistry;
+    private List<Replica> replicas = new ArrayList<>();
+    private AtomicInteger next = new AtomicInteger();
+
+    //target + reason -> counter, a handful of entries
+    private Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    public ReplicaPool(ReplicaProperties properties, DataSourceProperties primary, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        for (String url : properties.getUrls()) {
+            Replica replica = new Replica("replica-" + replicas.size(), pool("replica-" + replicas.size(), url, primary));
+            replicas.add(replica);
+            Gauge.builder("db.replica.lag", replica, r -> r.lagSeconds)
+                    .description("How far the replica was behind the primary at the last health check")
+                    .baseUnit("seconds")
+                    .tag("replica", replica.name)
+                    .register(meterRegistry);
+        }
+        Gauge.builder("db.replicas.healthy", replicas, all -> all.stream().filter(r -> r.healthy).count())
+                .description("Replicas serving reads")
+                .register(meterRegistry);
+    }
+
+    private HikariDataSource pool(String name, String url, DataSourceProperties primary) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName(name);
+        config.setJdbcUrl(url);
+        config.setDriverClassName(DatabaseDriver.fromJdbcUrl(url).getDriverClassName());
+        config.setUsername(properties.getUsername() != null ? properties.getUsername() : primary.determineUsername());
+        config.setPassword(properties.getPassword() != null ? properties.getPassword() : primary.determinePassword());
+        config.setMaximumPoolSize(properties.getMaximumPoolSize());
+        config.setConnectionTimeout(properties.getConnectionTimeout().toMillis());
+        config.setReadOnly(true);
+        //a replica that is down at startup is taken out, it does not keep the application from starting
+        config.setInitializationFailTimeout(-1);
+        return new HikariDataSource(config);
+    }
+
+    //a connection for a read-only transaction: from the next healthy replica, or else from primary
+    Connection readConnection(DataSource primary) throws SQLException {
+        String reason = ReplicaReads.primaryReason();
+        if (reason == null) {
+            int start = next.getAndIncrement();
+            for (int i = 0; i < replicas.size(); i++) {
+                Replica replica = replicas.get(Math.floorMod(start + i, replicas.size()));
+                if (!replica.healthy) {
+                    continue;
+                }
+                try {
+                    Connection connection = replica.limited.getConnection();
+                    count(replica.name, "replica");
+                    return onReplica(connection);
+                } catch (SQLException e) {
+                    takeOut(replica, e.getMessage());
+                }
+            }
+            reason = "no-healthy-replica";
+        }
+        count("primary", reason);
+        return primary.getConnection();
+    }
+
+    @Scheduled(fixedDelayString = "${replicas.health-check-interval:PT5S}")
+    public void checkHealth() {
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.dataSource.getConnection()) {
+                Duration lag = lag(connection);
+                replica.lagSeconds = lag.toMillis() / 1000.0;
+                if (lag.compareTo(properties.getMaxLag()) > 0) {
+                    takeOut(replica, lag + " behind the primary, max-lag " + properties.getMaxLag());
+                } else if (!replica.healthy) {
+                    replica.healthy = true;
+                    log.info("Replica {} is back in rotation", replica.name);
+                }
+            } catch (SQLException e) {
+                takeOut(replica, e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        replicas.forEach(replica -> replica.dataSource.close());
+    }
+
+    //embedded stand-ins replicate nothing, they are never behind
+    private static Duration lag(Connection connection) throws SQLException {
+        if (!connection.getMetaData().getDatabaseProductName().toLowerCase(Locale.ROOT).contains("postgresql")) {
+            return Duration.ZERO;
+        }
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(POSTGRES_LAG)) {
+            resultSet.next();
+            return Duration.ofMillis(Math.round(resultSet.getDouble(1) * 1000));
+        }
+    }
+
+    private void takeOut(Replica replica, String why) {
+        if (replica.healthy) {
+            replica.healthy = false;
+            log.warn("Replica {} taken out of rotation: {}", replica.name, why);
+        }
+    }
+
+    private void count(String target, String reason) {
+        counters.computeIfAbsent(target + " " + reason, key -> Counter.builder("db.read.connections")
+                        .description("Connections handed to read-only transactions")
+                        .tags("target", target, "reason", reason)
+                        .register(meterRegistry))
+                .increment();
+    }
+
+    //while the thread holds it, what it caches is dated back by max-lag (ReplicaLagRegionFactory)
+    private Connection onReplica(Connection connection) {
+        ReplicaReads.replicaOpened(properties.getMaxLag());
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    } finally {
+                        if (method.getName().equals("close")) {
+                            ReplicaReads.replicaClosed();
+                        }
+                    }
+                });
+    }
+
+    private class Replica {
+        private String name;
+        private HikariDataSource dataSource;
+        //for the reads, the health checks go to the pool directly
+        private DataSource limited;
+        //optimistic until the first check, a failed connection takes it out anyway
+        private volatile boolean healthy = true;
+        private volatile double lagSeconds;
+
+        private Replica(String name, HikariDataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+            this.limited = new ConcurrencyLimitedDataSource(dataSource, properties.getMaximumPoolSize(),
+                    properties.getConnectionTimeout());
+        }
+    }
+}
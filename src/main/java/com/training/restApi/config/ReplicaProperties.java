@@ -0,0 +1,31 @@
+package com.training.restApi.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+//replicas.* in application.properties, read replicas of the spring.datasource database, see ReplicaConfig
+@Data
+@ConfigurationProperties("replicas")
+public class ReplicaProperties {
+
+    //JDBC urls, one pool each, named replica-0, replica-1, ... in the order given
+    private List<String> urls = new ArrayList<>();
+
+    //those of spring.datasource when left out
+    private String username;
+    private String password;
+
+    private int maximumPoolSize = 10;
+    //short: a replica that can't hand out a connection in time is skipped and the read goes elsewhere
+    private Duration connectionTimeout = Duration.ofSeconds(1);
+
+    private Duration healthCheckInterval = Duration.ofSeconds(5);
+    //a replica further behind the primary is taken out until it catches up
+    private Duration maxLag = Duration.ofSeconds(5);
+    //how long the reads of a client that wrote stay on the primary, at least max-lag plus a health check
+    private Duration stickyWindow = Duration.ofSeconds(10);
+}
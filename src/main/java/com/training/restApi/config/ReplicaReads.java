@@ -0,0 +1,77 @@
+package com.training.restApi.config;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+//Whether the read-only transactions of the current thread may run on a replica, see ReadWriteRoutingDataSource
+//not inside onPrimary(...), and not for the rest of a request once it wrote or when its client wrote
+//within replicas.sticky-window (ReadYourWritesFilter), the replica may not have that write yet
+//outside a request only onPrimary(...) applies, eg. startup loads and scheduled jobs
+public final class ReplicaReads {
+
+    private static final ThreadLocal<ReplicaReads> REQUEST = new ThreadLocal<>();
+    private static final ThreadLocal<Integer> PINNED = ThreadLocal.withInitial(() -> 0);
+    //max-lag of the replica the thread holds a connection to, read by ReplicaLagRegionFactory
+    private static final ThreadLocal<Duration> REPLICA_LAG = new ThreadLocal<>();
+
+    private boolean sticky;
+    //called on the first write of the request, sets the cookie that keeps the client on the primary
+    private Runnable onFirstWrite;
+
+    private ReplicaReads(boolean sticky, Runnable onFirstWrite) {
+        this.sticky = sticky;
+        this.onFirstWrite = onFirstWrite;
+    }
+
+    //reads the supplier makes go to the primary, for loads whose result is cached
+    //(a replica behind the primary would put a row back in the cache that a write just evicted)
+    //and for reads that decide a write
+    public static <T> T onPrimary(Supplier<T> reads) {
+        PINNED.set(PINNED.get() + 1);
+        try {
+            return reads.get();
+        } finally {
+            PINNED.set(PINNED.get() - 1);
+        }
+    }
+
+    static void start(boolean sticky, Runnable onFirstWrite) {
+        REQUEST.set(new ReplicaReads(sticky, onFirstWrite));
+    }
+
+    static void stop() {
+        REQUEST.remove();
+    }
+
+    //a transaction of the current thread committed on the primary
+    static void wrote() {
+        ReplicaReads request = REQUEST.get();
+        if (request != null && !request.sticky) {
+            request.sticky = true;
+            request.onFirstWrite.run();
+        }
+    }
+
+    //why the next read must stay on the primary, null when a replica may serve it
+    static String primaryReason() {
+        if (PINNED.get() > 0) {
+            return "pinned";
+        }
+        ReplicaReads request = REQUEST.get();
+        return request != null && request.sticky ? "read-your-writes" : null;
+    }
+
+    static void replicaOpened(Duration maxLag) {
+        REPLICA_LAG.set(maxLag);
+    }
+
+    static void replicaClosed() {
+        REPLICA_LAG.remove();
+    }
+
+    //how far behind the primary the rows read by this thread may be, zero when it reads the primary
+    static Duration replicaLag() {
+        Duration lag = REPLICA_LAG.get();
+        return lag != null ? lag : Duration.ZERO;
+    }
+}
@@ -0,0 +1,55 @@
+package com.training.restApi.config;
+
+import java.util.HashMap;
+import java.util.Map;
+
+//Statements run by the current request thread and the time they took, see RequestStatementsFilter
+//MeteredDataSource adds to it, work handed to other threads (async responses, reactive reads) is not included
+public final class RequestStatements {
+
+    private static final ThreadLocal<RequestStatements> CURRENT = new ThreadLocal<>();
+
+    private int statements;
+    private long nanos;
+    //SQL text -> executions, the same text over and over is what an N+1 looks like
+    private Map<String, Integer> executions = new HashMap<>();
+
+    private RequestStatements() {
+    }
+
+    static RequestStatements start() {
+        RequestStatements tally = new RequestStatements();
+        CURRENT.set(tally);
+        return tally;
+    }
+
+    static void stop() {
+        CURRENT.remove();
+    }
+
+    //no-op outside a request, eg. startup loads and scheduled jobs
+    //sql is null for a batch of plain statements
+    static void record(String sql, long nanos) {
+        RequestStatements tally = CURRENT.get();
+        if (tally != null) {
+            tally.statements++;
+            tally.nanos += nanos;
+            if (sql != null) {
+                tally.executions.merge(sql, 1, Integer::sum);
+            }
+        }
+    }
+
+    public int getStatements() {
+        return statements;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    //the SQL run most often, null when there was none
+    public Map.Entry<String, Integer> getMostRepeated() {
+        return executions.entrySet().stream().max(Map.Entry.comparingByValue()).orElse(null);
+    }
+}
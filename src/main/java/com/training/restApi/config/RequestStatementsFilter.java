@@ -0,0 +1,108 @@
+package com.training.restApi.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+//Per endpoint: statements run by a request (http.server.requests.statements)
+//and their total execution time (http.server.requests.sql), next to Spring's http.server.requests latency
+//the method and uri tags match the ones of http.server.requests
+//then checks the request against its query-guard budget: too many statements, one SQL repeated too often (N+1)
+//or too much SQL time is logged and counted as http.server.requests.query-budget.exceeded (tag reason)
+public class RequestStatementsFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(RequestStatementsFilter.class);
+
+    private MeterRegistry meterRegistry;
+    private QueryGuardProperties queryGuard;
+
+    public RequestStatementsFilter(MeterRegistry meterRegistry, QueryGuardProperties queryGuard) {
+        this.meterRegistry = meterRegistry;
+        this.queryGuard = queryGuard;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        RequestStatements tally = RequestStatements.start();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            RequestStatements.stop();
+            record(request, tally);
+        }
+        check(request, tally);
+    }
+
+    private void record(HttpServletRequest request, RequestStatements tally) {
+        Tags tags = Tags.of("method", request.getMethod(), "uri", uri(request));
+        DistributionSummary.builder("http.server.requests.statements")
+                .description("JDBC statements run by one request")
+                .tags(tags)
+                .register(meterRegistry)
+                .record(tally.getStatements());
+        Timer.builder("http.server.requests.sql")
+                .description("Time one request spent executing JDBC statements")
+                .tags(tags)
+                .register(meterRegistry)
+                .record(tally.getNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    //a request that failed with an exception is not checked, the exception is already on its way
+    private void check(HttpServletRequest request, RequestStatements tally) {
+        String uri = uri(request);
+        QueryGuardProperties.Budget budget = queryGuard.budgetFor(uri);
+        String endpoint = request.getMethod() + " " + uri;
+        List<String> violations = new ArrayList<>();
+
+        if (tally.getStatements() > budget.getMaxStatements()) {
+            violations.add(violation(request, uri, "statements", endpoint + " ran " + tally.getStatements()
+                    + " statements, budget " + budget.getMaxStatements()));
+        }
+        Map.Entry<String, Integer> mostRepeated = tally.getMostRepeated();
+        if (mostRepeated != null && mostRepeated.getValue() > budget.getMaxRepeats()) {
+            violations.add(violation(request, uri, "repeated-statement", endpoint + " ran the same statement "
+                    + mostRepeated.getValue() + " times, budget " + budget.getMaxRepeats() + ": " + mostRepeated.getKey()));
+        }
+        if (tally.getNanos() > budget.getMaxSqlTime().toNanos()) {
+            violations.add(violation(request, uri, "sql-time", endpoint + " spent "
+                    + TimeUnit.NANOSECONDS.toMillis(tally.getNanos()) + " ms in SQL, budget " + budget.getMaxSqlTime()));
+        }
+
+        if (!violations.isEmpty() && queryGuard.isFailOnViolation()) {
+            throw new QueryBudgetExceededException(String.join("; ", violations));
+        }
+    }
+
+    private String violation(HttpServletRequest request, String uri, String reason, String message) {
+        Counter.builder("http.server.requests.query-budget.exceeded")
+                .description("Requests over their query-guard budget")
+                .tags("method", request.getMethod(), "uri", uri, "reason", reason)
+                .register(meterRegistry)
+                .increment();
+        log.warn("Query budget exceeded: {}", message);
+        return message;
+    }
+
+    //the mapping pattern (/books/{isbn}), never the raw path, so the number of series stays bounded
+    static String uri(HttpServletRequest request) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        return pattern != null ? pattern.toString() : "UNKNOWN";
+    }
+}
@@ -0,0 +1,11 @@
+package com.training.restApi.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+//Background jobs declared with @Scheduled, eg. the statistics reconcile in StatisticsServiceImpl
+//they run one at a time on the single thread of Spring Boot's default scheduler
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -0,0 +1,72 @@
+package com.training.restApi.config;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.spi.RegionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.net.URI;
+import java.time.Duration;
+import java.util.OptionalLong;
+import java.util.UUID;
+
+//Hibernate second-level cache, Caffeine behind JCache:
+//AuthorEntity rows (READ_WRITE), so the writes that reference an existing author (book saves, PUT /authors/{id})
+//merge it from memory instead of selecting it first,
+//and the query cache for the paged listings of GET /books and GET /authors (page and count queries),
+//a cached book page holds the rows of its books and authors, so a repeated page runs no query at all
+//a cached page is used only while no write has hit its tables since, writes through JPA are tracked
+//by Hibernate, native ones go through repositories/impl/NativeWrites
+//BookEntity is not cached here: single books are served by the "books" cache of CacheConfig already
+//regions are declared here with their size, an undeclared region fails startup (missing_cache_strategy=fail)
+//hit, miss and put counts per region: hibernate.second.level.cache.* and hibernate.cache.query.* meters
+@Configuration
+public class SecondLevelCacheConfig {
+
+    //id -> author row
+    public static final String AUTHORS = "entity.authors";
+
+    //ids (or rows, for uncached entities) of a listing page, keyed by query and parameters
+    public static final String BOOK_PAGES = "query.books";
+    public static final String AUTHOR_PAGES = "query.authors";
+
+    //Hibernate's own regions: cacheable queries without a region, and the last write time per table
+    private static final String DEFAULT_QUERIES = RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME;
+    private static final String UPDATE_TIMESTAMPS = RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME;
+
+    //one manager per application context (the provider hands out one per URI), tests run several side by side
+    @Bean(destroyMethod = "close")
+    public CacheManager secondLevelCacheManager(@Value("${second-level-cache.authors.max-size:10000}") long authorsMaxSize,
+                                                @Value("${second-level-cache.authors.ttl:1h}") Duration authorsTtl,
+                                                @Value("${second-level-cache.pages.max-size:1000}") long pagesMaxSize,
+                                                @Value("${second-level-cache.pages.ttl:10m}") Duration pagesTtl) {
+        CacheManager cacheManager = Caching.getCachingProvider(CaffeineCachingProvider.class.getName())
+                .getCacheManager(URI.create("second-level-cache-" + UUID.randomUUID()), getClass().getClassLoader());
+        cacheManager.createCache(AUTHORS, region(authorsMaxSize, authorsTtl));
+        cacheManager.createCache(BOOK_PAGES, region(pagesMaxSize, pagesTtl));
+        cacheManager.createCache(AUTHOR_PAGES, region(pagesMaxSize, pagesTtl));
+        cacheManager.createCache(DEFAULT_QUERIES, region(pagesMaxSize, pagesTtl));
+        //one entry per table, it must never lose one while query results depending on it are cached
+        cacheManager.createCache(UPDATE_TIMESTAMPS, new CaffeineConfiguration<>());
+        return cacheManager;
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer secondLevelCacheManagerCustomizer(CacheManager secondLevelCacheManager) {
+        return properties -> properties.put(ConfigSettings.CACHE_MANAGER, secondLevelCacheManager);
+    }
+
+    private static CaffeineConfiguration<Object, Object> region(long maxSize, Duration ttl) {
+        CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        configuration.setMaximumSize(OptionalLong.of(maxSize));
+        configuration.setExpireAfterWrite(OptionalLong.of(ttl.toNanos()));
+        configuration.setStatisticsEnabled(true);
+        return configuration;
+    }
+}
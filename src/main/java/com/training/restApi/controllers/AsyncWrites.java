@@ -0,0 +1,48 @@
+package com.training.restApi.controllers;
+
+import com.training.restApi.domain.WriteTicket;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Optional;
+
+//Prefer: respond-async (RFC 7240) puts a write on the write-behind queue instead of running it in the request
+//it may come with other preferences (Prefer: respond-async, wait=10), which are ignored,
+//without it the write stays synchronous, a server is free to ignore preferences
+final class AsyncWrites {
+
+    static final String PREFER = "Prefer";
+
+    private AsyncWrites() {
+    }
+
+    //the Prefer headers as Spring binds them to a List: one element per comma separated preference
+    static boolean requested(List<String> preferences) {
+        if (preferences == null) {
+            return false;
+        }
+        for (String preference : preferences) {
+            //token, then "=value" and ";parameters"
+            String token = preference.split("[=;]", 2)[0].trim();
+            if (token.equalsIgnoreCase("respond-async")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //202 with the ticket and where to follow it, 503 when the queue had no room
+    static ResponseEntity<WriteTicket> accepted(Optional<WriteTicket> ticket) {
+        return ticket
+                .map(queued -> ResponseEntity.accepted()
+                        .location(URI.create("/writes/" + queued.getId()))
+                        .header("Preference-Applied", "respond-async")
+                        .body(queued))
+                .orElse(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .header(HttpHeaders.RETRY_AFTER, "1")
+                        .build());
+    }
+}
@@ -1,18 +1,42 @@
 package com.training.restApi.controllers;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.training.restApi.domain.AuthorFilter;
+import com.training.restApi.domain.BookFilter;
+import com.training.restApi.domain.BulkItemResult;
 import com.training.restApi.domain.dto.AuthorDto;
+import com.training.restApi.domain.dto.BookDto;
+import com.training.restApi.domain.dto.CursorPageDto;
+import com.training.restApi.domain.dto.MultiGetItemDto;
 import com.training.restApi.domain.entities.AuthorEntity;
+import com.training.restApi.domain.entities.BookEntity;
 import com.training.restApi.mappers.Mapper;
 import com.training.restApi.services.AuthorService;
+import com.training.restApi.services.BookService;
+import com.training.restApi.services.WriteBehindService;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
 
 @RestController
 public class AuthorController {
@@ -21,15 +45,43 @@ public class AuthorController {
 
     private Mapper<AuthorEntity, AuthorDto> authorMapper;
 
-    public AuthorController(AuthorService authorService, Mapper<AuthorEntity, AuthorDto> authorMapper) {
+    //books of an author, GET /authors/{id}/books
+    private BookService bookService;
+    private Mapper<BookEntity, BookDto> bookMapper;
+
+    private ObjectMapper objectMapper;
+
+    //POST /authors with Prefer: respond-async
+    private WriteBehindService writeBehindService;
+
+    private KeysetCursors keysetCursors;
+
+    //upper bound on the ids of one _mget request
+    private int mgetMaxKeys;
+
+    public AuthorController(AuthorService authorService, Mapper<AuthorEntity, AuthorDto> authorMapper,
+                            BookService bookService, Mapper<BookEntity, BookDto> bookMapper,
+                            ObjectMapper objectMapper, WriteBehindService writeBehindService, KeysetCursors keysetCursors,
+                            @Value("${mget.max-keys:1000}") int mgetMaxKeys) {
         this.authorService = authorService;
         this.authorMapper = authorMapper;
+        this.bookService = bookService;
+        this.bookMapper = bookMapper;
+        this.objectMapper = objectMapper;
+        this.writeBehindService = writeBehindService;
+        this.keysetCursors = keysetCursors;
+        this.mgetMaxKeys = mgetMaxKeys;
     }
 
     @PostMapping(path = "/authors")
     //ResponseEntity class used to represent the entire HTTP response
     //Gives control of response status code
-    public ResponseEntity<AuthorDto> createAuthor(@RequestBody AuthorDto author) {
+    //Prefer: respond-async -> 202 once queued, the author is written with the next flush, see WriteBehindServiceImpl
+    public ResponseEntity<?> createAuthor(@RequestBody AuthorDto author,
+                                          @RequestHeader(name = AsyncWrites.PREFER, required = false) List<String> prefer) {
+        if (AsyncWrites.requested(prefer)) {
+            return AsyncWrites.accepted(writeBehindService.submitAuthor(authorMapper.mapFrom(author)));
+        }
         AuthorEntity authorEntity = authorMapper.mapFrom(author);
         AuthorEntity savedAuthorEntity = authorService.save(authorEntity);
         AuthorDto savedAuthorDto = authorMapper.mapTo(savedAuthorEntity);
@@ -37,52 +89,120 @@ public class AuthorController {
         return new ResponseEntity<>(savedAuthorDto, HttpStatus.CREATED);
     }
 
+    //JSON array or NDJSON body, authors without id are created, authors with id are updated
+    @PostMapping(path = "/authors/_bulk",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<List<BulkItemResult>> bulkImportAuthors(InputStream body) throws IOException {
+        MappingIterator<AuthorDto> authorDtos = objectMapper.readerFor(AuthorDto.class).readValues(body);
+        Iterator<AuthorEntity> authorEntities = StreamSupport.stream(
+                        Spliterators.spliteratorUnknownSize(authorDtos, Spliterator.ORDERED), false)
+                .map(authorMapper::mapFrom)
+                .iterator();
+        List<BulkItemResult> results = authorService.bulkSave(authorEntities);
+        return new ResponseEntity<>(results, HttpStatus.OK);
+    }
+
+    //optional filters ?name=<prefix> &minAge= &maxAge=, combined with AND
     @GetMapping(path = "/authors")
-    public Page<AuthorDto> listAuthors(Pageable pageable){
-        Page<AuthorEntity> authors = authorService.findAll(pageable);
+    public Page<AuthorDto> listAuthors(AuthorFilter filter, Pageable pageable){
+        Page<AuthorEntity> authors = authorService.findAll(filter, pageable);
         //stream AuthorEntity List-> convert to DTO -> collect stream into new DTO List
         return authors.map(authorMapper::mapTo);
     }
 
+    //Keyset mode, opted into with ?after= (empty for the first page) then ?after=<next> from the previous response
+    //sort and size as for the paged listing, the sort is carried in the cursor afterwards
+    @GetMapping(path = "/authors", params = "after")
+    public CursorPageDto<AuthorDto> listAuthorsAfter(@RequestParam("after") String after,
+                                                     @RequestParam(name = "size", defaultValue = "20") int size, Sort sort){
+        KeysetCursors.Cursor cursor = keysetCursors.decode(after, sort, Sort.by("id"), AuthorEntity.class);
+        //same bounds Spring Data applies to Pageable
+        int limit = Math.max(1, Math.min(size, 2000));
+        Window<AuthorEntity> authors = authorService.findAll(cursor.position(), cursor.sort(), limit);
+        return CursorPageDto.<AuthorDto>builder()
+                .content(authors.map(authorMapper::mapTo).getContent())
+                .size(authors.size())
+                .hasNext(authors.hasNext())
+                .next(keysetCursors.next(authors, cursor.sort()))
+                .build();
+    }
+
     @GetMapping(path = "/authors/{id}")
-    public ResponseEntity<AuthorDto> getAuthor(@PathVariable("id") Long id){
+    public ResponseEntity<AuthorDto> getAuthor(@PathVariable("id") Long id, WebRequest request){
         Optional<AuthorEntity> result = authorService.findOne(id);
         //result will be either a response entity with/without dto
         return result
                 //map converts entity into dto and wraps dto in response entity
                 .map(authorEntity -> {
+                    //If-None-Match with the current ETag -> 304, no mapping or serialization
+                    if (request.checkNotModified(ETags.of(authorEntity))) {
+                        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(ETags.of(authorEntity)).<AuthorDto>build();
+                    }
                     AuthorDto authorDto = authorMapper.mapTo(authorEntity);
-                    return new ResponseEntity<>(authorDto, HttpStatus.OK);})
+                    return ResponseEntity.ok().eTag(ETags.of(authorEntity)).body(authorDto);})
                 //if optional empty return empty response entity
                 .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND));
     }
 
+    //Body is a JSON array of ids, the response has one entry per id in the same order
+    //cached authors are served from the cache, the rest come from a single SELECT ... WHERE id = ANY(?)
+    @PostMapping(path = "/authors/_mget")
+    public ResponseEntity<List<MultiGetItemDto<Long, AuthorDto>>> multiGetAuthors(@RequestBody List<Long> ids) {
+        if (ids.size() > mgetMaxKeys || ids.contains(null)) {
+            return ResponseEntity.badRequest().build();
+        }
+        List<Optional<AuthorEntity>> authors = authorService.findMany(ids);
+        List<MultiGetItemDto<Long, AuthorDto>> items = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            items.add(MultiGetItemDto.<Long, AuthorDto>builder()
+                    .key(ids.get(i))
+                    .found(authors.get(i).isPresent())
+                    .value(authors.get(i).map(authorMapper::mapTo).orElse(null))
+                    .build());
+        }
+        return ResponseEntity.ok(items);
+    }
+
+    //Books of one author, an index scan on books.author_id, 404 when the author does not exist
+    @GetMapping(path = "/authors/{id}/books")
+    public ResponseEntity<Page<BookDto>> listAuthorBooks(@PathVariable("id") Long id, Pageable pageable){
+        Page<BookEntity> books = bookService.findAll(BookFilter.builder().authorId(id).build(), pageable);
+        //an empty page is the only case where the author may not exist
+        if (books.isEmpty() && !authorService.ifExist(id)) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        return ResponseEntity.ok(books.map(bookMapper::mapTo));
+    }
+
+    //If-Match: "<version>" makes the update conditional, 412 if the author has changed since
     @PutMapping(path = "/authors/{id}")
-    public ResponseEntity<AuthorDto> fullUpdateAuthor(@PathVariable("id") Long id, @RequestBody AuthorDto authorDto){
+    public ResponseEntity<AuthorDto> fullUpdateAuthor(@PathVariable("id") Long id, @RequestBody AuthorDto authorDto,
+                                                      @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch){
         //Check if author exists before updating
         boolean ifExist = authorService.ifExist(id);
         if(!ifExist){
-            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+            //no current representation, If-Match (even *) fails
+            return new ResponseEntity<>(ifMatch == null ? HttpStatus.NOT_FOUND : HttpStatus.PRECONDITION_FAILED);
         }
 
         authorDto.setId(id);
         AuthorEntity authorEntity = authorMapper.mapFrom(authorDto);
+        authorEntity.setVersion(ETags.expectedVersion(ifMatch));
         AuthorEntity savedAuthor = authorService.save(authorEntity);
-        return new ResponseEntity<>(authorMapper.mapTo(savedAuthor), HttpStatus.OK);
+        return ResponseEntity.ok().eTag(ETags.of(savedAuthor)).body(authorMapper.mapTo(savedAuthor));
     }
 
     @PatchMapping(path = "/authors/{id}")
-    public ResponseEntity<AuthorDto> partialUpdateAuthor(@PathVariable("id") Long id, @RequestBody AuthorDto authorDto){
-        boolean ifExist = authorService.ifExist(id);
-        if(!ifExist){
-            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
-        }
-
+    public ResponseEntity<AuthorDto> partialUpdateAuthor(@PathVariable("id") Long id, @RequestBody AuthorDto authorDto,
+                                                         @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch){
         AuthorEntity authorEntity = authorMapper.mapFrom(authorDto);
-        AuthorEntity updatedAuthorEntity = authorService.partialUpdate(id, authorEntity);
-        AuthorDto updatedAuthorDto = authorMapper.mapTo(updatedAuthorEntity);
-
-        return new ResponseEntity<>(updatedAuthorDto, HttpStatus.OK);
+        authorEntity.setVersion(ETags.expectedVersion(ifMatch));
+        //empty Optional when nothing was updated -> author does not exist, 412 when If-Match asked for one
+        return authorService.partialUpdate(id, authorEntity)
+                .map(updatedAuthorEntity -> {
+                    AuthorDto updatedAuthorDto = authorMapper.mapTo(updatedAuthorEntity);
+                    return ResponseEntity.ok().eTag(ETags.of(updatedAuthorEntity)).body(updatedAuthorDto);})
+                .orElse(new ResponseEntity<>(ifMatch == null ? HttpStatus.NOT_FOUND : HttpStatus.PRECONDITION_FAILED));
     }
 
     @DeleteMapping(path = "/authors/{id}")
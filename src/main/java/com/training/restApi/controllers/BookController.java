@@ -1,18 +1,53 @@
 package com.training.restApi.controllers;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.training.restApi.domain.BookFilter;
+import com.training.restApi.domain.BulkDeleteResult;
+import com.training.restApi.domain.BulkItemResult;
+import com.training.restApi.domain.Suggestion;
+import com.training.restApi.domain.UpsertResult;
+import com.training.restApi.domain.dto.AuthorDto;
 import com.training.restApi.domain.dto.BookDto;
+import com.training.restApi.domain.dto.CursorPageDto;
+import com.training.restApi.domain.dto.MultiGetItemDto;
 import com.training.restApi.domain.entities.BookEntity;
 import com.training.restApi.mappers.Mapper;
 import com.training.restApi.services.BookService;
+import com.training.restApi.services.SuggestionService;
+import com.training.restApi.services.WriteBehindService;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
 
 @RestController
 public class BookController {
@@ -20,60 +55,226 @@ public class BookController {
     private BookService bookService;
     private Mapper<BookEntity, BookDto> bookMapper;
 
-    public BookController(BookService bookService, Mapper<BookEntity, BookDto> bookMapper) {
+    private ObjectMapper objectMapper;
+
+    private KeysetCursors keysetCursors;
+
+    private BookJsonCache bookJsonCache;
+
+    private SuggestionService suggestionService;
+
+    //PUT /books/{isbn} with Prefer: respond-async
+    private WriteBehindService writeBehindService;
+
+    //upper bound on the isbns of one _mget request
+    private int mgetMaxKeys;
+
+    public BookController(BookService bookService, Mapper<BookEntity, BookDto> bookMapper,
+                          ObjectMapper objectMapper, KeysetCursors keysetCursors, BookJsonCache bookJsonCache,
+                          SuggestionService suggestionService, WriteBehindService writeBehindService,
+                          @Value("${mget.max-keys:1000}") int mgetMaxKeys) {
         this.bookService = bookService;
         this.bookMapper = bookMapper;
+        this.objectMapper = objectMapper;
+        this.keysetCursors = keysetCursors;
+        this.bookJsonCache = bookJsonCache;
+        this.suggestionService = suggestionService;
+        this.writeBehindService = writeBehindService;
+        this.mgetMaxKeys = mgetMaxKeys;
     }
 
     //specify isbn when creating a new book in db
     //create or update -> different http status
+    //If-Match: the book's ETag only updates the book (and author) at those versions, * any stored version,
+    //412 otherwise (also when it does not exist)
+    //Prefer: respond-async -> 202 once queued, the book is written with the next flush, see WriteBehindServiceImpl
+    //conditional writes (If-Match) always run synchronously
     @PutMapping(path = "/books/{isbn}")
-    public ResponseEntity<BookDto> createUpdateBook(@PathVariable("isbn") String isbn, @RequestBody BookDto bookDto) {
+    public ResponseEntity<?> createUpdateBook(@PathVariable("isbn") String isbn, @RequestBody BookDto bookDto,
+                                              @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                              @RequestHeader(name = AsyncWrites.PREFER, required = false) List<String> prefer) {
+        if (ifMatch == null && AsyncWrites.requested(prefer)) {
+            return AsyncWrites.accepted(writeBehindService.submitBook(isbn, bookMapper.mapFrom(bookDto)));
+        }
         BookEntity bookEntity = bookMapper.mapFrom(bookDto);
-        //check if book exists before save
-        boolean bookExists = bookService.ifExist(isbn);
-        BookEntity savedBookEntity = bookService.save(isbn, bookEntity);
-        BookDto savedBookDto = bookMapper.mapTo(savedBookEntity);
+        //single upsert statement, reports whether the row was created
+        UpsertResult<BookEntity> result = bookService.upsert(isbn, bookEntity, ETags.bookPrecondition(ifMatch));
+        BookDto savedBookDto = bookMapper.mapTo(result.getEntity());
 
-        //update
-        if(bookExists){
-            return new ResponseEntity<>(savedBookDto, HttpStatus.OK);
         //create
+        if(result.isCreated()){
+            return ResponseEntity.status(HttpStatus.CREATED).eTag(ETags.of(result.getEntity())).body(savedBookDto);
+        //update
         } else {
-            return new ResponseEntity<>(savedBookDto, HttpStatus.CREATED);
+            return ResponseEntity.ok().eTag(ETags.of(result.getEntity())).body(savedBookDto);
         }
     }
 
+    //Body is a JSON array or newline delimited JSON, read one item at a time
+    //and written in batches, so large catalogues never sit in memory as a whole
+    @PostMapping(path = "/books/_bulk",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<List<BulkItemResult>> bulkImportBooks(InputStream body) throws IOException {
+        MappingIterator<BookDto> bookDtos = objectMapper.readerFor(BookDto.class).readValues(body);
+        Iterator<BookEntity> bookEntities = StreamSupport.stream(
+                        Spliterators.spliteratorUnknownSize(bookDtos, Spliterator.ORDERED), false)
+                .map(bookMapper::mapFrom)
+                .iterator();
+        List<BulkItemResult> results = bookService.bulkSave(bookEntities);
+        return new ResponseEntity<>(results, HttpStatus.OK);
+    }
+
+    //optional filters ?authorId= &title=<prefix> &minAge= &maxAge= (age of the author), combined with AND
     @GetMapping(path = "/books")
-    public Page<BookDto> listBooks(Pageable pageable){
-        Page<BookEntity> books = bookService.findAll(pageable);
+    public Page<BookDto> listBooks(BookFilter filter, Pageable pageable){
+        Page<BookEntity> books = bookService.findAll(filter, pageable);
         return books.map(bookMapper::mapTo);
     }
 
+    //Words of q are matched as prefixes against title and author name, a book has to match all of them
+    //ordered by relevance, page and size as for the listing (sort is ignored)
+    @GetMapping(path = "/books/search")
+    public Page<BookDto> searchBooks(@RequestParam("q") String query, Pageable pageable){
+        Page<BookEntity> books = bookService.search(query, pageable);
+        return books.map(bookMapper::mapTo);
+    }
+
+    //Typeahead: titles and author names starting with prefix, served from memory
+    @GetMapping(path = "/books/suggest")
+    public List<Suggestion> suggest(@RequestParam("prefix") String prefix,
+                                    @RequestParam(name = "size", defaultValue = "10") int size){
+        return suggestionService.suggest(prefix, Math.max(1, Math.min(size, 100)));
+    }
+
+    //Keyset mode, opted into with ?after= (empty for the first page) then ?after=<next> from the previous response
+    //sort and size as for the paged listing, the sort is carried in the cursor afterwards
+    @GetMapping(path = "/books", params = "after")
+    public CursorPageDto<BookDto> listBooksAfter(@RequestParam("after") String after,
+                                                 @RequestParam(name = "size", defaultValue = "20") int size, Sort sort){
+        KeysetCursors.Cursor cursor = keysetCursors.decode(after, sort, Sort.by("isbn"), BookEntity.class);
+        //same bounds Spring Data applies to Pageable
+        int limit = Math.max(1, Math.min(size, 2000));
+        Window<BookEntity> books = bookService.findAll(cursor.position(), cursor.sort(), limit);
+        return CursorPageDto.<BookDto>builder()
+                .content(books.map(bookMapper::mapTo).getContent())
+                .size(books.size())
+                .hasNext(books.hasNext())
+                .next(keysetCursors.next(books, cursor.sort()))
+                .build();
+    }
+
+    //Whole catalogue as NDJSON (default) or CSV
+    //each book is written to the response as it comes off the database cursor, nothing is collected
+    @GetMapping(path = "/books/export")
+    public void exportBooks(@RequestParam(name = "format", defaultValue = "ndjson") String format,
+                            HttpServletResponse response) throws IOException {
+        if (format.equalsIgnoreCase("ndjson")) {
+            response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+            exportNdjson(response.getOutputStream());
+        } else if (format.equalsIgnoreCase("csv")) {
+            response.setContentType("text/csv");
+            response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+            exportCsv(response.getOutputStream());
+        } else {
+            response.setStatus(HttpStatus.BAD_REQUEST.value());
+        }
+    }
+
+    private void exportNdjson(OutputStream out) throws IOException {
+        //the mapper flushes after every value (FLUSH_AFTER_WRITE_VALUE), a flush of the servlet stream per book,
+        //this writer leaves it to the generator's buffer
+        ObjectWriter bookWriter = objectMapper.writerFor(BookDto.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            bookService.exportAll(bookEntity -> {
+                try {
+                    bookWriter.writeValue(generator, bookMapper.mapTo(bookEntity));
+                    generator.writeRaw('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    private void exportCsv(OutputStream out) throws IOException {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            writer.write("isbn,title,author_id,author_name,author_age\n");
+            bookService.exportAll(bookEntity -> {
+                BookDto bookDto = bookMapper.mapTo(bookEntity);
+                AuthorDto author = bookDto.getAuthor();
+                try {
+                    writer.write(csv(bookDto.getIsbn()) + ',' + csv(bookDto.getTitle()) + ','
+                            + csv(author == null ? null : author.getId()) + ','
+                            + csv(author == null ? null : author.getName()) + ','
+                            + csv(author == null ? null : author.getAge()) + '\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    //RFC 4180: quote fields containing separators, quotes or line breaks, double embedded quotes
+    private static String csv(Object value) {
+        if (value == null) {
+            return "";
+        }
+        String text = value.toString();
+        if (text.contains(",") || text.contains("\"") || text.contains("\n") || text.contains("\r")) {
+            return '"' + text.replace("\"", "\"\"") + '"';
+        }
+        return text;
+    }
+
+    //body comes pre-serialized from the cache, mapping and Jackson only run when the book changed
+    //the versions for the ETag come from the entity caches, so a matching If-None-Match is a 304 without any SQL
     @GetMapping(path = "/books/{isbn}")
-    public ResponseEntity<BookDto> getBook(@PathVariable("isbn") String isbn){
+    public ResponseEntity<byte[]> getBook(@PathVariable("isbn") String isbn, WebRequest request){
         Optional<BookEntity> result = bookService.findOne(isbn);
 
         return result
                 .map(bookEntity -> {
-                    BookDto bookDto = bookMapper.mapTo(bookEntity);
-                    return new ResponseEntity<>(bookDto, HttpStatus.OK);})
+                    if (request.checkNotModified(ETags.of(bookEntity))) {
+                        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(ETags.of(bookEntity)).<byte[]>build();
+                    }
+                    return ResponseEntity.ok()
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .eTag(ETags.of(bookEntity))
+                            .body(bookJsonCache.toJson(bookEntity));})
                 .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND)
         );
     }
 
-    @PatchMapping(path = "/books/{isbn}")
-    public ResponseEntity<BookDto> partialUpdateBook(@PathVariable("isbn") String isbn, @RequestBody BookDto bookDto){
-        boolean ifExist = bookService.ifExist(isbn);
-
-        if(!ifExist){
-            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+    //Body is a JSON array of isbns, the response has one entry per isbn in the same order
+    //cached books are served from the cache, the rest come from a single SELECT ... WHERE isbn = ANY(?)
+    @PostMapping(path = "/books/_mget")
+    public ResponseEntity<List<MultiGetItemDto<String, BookDto>>> multiGetBooks(@RequestBody List<String> isbns) {
+        if (isbns.size() > mgetMaxKeys || isbns.contains(null)) {
+            return ResponseEntity.badRequest().build();
+        }
+        List<Optional<BookEntity>> books = bookService.findMany(isbns);
+        List<MultiGetItemDto<String, BookDto>> items = new ArrayList<>(isbns.size());
+        for (int i = 0; i < isbns.size(); i++) {
+            items.add(MultiGetItemDto.<String, BookDto>builder()
+                    .key(isbns.get(i))
+                    .found(books.get(i).isPresent())
+                    .value(books.get(i).map(bookMapper::mapTo).orElse(null))
+                    .build());
         }
+        return ResponseEntity.ok(items);
+    }
 
+    @PatchMapping(path = "/books/{isbn}")
+    public ResponseEntity<BookDto> partialUpdateBook(@PathVariable("isbn") String isbn, @RequestBody BookDto bookDto,
+                                                     @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch){
         BookEntity bookEntity = bookMapper.mapFrom(bookDto);
-        BookEntity updatedBookEntity = bookService.partialUpdate(isbn, bookEntity);
-        BookDto updatedBookDto = bookMapper.mapTo(updatedBookEntity);
-        return new ResponseEntity<>(updatedBookDto, HttpStatus.OK);
+        //empty Optional when nothing was updated -> book does not exist, 412 when If-Match asked for one
+        return bookService.partialUpdate(isbn, bookEntity, ETags.bookPrecondition(ifMatch))
+                .map(updatedBookEntity -> {
+                    BookDto updatedBookDto = bookMapper.mapTo(updatedBookEntity);
+                    return ResponseEntity.ok().eTag(ETags.of(updatedBookEntity)).body(updatedBookDto);})
+                .orElse(new ResponseEntity<>(ifMatch == null ? HttpStatus.NOT_FOUND : HttpStatus.PRECONDITION_FAILED));
     }
 
     @DeleteMapping(path = "/books/{isbn}")
@@ -82,11 +283,16 @@ public class BookController {
         return new ResponseEntity<>(HttpStatus.NO_CONTENT);
     }
 
+    //Without parameters every book goes -> 204
+    //the filters of GET /books (?authorId= &title= &minAge= &maxAge=) delete just the matching books
+    //-> 200 with the number of books (and of authors left without books) deleted
     @DeleteMapping(path = "/books")
-    public ResponseEntity deleteAll(){
-        bookService.deleteAll();
-        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
-
+    public ResponseEntity<BulkDeleteResult> deleteAll(BookFilter filter){
+        if (filter.isEmpty()) {
+            bookService.deleteAll();
+            return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+        }
+        return ResponseEntity.ok(bookService.deleteAll(filter));
     }
 
 }
@@ -0,0 +1,51 @@
+package com.training.restApi.controllers;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.training.restApi.config.CacheConfig;
+import com.training.restApi.domain.dto.BookDto;
+import com.training.restApi.domain.entities.BookEntity;
+import com.training.restApi.mappers.Mapper;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+import java.io.UncheckedIOException;
+
+//Serialized GET /books/{isbn} bodies per isbn
+//an entry keeps the book (with its author) it was written from and is only used while that
+//still equals the current book, so a change to the book or its author is never served stale
+//book writes also evict the entry, author writes are caught by the equals check
+@Component
+class BookJsonCache {
+
+    private Cache cache;
+
+    private Mapper<BookEntity, BookDto> bookMapper;
+    private ObjectMapper objectMapper;
+
+    BookJsonCache(CacheManager cacheManager, Mapper<BookEntity, BookDto> bookMapper, ObjectMapper objectMapper) {
+        this.cache = cacheManager.getCache(CacheConfig.BOOK_JSON);
+        this.bookMapper = bookMapper;
+        this.objectMapper = objectMapper;
+    }
+
+    byte[] toJson(BookEntity book) {
+        Entry entry = cache.get(book.getIsbn(), Entry.class);
+        if (entry != null && entry.book().equals(book)) {
+            return entry.json();
+        }
+
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(bookMapper.mapTo(book));
+            cache.put(book.getIsbn(), new Entry(book, json));
+            return json;
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private record Entry(BookEntity book, byte[] json) {
+    }
+
+}
@@ -0,0 +1,75 @@
+package com.training.restApi.controllers;
+
+import com.training.restApi.domain.IfMatch;
+import com.training.restApi.domain.entities.AuthorEntity;
+import com.training.restApi.domain.entities.BookEntity;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+//Strong ETags built from the @Version columns, unquoted (Spring adds the quotes)
+//author: "<version>"
+//book: "<book version>-<author version>", the book body embeds the author so both count
+//If-Match is compared with the whole tag, a book tag from before an author change no longer matches
+//a missing resource never matches, not even *: 412
+final class ETags {
+
+    private ETags() {
+    }
+
+    static String of(AuthorEntity author) {
+        return String.valueOf(author.getVersion());
+    }
+
+    static String of(BookEntity book) {
+        return book.getAuthor() == null
+                ? String.valueOf(book.getVersion())
+                : book.getVersion() + "-" + book.getAuthor().getVersion();
+    }
+
+    //Version an author If-Match asks for, null without the header or for *
+    //(the author writes 412 on a missing author themselves)
+    static Long expectedVersion(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String value = strongTag(ifMatch);
+        try {
+            return Long.valueOf(value);
+        } catch (NumberFormatException e) {
+            throw notOurs(ifMatch);
+        }
+    }
+
+    //Book and author version a book If-Match asks for, null without the header
+    static IfMatch bookPrecondition(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank()) {
+            return null;
+        }
+        if (ifMatch.trim().equals("*")) {
+            return IfMatch.ANY;
+        }
+        String value = strongTag(ifMatch);
+        int dash = value.indexOf('-');
+        try {
+            return dash < 0
+                    ? new IfMatch(false, Long.valueOf(value), null)
+                    : new IfMatch(false, Long.valueOf(value.substring(0, dash)), Long.valueOf(value.substring(dash + 1)));
+        } catch (NumberFormatException e) {
+            throw notOurs(ifMatch);
+        }
+    }
+
+    //weak tags and lists never match a single strong tag
+    private static String strongTag(String ifMatch) {
+        String tag = ifMatch.trim();
+        if (tag.length() < 2 || !tag.startsWith("\"") || !tag.endsWith("\"")) {
+            throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED, "If-Match must be one strong ETag");
+        }
+        return tag.substring(1, tag.length() - 1);
+    }
+
+    private static ResponseStatusException notOurs(String ifMatch) {
+        return new ResponseStatusException(HttpStatus.PRECONDITION_FAILED, "If-Match " + ifMatch.trim() + " is not an ETag of this API");
+    }
+
+}
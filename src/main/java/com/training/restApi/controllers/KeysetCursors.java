@@ -0,0 +1,88 @@
+package com.training.restApi.controllers;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.core.convert.support.DefaultConversionService;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+//Opaque "after" cursors for keyset listings
+//a cursor is base64url JSON of the sort and the sort key values of the last row, eg.
+//{"sort":["title,ASC","isbn,ASC"],"keys":{"title":"Book 2","isbn":"213abc"}}
+//the sort travels with the cursor, so following pages only need ?after=
+@Component
+class KeysetCursors {
+
+    private static final TypeReference<Map<String, Object>> CURSOR_TYPE = new TypeReference<>() {};
+
+    private ObjectMapper objectMapper;
+
+    private ConversionService conversionService = DefaultConversionService.getSharedInstance();
+
+    KeysetCursors(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    //Sort and position to continue from, after is empty for the first page
+    Cursor decode(String after, Sort requestSort, Sort defaultSort, Class<?> entityType) {
+        if (after.isEmpty()) {
+            return new Cursor(requestSort.isSorted() ? requestSort : defaultSort, ScrollPosition.keyset());
+        }
+        try {
+            Map<String, Object> cursor = objectMapper.readValue(Base64.getUrlDecoder().decode(after), CURSOR_TYPE);
+
+            List<Sort.Order> orders = new ArrayList<>();
+            for (Object order : (List<?>) cursor.get("sort")) {
+                String[] parts = order.toString().split(",");
+                orders.add(new Sort.Order(Sort.Direction.fromString(parts[1]), parts[0]));
+            }
+
+            //values are stored as text, convert back to the entity property types for the WHERE clause
+            BeanWrapperImpl entity = new BeanWrapperImpl(entityType);
+            entity.setAutoGrowNestedPaths(true);
+            Map<String, Object> keys = new LinkedHashMap<>();
+            ((Map<?, ?>) cursor.get("keys")).forEach((property, value) -> keys.put(property.toString(),
+                    value == null ? null : conversionService.convert(value, entity.getPropertyType(property.toString()))));
+
+            return new Cursor(Sort.by(orders), ScrollPosition.forward(keys));
+        } catch (IOException | RuntimeException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor", e);
+        }
+    }
+
+    //Cursor after the last row of the window, null when there is no next page
+    String next(Window<?> window, Sort sort) {
+        if (!window.hasNext() || window.isEmpty()) {
+            return null;
+        }
+        KeysetScrollPosition position = (KeysetScrollPosition) window.positionAt(window.size() - 1);
+
+        Map<String, Object> keys = new LinkedHashMap<>();
+        position.getKeys().forEach((property, value) -> keys.put(property, value == null ? null : value.toString()));
+        List<String> orders = sort.stream().map(order -> order.getProperty() + "," + order.getDirection()).toList();
+
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(Map.of("sort", orders, "keys", keys));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(json);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    record Cursor(Sort sort, ScrollPosition position) {
+    }
+}
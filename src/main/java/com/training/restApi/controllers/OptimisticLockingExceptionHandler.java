@@ -0,0 +1,25 @@
+package com.training.restApi.controllers;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+//If-Match that no longer matches the stored version -> 412
+//a write without If-Match that lost a race to a concurrent write of the same row -> 409,
+//no precondition was sent that could have failed, the client may simply retry
+@RestControllerAdvice
+class OptimisticLockingExceptionHandler {
+
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    ResponseEntity<Void> versionConflict(HttpServletRequest request) {
+        if (request.getHeader(HttpHeaders.IF_MATCH) == null) {
+            return new ResponseEntity<>(HttpStatus.CONFLICT);
+        }
+        return new ResponseEntity<>(HttpStatus.PRECONDITION_FAILED);
+    }
+
+}
@@ -0,0 +1,51 @@
+package com.training.restApi.controllers;
+
+import com.training.restApi.domain.dto.AuthorDto;
+import com.training.restApi.domain.entities.AuthorEntity;
+import com.training.restApi.mappers.Mapper;
+import com.training.restApi.services.ReactiveAuthorService;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+//Non-blocking variants of the author GET endpoints, same DTOs, reads go through R2DBC
+//Spring MVC runs Mono/Flux results asynchronously, the request thread is freed while the database works
+@RestController
+public class ReactiveAuthorController {
+
+    private ReactiveAuthorService reactiveAuthorService;
+
+    private Mapper<AuthorEntity, AuthorDto> authorMapper;
+
+    public ReactiveAuthorController(ReactiveAuthorService reactiveAuthorService, Mapper<AuthorEntity, AuthorDto> authorMapper) {
+        this.reactiveAuthorService = reactiveAuthorService;
+        this.authorMapper = authorMapper;
+    }
+
+    @GetMapping(path = "/reactive/authors/{id}")
+    public Mono<ResponseEntity<AuthorDto>> getAuthor(@PathVariable("id") Long id) {
+        return reactiveAuthorService.findOne(id)
+                .map(authorEntity -> new ResponseEntity<>(authorMapper.mapTo(authorEntity), HttpStatus.OK))
+                .defaultIfEmpty(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    }
+
+    @GetMapping(path = "/reactive/authors")
+    public Mono<Page<AuthorDto>> listAuthors(Pageable pageable) {
+        return reactiveAuthorService.findAll(pageable).map(authors -> authors.map(authorMapper::mapTo));
+    }
+
+    //Newline delimited JSON, one author per line as rows arrive
+    //the next author is only requested once the previous one was written, so a slow client
+    //slows down the fetch instead of the whole table piling up in memory
+    @GetMapping(path = "/reactive/authors/_stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<AuthorDto> streamAuthors() {
+        return reactiveAuthorService.streamAll().map(authorMapper::mapTo);
+    }
+}
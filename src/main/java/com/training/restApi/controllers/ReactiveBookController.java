@@ -0,0 +1,51 @@
+package com.training.restApi.controllers;
+
+import com.training.restApi.domain.dto.BookDto;
+import com.training.restApi.domain.entities.BookEntity;
+import com.training.restApi.mappers.Mapper;
+import com.training.restApi.services.ReactiveBookService;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+//Non-blocking variants of the book GET endpoints, same DTOs, reads go through R2DBC
+//Spring MVC runs Mono/Flux results asynchronously, the request thread is freed while the database works
+@RestController
+public class ReactiveBookController {
+
+    private ReactiveBookService reactiveBookService;
+
+    private Mapper<BookEntity, BookDto> bookMapper;
+
+    public ReactiveBookController(ReactiveBookService reactiveBookService, Mapper<BookEntity, BookDto> bookMapper) {
+        this.reactiveBookService = reactiveBookService;
+        this.bookMapper = bookMapper;
+    }
+
+    @GetMapping(path = "/reactive/books/{isbn}")
+    public Mono<ResponseEntity<BookDto>> getBook(@PathVariable("isbn") String isbn) {
+        return reactiveBookService.findOne(isbn)
+                .map(bookEntity -> new ResponseEntity<>(bookMapper.mapTo(bookEntity), HttpStatus.OK))
+                .defaultIfEmpty(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    }
+
+    @GetMapping(path = "/reactive/books")
+    public Mono<Page<BookDto>> listBooks(Pageable pageable) {
+        return reactiveBookService.findAll(pageable).map(books -> books.map(bookMapper::mapTo));
+    }
+
+    //Newline delimited JSON, one book per line as rows arrive
+    //the next book is only requested once the previous one was written, so a slow client
+    //slows down the fetch instead of the whole table piling up in memory
+    @GetMapping(path = "/reactive/books/_stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<BookDto> streamBooks() {
+        return reactiveBookService.streamAll().map(bookMapper::mapTo);
+    }
+}
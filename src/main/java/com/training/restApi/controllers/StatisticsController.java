@@ -0,0 +1,33 @@
+package com.training.restApi.controllers;
+
+import com.training.restApi.domain.AuthorStats;
+import com.training.restApi.domain.CatalogueStats;
+import com.training.restApi.services.StatisticsService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+
+//Counters kept up to date by the write paths, no query runs for these requests
+@RestController
+public class StatisticsController {
+
+    private StatisticsService statisticsService;
+
+    public StatisticsController(StatisticsService statisticsService) {
+        this.statisticsService = statisticsService;
+    }
+
+    @GetMapping(path = "/authors/{id}/stats")
+    public ResponseEntity<AuthorStats> getAuthorStats(@PathVariable("id") Long id) {
+        return statisticsService.authorStats(id)
+                .map(ResponseEntity::ok)
+                .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    }
+
+    @GetMapping(path = "/stats")
+    public CatalogueStats getCatalogueStats() {
+        return statisticsService.catalogueStats();
+    }
+}
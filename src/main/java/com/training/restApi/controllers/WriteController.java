@@ -0,0 +1,27 @@
+package com.training.restApi.controllers;
+
+import com.training.restApi.domain.WriteTicket;
+import com.training.restApi.services.WriteBehindService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+
+//Outcome of the writes accepted with Prefer: respond-async, the Location of their 202
+@RestController
+public class WriteController {
+
+    private WriteBehindService writeBehindService;
+
+    public WriteController(WriteBehindService writeBehindService) {
+        this.writeBehindService = writeBehindService;
+    }
+
+    @GetMapping(path = "/writes/{id}")
+    public ResponseEntity<WriteTicket> getWrite(@PathVariable("id") String id) {
+        return writeBehindService.status(id)
+                .map(ResponseEntity::ok)
+                .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    }
+}
@@ -0,0 +1,23 @@
+package com.training.restApi.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+//Optional filters of GET /authors, bound from the query parameters, null means not filtered
+//name is a prefix (case sensitive, so it stays an index range scan), the ages are inclusive
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class AuthorFilter {
+
+    private String name;
+    private Integer minAge;
+    private Integer maxAge;
+
+    public boolean isEmpty() {
+        return name == null && minAge == null && maxAge == null;
+    }
+}
@@ -0,0 +1,17 @@
+package com.training.restApi.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+//Counters of one author, GET /authors/{id}/stats
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class AuthorStats {
+
+    private Long authorId;
+    private long books;
+}
@@ -0,0 +1,24 @@
+package com.training.restApi.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+//Optional filters of GET /books, bound from the query parameters, null means not filtered
+//title is a prefix (case sensitive, so it stays an index range scan), the ages are inclusive
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class BookFilter {
+
+    private Long authorId;
+    private String title;
+    private Integer minAge;
+    private Integer maxAge;
+
+    public boolean isEmpty() {
+        return authorId == null && title == null && minAge == null && maxAge == null;
+    }
+}
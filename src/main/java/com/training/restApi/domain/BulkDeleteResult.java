@@ -0,0 +1,18 @@
+package com.training.restApi.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+//Rows removed by a filtered DELETE /books
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class BulkDeleteResult {
+
+    private long books;
+    //authors whose last book was deleted
+    private long authors;
+}
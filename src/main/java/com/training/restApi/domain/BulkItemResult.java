@@ -0,0 +1,23 @@
+package com.training.restApi.domain;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+//Outcome of one item of a bulk import, index is the position in the request body
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BulkItemResult {
+
+    public enum Status { CREATED, UPDATED, DUPLICATE, FAILED }
+
+    private int index;
+    private String key;
+    private Status status;
+    private String error;
+}
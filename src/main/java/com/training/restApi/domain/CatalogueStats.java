@@ -0,0 +1,22 @@
+package com.training.restApi.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+//Catalogue-wide counters, GET /stats
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class CatalogueStats {
+
+    private long books;
+    private long authors;
+    //authors with at least one book
+    private long authorsWithBooks;
+    private long booksWithoutAuthor;
+    //books with an author / authorsWithBooks, 0 when there are none
+    private double averageBooksPerAuthor;
+}
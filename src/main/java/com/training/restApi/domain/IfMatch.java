@@ -0,0 +1,24 @@
+package com.training.restApi.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Objects;
+
+//If-Match of a conditional book write, parsed from the ETag the API sent (see ETags)
+//any: "*", the book must exist in whatever version
+//otherwise the book version and the author version (null for a book without author) must both be the stored ones
+@Getter
+@AllArgsConstructor
+public class IfMatch {
+
+    public static final IfMatch ANY = new IfMatch(true, null, null);
+
+    private final boolean any;
+    private final Long version;
+    private final Long authorVersion;
+
+    public boolean matches(Long storedVersion, Long storedAuthorVersion) {
+        return any || (Objects.equals(version, storedVersion) && Objects.equals(authorVersion, storedAuthorVersion));
+    }
+}
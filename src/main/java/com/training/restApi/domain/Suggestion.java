@@ -0,0 +1,20 @@
+package com.training.restApi.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+//One typeahead match, key is the isbn of a book title or the id of an author name
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class Suggestion {
+
+    public enum Type { BOOK, AUTHOR }
+
+    private Type type;
+    private String key;
+    private String text;
+}
@@ -0,0 +1,13 @@
+package com.training.restApi.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+//Result of a create-or-update, created tells the controller which status to return
+@Getter
+@AllArgsConstructor
+public class UpsertResult<T> {
+
+    private final T entity;
+    private final boolean created;
+}
@@ -0,0 +1,28 @@
+package com.training.restApi.domain;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+//Tracking state of a write accepted with Prefer: respond-async, GET /writes/{id}
+//key is the isbn of a book, the id of an author once it has been written
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder(toBuilder = true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class WriteTicket {
+
+    public enum Type { AUTHOR, BOOK }
+
+    //QUEUED until its flush has run, then the outcome of the write (DUPLICATE does not occur)
+    public enum Status { QUEUED, CREATED, UPDATED, DUPLICATE, FAILED }
+
+    private String id;
+    private Type type;
+    private String key;
+    private Status status;
+    private String error;
+}
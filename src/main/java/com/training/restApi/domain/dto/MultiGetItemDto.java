@@ -0,0 +1,21 @@
+package com.training.restApi.domain.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+//One entry of a _mget response, in the position of its key in the request
+//found=false is the explicit not-found marker, value is left out then
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MultiGetItemDto<K, T> {
+
+    private K key;
+    private boolean found;
+    private T value;
+}
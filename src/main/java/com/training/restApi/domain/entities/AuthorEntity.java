@@ -1,23 +1,43 @@
 package com.training.restApi.domain.entities;
 
+import com.training.restApi.config.SecondLevelCacheConfig;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.ColumnDefault;
 
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
 @Builder
 @Entity
-@Table(name = "authors")
+//name prefix and age range filters of GET /authors, age also for the author age filter of GET /books
+@Table(name = "authors", indexes = {
+        @Index(name = "authors_name_idx", columnList = "name"),
+        @Index(name = "authors_age_idx", columnList = "age")
+})
+//second-level cache, read far more often than written (every book save with an author merges it)
+//READ_WRITE: a row being updated is locked in the cache until the commit, readers go to the database meanwhile
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = SecondLevelCacheConfig.AUTHORS)
 public class AuthorEntity {
 
     @Id
     @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "author_id_seq")
+    //one nextval per 50 inserts, so bulk author inserts can be batched
+    @SequenceGenerator(name = "author_id_seq", sequenceName = "author_id_seq", allocationSize = 50)
     private Long id;
     private String name;
     private Integer age;
 
+    //bumped on every update, source of the ETag and checked against If-Match
+    //null on an incoming entity means the write is not conditional
+    @Version
+    @ColumnDefault("0")
+    private Long version;
+
 }
@@ -5,19 +5,32 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.ColumnDefault;
 
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
 @Builder
 @Entity
-@Table(name = "books")
+//author_id: books of an author (filter, GET /authors/{id}/books) and the join from authors
+//title: title prefix filter and sorting by title
+@Table(name = "books", indexes = {
+        @Index(name = "books_author_id_idx", columnList = "author_id"),
+        @Index(name = "books_title_idx", columnList = "title")
+})
 public class BookEntity {
 
     @Id
     private String isbn;
     private String title;
-    @ManyToOne(cascade = CascadeType.ALL)
+    //LAZY: queries that need the author fetch it through the repository entity graphs
+    @ManyToOne(cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     @JoinColumn(name = "author_id")
     private AuthorEntity author;
+
+    //bumped on every update of the book row, the ETag also includes the author version
+    //null on an incoming entity means the write is not conditional
+    @Version
+    @ColumnDefault("0")
+    private Long version;
 }
@@ -4,9 +4,11 @@ import com.training.restApi.domain.dto.AuthorDto;
 import com.training.restApi.domain.entities.AuthorEntity;
 import com.training.restApi.mappers.Mapper;
 import org.modelmapper.ModelMapper;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
 @Component
+@ConditionalOnProperty(name = "mapper.implementation", havingValue = "modelmapper")
 public class AuthorMapperImpl implements Mapper<AuthorEntity, AuthorDto> {
 
     private ModelMapper modelMapper;
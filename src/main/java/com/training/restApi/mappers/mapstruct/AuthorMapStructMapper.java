@@ -0,0 +1,20 @@
+package com.training.restApi.mappers.mapstruct;
+
+import com.training.restApi.domain.dto.AuthorDto;
+import com.training.restApi.domain.entities.AuthorEntity;
+import com.training.restApi.mappers.Mapper;
+import org.mapstruct.Mapping;
+
+//MapStruct generates AuthorMapStructMapperImpl at compile time
+//plain getter/setter calls, no reflection or type map lookups per request
+@org.mapstruct.Mapper
+public interface AuthorMapStructMapper extends Mapper<AuthorEntity, AuthorDto> {
+
+    @Override
+    AuthorDto mapTo(AuthorEntity authorEntity);
+
+    //the version comes from If-Match, never from the request body
+    @Override
+    @Mapping(target = "version", ignore = true)
+    AuthorEntity mapFrom(AuthorDto authorDto);
+}
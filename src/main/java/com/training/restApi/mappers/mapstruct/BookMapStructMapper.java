@@ -0,0 +1,19 @@
+package com.training.restApi.mappers.mapstruct;
+
+import com.training.restApi.domain.dto.BookDto;
+import com.training.restApi.domain.entities.BookEntity;
+import com.training.restApi.mappers.Mapper;
+import org.mapstruct.Mapping;
+
+//uses = AuthorMapStructMapper handles the nested author in both directions
+@org.mapstruct.Mapper(uses = AuthorMapStructMapper.class)
+public interface BookMapStructMapper extends Mapper<BookEntity, BookDto> {
+
+    @Override
+    BookDto mapTo(BookEntity bookEntity);
+
+    //the version comes from If-Match, never from the request body
+    @Override
+    @Mapping(target = "version", ignore = true)
+    BookEntity mapFrom(BookDto bookDto);
+}
@@ -0,0 +1,8 @@
+package com.training.restApi.repositories;
+
+//Row of AuthorRepository.countBooksByAuthor
+public interface AuthorBookCount {
+    Long getAuthorId();
+
+    long getBooks();
+}
@@ -0,0 +1,14 @@
+package com.training.restApi.repositories;
+
+import com.training.restApi.domain.entities.AuthorEntity;
+
+import java.util.Collection;
+import java.util.List;
+
+//Custom fragment of AuthorRepository, implemented in AuthorMultiGetRepositoryImpl
+public interface AuthorMultiGetRepository {
+
+    //Authors for all ids in one statement, ids bound as a single array parameter
+    //missing ids are simply not in the result, order is not defined
+    List<AuthorEntity> multiGet(Collection<Long> ids);
+}
@@ -0,0 +1,13 @@
+package com.training.restApi.repositories;
+
+import com.training.restApi.domain.entities.AuthorEntity;
+
+import java.util.Optional;
+
+//Custom fragment of AuthorRepository, implemented in AuthorPartialUpdateRepositoryImpl
+public interface AuthorPartialUpdateRepository {
+
+    //Update only the non-null fields in one statement
+    //empty Optional if the author does not exist
+    Optional<AuthorEntity> partialUpdate(Long id, AuthorEntity authorEntity);
+}
@@ -1,10 +1,57 @@
 package com.training.restApi.repositories;
 
+import com.training.restApi.config.SecondLevelCacheConfig;
 import com.training.restApi.domain.entities.AuthorEntity;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+
 @Repository
-public interface AuthorRepository extends CrudRepository<AuthorEntity, Long>, PagingAndSortingRepository<AuthorEntity, Long> {
+public interface AuthorRepository extends CrudRepository<AuthorEntity, Long>, PagingAndSortingRepository<AuthorEntity, Long>,
+        AuthorPartialUpdateRepository, AuthorMultiGetRepository, JpaSpecificationExecutor<AuthorEntity> {
+
+    //Listing pages and their counts go through the query cache, see SecondLevelCacheConfig
+
+    @Override
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = SecondLevelCacheConfig.AUTHOR_PAGES)
+    })
+    Page<AuthorEntity> findAll(Pageable pageable);
+
+    //filtered listing, see AuthorSpecifications
+    @Override
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = SecondLevelCacheConfig.AUTHOR_PAGES)
+    })
+    Page<AuthorEntity> findAll(Specification<AuthorEntity> spec, Pageable pageable);
+
+    //Keyset scrolling, WHERE on the sort keys of the last row instead of OFFSET, no COUNT query
+    Window<AuthorEntity> findBy(ScrollPosition position, Sort sort, Limit limit);
+
+    //book count of every author, authors without books included, one GROUP BY over books.author_id
+    @Query("SELECT a.id AS authorId, COUNT(b) AS books FROM AuthorEntity a " +
+            "LEFT JOIN BookEntity b ON b.author = a GROUP BY a.id")
+    List<AuthorBookCount> countBooksByAuthor();
+
+    //one DELETE statement instead of deleteAll()'s load and remove of every author, returns the rows deleted
+    @Modifying
+    @Query("DELETE FROM AuthorEntity a")
+    int deleteAllInBulk();
 }
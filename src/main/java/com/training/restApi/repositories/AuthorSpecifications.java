@@ -0,0 +1,41 @@
+package com.training.restApi.repositories;
+
+import com.training.restApi.domain.AuthorFilter;
+import com.training.restApi.domain.entities.AuthorEntity;
+import jakarta.persistence.criteria.Path;
+import org.springframework.data.jpa.domain.Specification;
+
+//WHERE clauses of the GET /authors filters, each one backed by an index
+//(authors.name, authors.age declared on the entity)
+public final class AuthorSpecifications {
+
+    private AuthorSpecifications() {
+    }
+
+    //filters that are not set add nothing
+    public static Specification<AuthorEntity> matching(AuthorFilter filter) {
+        return Specification.allOf(
+                nameStartsWith(filter.getName()),
+                ageBetween(filter.getMinAge(), filter.getMaxAge()));
+    }
+
+    public static Specification<AuthorEntity> nameStartsWith(String prefix) {
+        if (prefix == null) {
+            return null;
+        }
+        return (root, query, cb) -> cb.like(root.get("name"), LikePatterns.prefix(prefix), LikePatterns.ESCAPE);
+    }
+
+    public static Specification<AuthorEntity> ageBetween(Integer minAge, Integer maxAge) {
+        if (minAge == null && maxAge == null) {
+            return null;
+        }
+        return (root, query, cb) -> {
+            Path<Integer> age = root.<Integer>get("age");
+            if (minAge == null) {
+                return cb.le(age, maxAge);
+            }
+            return maxAge == null ? cb.ge(age, minAge) : cb.between(age, minAge, maxAge);
+        };
+    }
+}
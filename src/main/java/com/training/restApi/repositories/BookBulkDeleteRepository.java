@@ -0,0 +1,10 @@
+package com.training.restApi.repositories;
+
+import com.training.restApi.domain.BookFilter;
+
+public interface BookBulkDeleteRepository {
+
+    //deletes the books matching filter (every book when it is empty) with set-based statements, no entity is loaded
+    //authors left without books are deleted too, as CascadeType.ALL does for a single book
+    BookDeletion deleteMatching(BookFilter filter);
+}
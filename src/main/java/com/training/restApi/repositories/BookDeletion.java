@@ -0,0 +1,10 @@
+package com.training.restApi.repositories;
+
+import java.util.List;
+import java.util.Map;
+
+//Rows removed by BookBulkDeleteRepository.deleteMatching
+//books: isbn -> author id (null for a book without author) of every deleted book, only listed by a filtered delete
+//deletedAuthorIds: authors removed because their last book went
+public record BookDeletion(long count, Map<String, Long> books, List<Long> deletedAuthorIds) {
+}
@@ -0,0 +1,12 @@
+package com.training.restApi.repositories;
+
+import com.training.restApi.domain.entities.BookEntity;
+
+//Custom fragment of BookRepository, implemented in BookInsertRepositoryImpl
+public interface BookInsertRepository {
+
+    //Persist a book known to be new, its author must be managed or null
+    //save() would merge because the isbn is assigned, costing a SELECT per book
+    //the INSERT is queued and sent in a JDBC batch on flush
+    void insert(BookEntity bookEntity);
+}
@@ -0,0 +1,14 @@
+package com.training.restApi.repositories;
+
+import com.training.restApi.domain.entities.BookEntity;
+
+import java.util.Collection;
+import java.util.List;
+
+//Custom fragment of BookRepository, implemented in BookMultiGetRepositoryImpl
+public interface BookMultiGetRepository {
+
+    //Books with their authors for all isbns in one statement, isbns bound as a single array parameter
+    //missing isbns are simply not in the result, order is not defined
+    List<BookEntity> multiGet(Collection<String> isbns);
+}
@@ -0,0 +1,13 @@
+package com.training.restApi.repositories;
+
+import com.training.restApi.domain.entities.BookEntity;
+
+import java.util.Optional;
+
+//Custom fragment of BookRepository, implemented in BookPartialUpdateRepositoryImpl
+public interface BookPartialUpdateRepository {
+
+    //Update only the non-null fields in one statement, author is read back in the same statement
+    //empty Optional if the book does not exist
+    Optional<BookEntity> partialUpdate(String isbn, BookEntity bookEntity);
+}
@@ -1,13 +1,96 @@
 package com.training.restApi.repositories;
 
+import com.training.restApi.config.SecondLevelCacheConfig;
 import com.training.restApi.domain.entities.BookEntity;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Optional;
+
 @Repository
-public interface BookRepository extends CrudRepository <BookEntity, String>, PagingAndSortingRepository<BookEntity, String> {
+public interface BookRepository extends CrudRepository <BookEntity, String>, PagingAndSortingRepository<BookEntity, String>,
+        BookUpsertRepository, BookPartialUpdateRepository, BookInsertRepository, BookStreamRepository,
+        BookMultiGetRepository, BookSearchRepository, BookBulkDeleteRepository, JpaSpecificationExecutor<BookEntity> {
+
+    //Read paths fetch the author in the same query (LEFT JOIN) through the "author" entity graph
+    //instead of one author SELECT per book
+
+    @Override
+    @EntityGraph(attributePaths = "author")
+    Optional<BookEntity> findById(String isbn);
+
+    @Override
+    @EntityGraph(attributePaths = "author")
+    Iterable<BookEntity> findAll();
+
+    @Override
+    @EntityGraph(attributePaths = "author")
+    Iterable<BookEntity> findAllById(Iterable<String> isbns);
+
+    //Listing pages and their counts also go through the query cache, see SecondLevelCacheConfig
+    //a repeated page costs no query until a book or author is written, the fetched authors are cached with it
+
+    @Override
+    @EntityGraph(attributePaths = "author")
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = SecondLevelCacheConfig.BOOK_PAGES)
+    })
+    Page<BookEntity> findAll(Pageable pageable);
+
+    //filtered listing, see BookSpecifications
+    @Override
+    @EntityGraph(attributePaths = "author")
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = SecondLevelCacheConfig.BOOK_PAGES)
+    })
+    Page<BookEntity> findAll(Specification<BookEntity> spec, Pageable pageable);
+
+    //Keyset scrolling, WHERE on the sort keys of the last row instead of OFFSET, no COUNT query
+    @EntityGraph(attributePaths = "author")
+    Window<BookEntity> findBy(ScrollPosition position, Sort sort, Limit limit);
+
+    //version and author, empty when the book does not exist
+    @Query("SELECT b.version AS version, a.id AS authorId, a.version AS authorVersion " +
+            "FROM BookEntity b LEFT JOIN b.author a WHERE b.isbn = :isbn")
+    Optional<BookState> findStateById(String isbn);
+
+    //the same, with the book row locked until the transaction ends: a conditional write compares it
+    //with If-Match before anything is written (a nested author write would move the author version)
+    //the author version is a subquery, PostgreSQL locks no row on the nullable side of an outer join
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT b.version AS version, b.author.id AS authorId, " +
+            "(SELECT a.version FROM AuthorEntity a WHERE a.id = b.author.id) AS authorVersion " +
+            "FROM BookEntity b WHERE b.isbn = :isbn")
+    Optional<BookState> findStateForUpdate(String isbn);
+
+    long countByAuthorIsNull();
 }
 
 //PagingAndSortingRepository<T, ID> gives methods for pagination
 //pages are like lists but with metadata. Allows for better query manipulation
+//BookUpsertRepository adds the native insert-or-update used by PUT /books/{isbn}
+//BookPartialUpdateRepository adds the single statement PATCH /books/{isbn}
+//BookInsertRepository adds a plain persist for the bulk import
+//BookStreamRepository adds the cursor based read behind GET /books/export
+//BookMultiGetRepository adds the single statement lookup behind POST /books/_mget
+//BookSearchRepository adds the full-text search behind GET /books/search
+//BookBulkDeleteRepository adds the set-based DELETE /books, filtered or not
+//JpaSpecificationExecutor runs the filters of GET /books built by BookSpecifications
@@ -0,0 +1,14 @@
+package com.training.restApi.repositories;
+
+import com.training.restApi.domain.entities.BookEntity;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+//Custom fragment of BookRepository, implemented in BookSearchRepositoryImpl
+public interface BookSearchRepository {
+
+    //Books whose title and author name together contain every word of the query, each word as a prefix
+    //best matches first (title matches rank above author name matches), isbn breaks ties
+    //the sort of the pageable is ignored, the order is the relevance
+    Page<BookEntity> search(String query, Pageable pageable);
+}
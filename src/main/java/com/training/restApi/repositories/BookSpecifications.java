@@ -0,0 +1,50 @@
+package com.training.restApi.repositories;
+
+import com.training.restApi.domain.BookFilter;
+import com.training.restApi.domain.entities.BookEntity;
+import jakarta.persistence.criteria.Path;
+import org.springframework.data.jpa.domain.Specification;
+
+//WHERE clauses of the GET /books filters, each one backed by an index
+//(books.author_id, books.title, authors.age declared on the entities)
+public final class BookSpecifications {
+
+    private BookSpecifications() {
+    }
+
+    //filters that are not set add nothing
+    public static Specification<BookEntity> matching(BookFilter filter) {
+        return Specification.allOf(
+                authorIdIs(filter.getAuthorId()),
+                titleStartsWith(filter.getTitle()),
+                authorAgeBetween(filter.getMinAge(), filter.getMaxAge()));
+    }
+
+    //compares the author_id column, no join
+    public static Specification<BookEntity> authorIdIs(Long authorId) {
+        if (authorId == null) {
+            return null;
+        }
+        return (root, query, cb) -> cb.equal(root.get("author").get("id"), authorId);
+    }
+
+    public static Specification<BookEntity> titleStartsWith(String prefix) {
+        if (prefix == null) {
+            return null;
+        }
+        return (root, query, cb) -> cb.like(root.get("title"), LikePatterns.prefix(prefix), LikePatterns.ESCAPE);
+    }
+
+    public static Specification<BookEntity> authorAgeBetween(Integer minAge, Integer maxAge) {
+        if (minAge == null && maxAge == null) {
+            return null;
+        }
+        return (root, query, cb) -> {
+            Path<Integer> age = root.join("author").<Integer>get("age");
+            if (minAge == null) {
+                return cb.le(age, maxAge);
+            }
+            return maxAge == null ? cb.ge(age, minAge) : cb.between(age, minAge, maxAge);
+        };
+    }
+}
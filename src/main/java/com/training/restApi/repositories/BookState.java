@@ -0,0 +1,12 @@
+package com.training.restApi.repositories;
+
+//Version and author of a stored book, read before a write replaces them
+public interface BookState {
+    Long getVersion();
+
+    //null for a book without author
+    Long getAuthorId();
+
+    //null for a book without author
+    Long getAuthorVersion();
+}
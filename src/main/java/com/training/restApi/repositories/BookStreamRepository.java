@@ -0,0 +1,14 @@
+package com.training.restApi.repositories;
+
+import com.training.restApi.domain.entities.BookEntity;
+
+import java.util.function.Consumer;
+
+//Custom fragment of BookRepository, implemented in BookStreamRepositoryImpl
+public interface BookStreamRepository {
+
+    //Pass every book, author fetched in the same query, to the consumer in isbn order
+    //rows come from a cursor and are detached once consumed, so memory does not grow with the table
+    //must run inside a transaction (PostgreSQL only uses a cursor when autocommit is off)
+    void forEachBook(Consumer<BookEntity> consumer);
+}
@@ -0,0 +1,6 @@
+package com.training.restApi.repositories;
+
+//Outcome of BookUpsertRepository.upsert
+//previousAuthorId: author of the replaced row (null for a new book or one without author), read by the same statement
+public record BookUpsert(boolean created, Long previousAuthorId) {
+}
@@ -0,0 +1,15 @@
+package com.training.restApi.repositories;
+
+import com.training.restApi.domain.entities.BookEntity;
+
+//Custom fragment of BookRepository, implemented in BookUpsertRepositoryImpl
+public interface BookUpsertRepository {
+
+    //Insert or update the book row in one statement, which also reads the author it replaces
+    //the new version is set on bookEntity
+    //a version on bookEntity (If-Match) only updates the row at that version,
+    //otherwise OptimisticLockingFailureException
+    //a row written by a concurrent statement while this one ran -> OptimisticLockingFailureException,
+    //the author it replaced is not known
+    BookUpsert upsert(BookEntity bookEntity);
+}
@@ -0,0 +1,15 @@
+package com.training.restApi.repositories;
+
+//LIKE 'prefix%' with the wildcards of the prefix escaped, still an index range scan
+//(also used by the native filtered delete in repositories/impl)
+public final class LikePatterns {
+
+    public static final char ESCAPE = '\\';
+
+    private LikePatterns() {
+    }
+
+    public static String prefix(String prefix) {
+        return prefix.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+    }
+}
@@ -0,0 +1,31 @@
+package com.training.restApi.repositories.impl;
+
+import com.training.restApi.domain.entities.AuthorEntity;
+import com.training.restApi.repositories.AuthorMultiGetRepository;
+import jakarta.persistence.EntityManager;
+
+import java.util.Collection;
+import java.util.List;
+
+public class AuthorMultiGetRepositoryImpl implements AuthorMultiGetRepository {
+
+    //one statement text for any number of ids, see BookMultiGetRepositoryImpl
+    private static final String SELECT_BY_IDS = "SELECT id, name, age, version FROM authors WHERE id = ANY(?)";
+
+    private EntityManager entityManager;
+
+    public AuthorMultiGetRepositoryImpl(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    public List<AuthorEntity> multiGet(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        List<?> rows = entityManager.createNativeQuery(SELECT_BY_IDS)
+                .setParameter(1, ids.toArray(Long[]::new))
+                .getResultList();
+        return rows.stream().map(row -> EntityRows.toAuthor((Object[]) row, 0)).toList();
+    }
+}
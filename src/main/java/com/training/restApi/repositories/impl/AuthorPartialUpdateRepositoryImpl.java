@@ -0,0 +1,59 @@
+package com.training.restApi.repositories.impl;
+
+import com.training.restApi.domain.entities.AuthorEntity;
+import com.training.restApi.repositories.AuthorPartialUpdateRepository;
+import jakarta.persistence.EntityManager;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.Optional;
+
+public class AuthorPartialUpdateRepositoryImpl implements AuthorPartialUpdateRepository {
+
+    private static final String SELECT_LIST = "updated.id, updated.name, updated.age, updated.version";
+
+    private EntityManager entityManager;
+
+    private boolean postgres;
+
+    public AuthorPartialUpdateRepositoryImpl(EntityManager entityManager, DataSource dataSource) {
+        this.entityManager = entityManager;
+        this.postgres = Databases.isPostgres(dataSource);
+    }
+
+    @Override
+    public Optional<AuthorEntity> partialUpdate(Long id, AuthorEntity authorEntity) {
+        PartialUpdateQuery update = new PartialUpdateQuery("authors", "id", id)
+                .set("name", authorEntity.getName())
+                .set("age", authorEntity.getAge())
+                .expectVersion(authorEntity.getVersion())
+                .cachedAs(AuthorEntity.class);
+
+        //nothing to change, just look the author up
+        if (!update.hasAssignments()) {
+            AuthorEntity author = entityManager.find(AuthorEntity.class, id);
+            if (author != null) {
+                checkVersion(id, authorEntity.getVersion(), author.getVersion());
+            }
+            return Optional.ofNullable(author);
+        }
+
+        List<?> rows = update.execute(entityManager, postgres, SELECT_LIST, "");
+        //no row with a version given -> missing author or a version mismatch
+        if (rows.isEmpty() && authorEntity.getVersion() != null) {
+            AuthorEntity author = entityManager.find(AuthorEntity.class, id);
+            if (author != null) {
+                checkVersion(id, authorEntity.getVersion(), author.getVersion());
+            }
+        }
+        return rows.stream().findFirst().map(row -> EntityRows.toAuthor((Object[]) row, 0));
+    }
+
+    private static void checkVersion(Long id, Long expectedVersion, Long version) {
+        if (expectedVersion != null && !expectedVersion.equals(version)) {
+            throw new OptimisticLockingFailureException(
+                    "Author " + id + " is at version " + version + ", not " + expectedVersion);
+        }
+    }
+}
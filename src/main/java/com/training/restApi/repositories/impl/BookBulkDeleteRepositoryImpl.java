@@ -0,0 +1,124 @@
+package com.training.restApi.repositories.impl;
+
+import com.training.restApi.domain.BookFilter;
+import com.training.restApi.repositories.BookBulkDeleteRepository;
+import com.training.restApi.repositories.BookDeletion;
+import com.training.restApi.repositories.LikePatterns;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import org.springframework.beans.factory.annotation.Value;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+//Set-based, in chunks of at most chunkSize books, two statements per chunk:
+//1. DELETE of the next chunkSize matching books (WHERE isbn IN (SELECT ... LIMIT)), the deleted rows come back
+//2. DELETE of the authors of that chunk that no book references any more (NOT EXISTS)
+//until a chunk comes back short, nothing is selected beforehand and no statement binds more than chunkSize keys
+//an author whose books span several chunks goes with the chunk that deletes its last one
+//(the authors can't go first, the books still reference them)
+//PostgreSQL: DELETE ... RETURNING, H2: OLD TABLE delta table
+//a book that starts matching while the chunks run is deleted (and reported) as well
+public class BookBulkDeleteRepositoryImpl implements BookBulkDeleteRepository {
+
+    private static final String DELETE_AUTHORS = "DELETE FROM authors WHERE id = ANY(?) " +
+            "AND NOT EXISTS (SELECT 1 FROM books WHERE books.author_id = authors.id)";
+
+    private EntityManager entityManager;
+
+    private boolean postgres;
+
+    private int chunkSize;
+
+    public BookBulkDeleteRepositoryImpl(EntityManager entityManager, DataSource dataSource,
+                                        @Value("${bulk.delete-chunk-size:10000}") int chunkSize) {
+        this.entityManager = entityManager;
+        this.postgres = Databases.isPostgres(dataSource);
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public BookDeletion deleteMatching(BookFilter filter) {
+        //the rows come back from a query, Hibernate doesn't see the tables written
+        NativeWrites.written(entityManager, "books");
+        NativeWrites.written(entityManager, "authors");
+
+        //the books are only listed for a filtered delete, an unfiltered one clears the caches whole
+        Map<String, Long> books = new HashMap<>();
+        List<Long> deletedAuthorIds = new ArrayList<>();
+        long count = 0;
+        while (true) {
+            List<?> rows = deleteChunk(filter).getResultList();
+            Set<Long> authorIds = new LinkedHashSet<>();
+            for (Object row : rows) {
+                Object[] columns = (Object[]) row;
+                Long authorId = columns[1] == null ? null : ((Number) columns[1]).longValue();
+                if (!filter.isEmpty()) {
+                    books.put((String) columns[0], authorId);
+                }
+                if (authorId != null) {
+                    authorIds.add(authorId);
+                }
+            }
+            count += rows.size();
+            deletedAuthorIds.addAll(deleteOrphans(authorIds));
+            if (rows.size() < chunkSize) {
+                return new BookDeletion(count, books, deletedAuthorIds);
+            }
+        }
+    }
+
+    //the same conditions as BookSpecifications, in SQL
+    private Query deleteChunk(BookFilter filter) {
+        StringBuilder matching = new StringBuilder("SELECT isbn FROM books WHERE 1 = 1");
+        List<Object> parameters = new ArrayList<>();
+        if (filter.getAuthorId() != null) {
+            matching.append(" AND author_id = ?");
+            parameters.add(filter.getAuthorId());
+        }
+        if (filter.getTitle() != null) {
+            matching.append(" AND title LIKE ? ESCAPE '").append(LikePatterns.ESCAPE).append("'");
+            parameters.add(LikePatterns.prefix(filter.getTitle()));
+        }
+        if (filter.getMinAge() != null || filter.getMaxAge() != null) {
+            matching.append(" AND author_id IN (SELECT id FROM authors WHERE age BETWEEN ? AND ?)");
+            parameters.add(filter.getMinAge() == null ? Integer.MIN_VALUE : filter.getMinAge());
+            parameters.add(filter.getMaxAge() == null ? Integer.MAX_VALUE : filter.getMaxAge());
+        }
+        matching.append(" LIMIT ?");
+        parameters.add(chunkSize);
+
+        String delete = "DELETE FROM books WHERE isbn IN (" + matching + ")";
+        Query query = entityManager.createNativeQuery(returning(delete, "isbn, author_id"));
+        for (int i = 0; i < parameters.size(); i++) {
+            query.setParameter(i + 1, parameters.get(i));
+        }
+        return query;
+    }
+
+    //authors of the chunk that no other book references, returns the ids deleted
+    private List<Long> deleteOrphans(Set<Long> authorIds) {
+        if (authorIds.isEmpty()) {
+            return List.of();
+        }
+        List<Long> deleted = new ArrayList<>();
+        for (Object id : entityManager.createNativeQuery(returning(DELETE_AUTHORS, "id"))
+                .setParameter(1, authorIds.toArray(Long[]::new))
+                .getResultList()) {
+            deleted.add(((Number) id).longValue());
+        }
+        return deleted;
+    }
+
+    private String returning(String delete, String columns) {
+        if (postgres) {
+            return delete + " RETURNING " + columns;
+        }
+        return "SELECT " + columns + " FROM OLD TABLE (" + delete + ")";
+    }
+}
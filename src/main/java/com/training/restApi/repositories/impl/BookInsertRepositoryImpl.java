@@ -0,0 +1,19 @@
+package com.training.restApi.repositories.impl;
+
+import com.training.restApi.domain.entities.BookEntity;
+import com.training.restApi.repositories.BookInsertRepository;
+import jakarta.persistence.EntityManager;
+
+public class BookInsertRepositoryImpl implements BookInsertRepository {
+
+    private EntityManager entityManager;
+
+    public BookInsertRepositoryImpl(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    public void insert(BookEntity bookEntity) {
+        entityManager.persist(bookEntity);
+    }
+}
@@ -0,0 +1,34 @@
+package com.training.restApi.repositories.impl;
+
+import com.training.restApi.domain.entities.BookEntity;
+import com.training.restApi.repositories.BookMultiGetRepository;
+import jakarta.persistence.EntityManager;
+
+import java.util.Collection;
+import java.util.List;
+
+public class BookMultiGetRepositoryImpl implements BookMultiGetRepository {
+
+    //= ANY(array) keeps one statement text (and one plan) for any number of isbns
+    //and still uses the primary key index, unlike IN lists that change with every size
+    private static final String SELECT_BY_ISBNS =
+            "SELECT b.isbn, b.title, b.version, a.id, a.name, a.age, a.version " +
+            "FROM books b LEFT JOIN authors a ON a.id = b.author_id WHERE b.isbn = ANY(?)";
+
+    private EntityManager entityManager;
+
+    public BookMultiGetRepositoryImpl(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    public List<BookEntity> multiGet(Collection<String> isbns) {
+        if (isbns.isEmpty()) {
+            return List.of();
+        }
+        List<?> rows = entityManager.createNativeQuery(SELECT_BY_ISBNS)
+                .setParameter(1, isbns.toArray(String[]::new))
+                .getResultList();
+        return rows.stream().map(row -> EntityRows.toBook((Object[]) row)).toList();
+    }
+}
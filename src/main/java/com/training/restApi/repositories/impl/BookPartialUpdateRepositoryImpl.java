@@ -0,0 +1,61 @@
+package com.training.restApi.repositories.impl;
+
+import com.training.restApi.domain.entities.BookEntity;
+import com.training.restApi.repositories.BookPartialUpdateRepository;
+import jakarta.persistence.EntityManager;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.Optional;
+
+public class BookPartialUpdateRepositoryImpl implements BookPartialUpdateRepository {
+
+    //author columns come from the join, so the response needs no second SELECT
+    private static final String SELECT_LIST = "updated.isbn, updated.title, updated.version, a.id, a.name, a.age, a.version";
+
+    private static final String AUTHOR_JOIN = "LEFT JOIN authors a ON a.id = updated.author_id";
+
+    private EntityManager entityManager;
+
+    private boolean postgres;
+
+    public BookPartialUpdateRepositoryImpl(EntityManager entityManager, DataSource dataSource) {
+        this.entityManager = entityManager;
+        this.postgres = Databases.isPostgres(dataSource);
+    }
+
+    @Override
+    public Optional<BookEntity> partialUpdate(String isbn, BookEntity bookEntity) {
+        PartialUpdateQuery update = new PartialUpdateQuery("books", "isbn", isbn)
+                .set("title", bookEntity.getTitle())
+                .set("author_id", bookEntity.getAuthor() == null ? null : bookEntity.getAuthor().getId())
+                .expectVersion(bookEntity.getVersion());
+
+        //nothing to change, just look the book up
+        if (!update.hasAssignments()) {
+            BookEntity book = entityManager.find(BookEntity.class, isbn);
+            if (book != null) {
+                checkVersion(isbn, bookEntity.getVersion(), book.getVersion());
+            }
+            return Optional.ofNullable(book);
+        }
+
+        List<?> rows = update.execute(entityManager, postgres, SELECT_LIST, AUTHOR_JOIN);
+        //no row with a version given -> missing book or a version mismatch
+        if (rows.isEmpty() && bookEntity.getVersion() != null) {
+            BookEntity book = entityManager.find(BookEntity.class, isbn);
+            if (book != null) {
+                checkVersion(isbn, bookEntity.getVersion(), book.getVersion());
+            }
+        }
+        return rows.stream().findFirst().map(row -> EntityRows.toBook((Object[]) row));
+    }
+
+    private static void checkVersion(String isbn, Long expectedVersion, Long version) {
+        if (expectedVersion != null && !expectedVersion.equals(version)) {
+            throw new OptimisticLockingFailureException(
+                    "Book " + isbn + " is at version " + version + ", not " + expectedVersion);
+        }
+    }
+}
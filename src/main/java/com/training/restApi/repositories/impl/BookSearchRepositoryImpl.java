@@ -0,0 +1,136 @@
+package com.training.restApi.repositories.impl;
+
+import com.training.restApi.domain.entities.BookEntity;
+import com.training.restApi.repositories.BookSearchRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.support.PageableExecutionUtils;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+public class BookSearchRepositoryImpl implements BookSearchRepository {
+
+    //letters and digits only, so a word is never tsquery or LIKE syntax
+    private static final Pattern WORD = Pattern.compile("[\\p{L}\\p{N}]+");
+    //words past this are ignored
+    private static final int MAX_WORDS = 8;
+
+    private static final String COLUMNS = "SELECT b.isbn, b.title, b.version, a.id, a.name, a.age, a.version ";
+
+    //title and author name of a book as one document, title words weigh more in the rank
+    private static final String POSTGRES_DOCUMENT =
+            "(setweight(to_tsvector('simple', coalesce(b.title, '')), 'A') || " +
+            "setweight(to_tsvector('simple', coalesce(a.name, '')), 'B'))";
+
+    //the candidates come from the GIN indexes of SearchIndexes (same expressions, or the planner ignores them):
+    //books with any of the words in the title or in the name of their author
+    //then every word has to be in title and author name together
+    private static final String POSTGRES_FROM =
+            "FROM (SELECT b.isbn FROM books b " +
+            "WHERE to_tsvector('simple', coalesce(b.title, '')) @@ to_tsquery('simple', :anyWord) " +
+            "UNION SELECT b.isbn FROM authors a JOIN books b ON b.author_id = a.id " +
+            "WHERE to_tsvector('simple', coalesce(a.name, '')) @@ to_tsquery('simple', :anyWord)) hit " +
+            "JOIN books b ON b.isbn = hit.isbn LEFT JOIN authors a ON a.id = b.author_id " +
+            "WHERE " + POSTGRES_DOCUMENT + " @@ to_tsquery('simple', :allWords) ";
+
+    private static final String POSTGRES_ORDER =
+            "ORDER BY ts_rank(" + POSTGRES_DOCUMENT + ", to_tsquery('simple', :allWords)) DESC, b.isbn";
+
+    private EntityManager entityManager;
+
+    private boolean postgres;
+
+    public BookSearchRepositoryImpl(EntityManager entityManager, DataSource dataSource) {
+        this.entityManager = entityManager;
+        this.postgres = Databases.isPostgres(dataSource);
+    }
+
+    @Override
+    public Page<BookEntity> search(String query, Pageable pageable) {
+        List<String> words = words(query);
+        if (words.isEmpty()) {
+            return Page.empty(pageable);
+        }
+
+        Query select = postgres ? postgresSelect(words) : h2Select(words);
+        if (pageable.isPaged()) {
+            select.setFirstResult((int) pageable.getOffset()).setMaxResults(pageable.getPageSize());
+        }
+        List<?> rows = select.getResultList();
+        List<BookEntity> books = rows.stream().map(row -> EntityRows.toBook((Object[]) row)).toList();
+
+        //count only when the page does not already tell the total (not needed for a short first page)
+        return PageableExecutionUtils.getPage(books, pageable, () ->
+                ((Number) (postgres ? postgresCount(words) : h2Count(words)).getSingleResult()).longValue());
+    }
+
+    private static List<String> words(String query) {
+        List<String> words = new ArrayList<>();
+        Matcher matcher = WORD.matcher(query == null ? "" : query);
+        while (matcher.find() && words.size() < MAX_WORDS) {
+            words.add(matcher.group().toLowerCase(Locale.ROOT));
+        }
+        return words;
+    }
+
+    //every word as a prefix, "hob tolk" -> hob:* | tolk:* and hob:* & tolk:*
+    private Query postgresSelect(List<String> words) {
+        return bindTsQueries(entityManager.createNativeQuery(COLUMNS + POSTGRES_FROM + POSTGRES_ORDER), words);
+    }
+
+    private Query postgresCount(List<String> words) {
+        return bindTsQueries(entityManager.createNativeQuery("SELECT count(*) " + POSTGRES_FROM), words);
+    }
+
+    private static Query bindTsQueries(Query query, List<String> words) {
+        return query
+                .setParameter("anyWord", words.stream().map(word -> word + ":*").collect(Collectors.joining(" | ")))
+                .setParameter("allWords", words.stream().map(word -> word + ":*").collect(Collectors.joining(" & ")));
+    }
+
+    //Other databases (H2 in tests) have no full-text type, a word matches the start of any word of a column
+    //no index is used, fine for the test data only
+    private Query h2Select(List<String> words) {
+        StringBuilder rank = new StringBuilder();
+        for (int i = 0; i < words.size(); i++) {
+            rank.append(i == 0 ? "" : " + ")
+                    .append("CASE WHEN ").append(h2Matches("b.title", i)).append(" THEN 2 ")
+                    .append("WHEN ").append(h2Matches("a.name", i)).append(" THEN 1 ELSE 0 END");
+        }
+        String sql = COLUMNS + h2From(words) + "ORDER BY " + rank + " DESC, b.isbn";
+        return bindLikePatterns(entityManager.createNativeQuery(sql), words);
+    }
+
+    private Query h2Count(List<String> words) {
+        return bindLikePatterns(entityManager.createNativeQuery("SELECT count(*) " + h2From(words)), words);
+    }
+
+    private static String h2From(List<String> words) {
+        StringBuilder where = new StringBuilder();
+        for (int i = 0; i < words.size(); i++) {
+            where.append(i == 0 ? "" : " AND ")
+                    .append("(").append(h2Matches("b.title", i)).append(" OR ").append(h2Matches("a.name", i)).append(")");
+        }
+        return "FROM books b LEFT JOIN authors a ON a.id = b.author_id WHERE " + where + " ";
+    }
+
+    private static String h2Matches(String column, int word) {
+        return "(LOWER(" + column + ") LIKE :prefix" + word + " OR LOWER(" + column + ") LIKE :inner" + word + ")";
+    }
+
+    private static Query bindLikePatterns(Query query, List<String> words) {
+        for (int i = 0; i < words.size(); i++) {
+            query.setParameter("prefix" + i, words.get(i) + "%")
+                    .setParameter("inner" + i, "% " + words.get(i) + "%");
+        }
+        return query;
+    }
+}
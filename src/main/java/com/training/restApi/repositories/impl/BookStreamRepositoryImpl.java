@@ -0,0 +1,41 @@
+package com.training.restApi.repositories.impl;
+
+import com.training.restApi.domain.entities.BookEntity;
+import com.training.restApi.repositories.BookStreamRepository;
+import jakarta.persistence.EntityManager;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+public class BookStreamRepositoryImpl implements BookStreamRepository {
+
+    private EntityManager entityManager;
+
+    //rows per round trip to the database, the persistence context is cleared at the same interval
+    private int fetchSize;
+
+    public BookStreamRepositoryImpl(EntityManager entityManager, @Value("${export.fetch-size:1000}") int fetchSize) {
+        this.entityManager = entityManager;
+        this.fetchSize = fetchSize;
+    }
+
+    @Override
+    public void forEachBook(Consumer<BookEntity> consumer) {
+        try (Stream<BookEntity> books = entityManager
+                .createQuery("SELECT b FROM BookEntity b LEFT JOIN FETCH b.author ORDER BY b.isbn", BookEntity.class)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, fetchSize)
+                //no dirty checking snapshots for rows that are only read
+                .setHint(HibernateHints.HINT_READ_ONLY, true)
+                .getResultStream()) {
+            int count = 0;
+            for (BookEntity book : (Iterable<BookEntity>) books::iterator) {
+                consumer.accept(book);
+                if (++count % fetchSize == 0) {
+                    entityManager.clear();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.training.restApi.repositories.impl;
+
+import com.training.restApi.domain.entities.BookEntity;
+import com.training.restApi.repositories.BookUpsert;
+import com.training.restApi.repositories.BookUpsertRepository;
+import jakarta.persistence.EntityManager;
+import org.hibernate.query.TypedParameterValue;
+import org.hibernate.type.StandardBasicTypes;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+public class BookUpsertRepositoryImpl implements BookUpsertRepository {
+
+    //xmax is 0 for a freshly inserted row and set for a row updated by ON CONFLICT
+    //old is the row in the statement's snapshot, the author the book moves away from
+    //a write committed after that snapshot is updated over by ON CONFLICT, then the version is not old's + 1
+    private static final String POSTGRES_UPSERT =
+            "WITH old AS (SELECT author_id, version FROM books WHERE isbn = ?) " +
+            "INSERT INTO books (isbn, title, author_id, version) VALUES (?, ?, ?, 0) " +
+            "ON CONFLICT (isbn) DO UPDATE SET title = EXCLUDED.title, author_id = EXCLUDED.author_id, " +
+            "version = books.version + 1 " +
+            "RETURNING (xmax = 0) AS created, version, (SELECT version FROM old), (SELECT author_id FROM old)";
+
+    //H2 reads the replaced row from the OLD TABLE of the update, the new version is its version + 1
+    private static final String UPDATE =
+            "SELECT author_id, version FROM OLD TABLE (UPDATE books SET title = ?, author_id = ?, version = version + 1 WHERE isbn = ?)";
+
+    private static final String INSERT = "INSERT INTO books (isbn, title, author_id, version) VALUES (?, ?, ?, 0)";
+
+    //If-Match: only an existing row at the expected version is updated, never an insert
+    //the row can't change between the snapshot and the update, the version would no longer match
+    private static final String POSTGRES_CONDITIONAL_UPDATE =
+            "WITH old AS (SELECT author_id FROM books WHERE isbn = ?) " +
+            "UPDATE books SET title = ?, author_id = ?, version = version + 1 WHERE isbn = ? AND version = ? " +
+            "RETURNING (SELECT author_id FROM old)";
+
+    private static final String CONDITIONAL_UPDATE =
+            "SELECT author_id FROM OLD TABLE (UPDATE books SET title = ?, author_id = ?, version = version + 1 " +
+            "WHERE isbn = ? AND version = ?)";
+
+    //native queries through the EntityManager flush pending writes (eg. a new author) first
+    private EntityManager entityManager;
+
+    private boolean postgres;
+
+    public BookUpsertRepositoryImpl(EntityManager entityManager, DataSource dataSource) {
+        this.entityManager = entityManager;
+        this.postgres = Databases.isPostgres(dataSource);
+    }
+
+    @Override
+    public BookUpsert upsert(BookEntity bookEntity) {
+        //typed so a null author_id still binds as bigint on PostgreSQL
+        TypedParameterValue<Long> authorId = new TypedParameterValue<>(StandardBasicTypes.LONG,
+                bookEntity.getAuthor() == null ? null : bookEntity.getAuthor().getId());
+
+        if (bookEntity.getVersion() != null) {
+            return conditionalUpdate(bookEntity, authorId);
+        }
+
+        if (postgres) {
+            Object[] row = (Object[]) entityManager.createNativeQuery(POSTGRES_UPSERT)
+                    .setParameter(1, bookEntity.getIsbn())
+                    .setParameter(2, bookEntity.getIsbn())
+                    .setParameter(3, bookEntity.getTitle())
+                    .setParameter(4, authorId)
+                    .getSingleResult();
+            NativeWrites.written(entityManager, "books");
+            long version = ((Number) row[1]).longValue();
+            bookEntity.setVersion(version);
+            if (Boolean.TRUE.equals(row[0])) {
+                return new BookUpsert(true, null);
+            }
+            if (row[2] == null || ((Number) row[2]).longValue() + 1 != version) {
+                throw new OptimisticLockingFailureException("Book " + bookEntity.getIsbn() + " was written concurrently");
+            }
+            return new BookUpsert(false, toLong(row[3]));
+        }
+
+        //other databases (H2 in tests): try the update first, insert when no row matched
+        List<?> updated = entityManager.createNativeQuery(UPDATE)
+                .setParameter(1, bookEntity.getTitle())
+                .setParameter(2, authorId)
+                .setParameter(3, bookEntity.getIsbn())
+                .getResultList();
+        NativeWrites.written(entityManager, "books");
+        if (!updated.isEmpty()) {
+            Object[] old = (Object[]) updated.get(0);
+            bookEntity.setVersion(((Number) old[1]).longValue() + 1);
+            return new BookUpsert(false, toLong(old[0]));
+        }
+        NativeWrites.update(entityManager, INSERT, "books")
+                .setParameter(1, bookEntity.getIsbn())
+                .setParameter(2, bookEntity.getTitle())
+                .setParameter(3, authorId)
+                .executeUpdate();
+        bookEntity.setVersion(0L);
+        return new BookUpsert(true, null);
+    }
+
+    private BookUpsert conditionalUpdate(BookEntity bookEntity, TypedParameterValue<Long> authorId) {
+        List<?> updated;
+        if (postgres) {
+            updated = entityManager.createNativeQuery(POSTGRES_CONDITIONAL_UPDATE)
+                    .setParameter(1, bookEntity.getIsbn())
+                    .setParameter(2, bookEntity.getTitle())
+                    .setParameter(3, authorId)
+                    .setParameter(4, bookEntity.getIsbn())
+                    .setParameter(5, bookEntity.getVersion())
+                    .getResultList();
+        } else {
+            updated = entityManager.createNativeQuery(CONDITIONAL_UPDATE)
+                    .setParameter(1, bookEntity.getTitle())
+                    .setParameter(2, authorId)
+                    .setParameter(3, bookEntity.getIsbn())
+                    .setParameter(4, bookEntity.getVersion())
+                    .getResultList();
+        }
+        NativeWrites.written(entityManager, "books");
+        if (updated.isEmpty()) {
+            throw new OptimisticLockingFailureException(
+                    "Book " + bookEntity.getIsbn() + " does not exist at version " + bookEntity.getVersion());
+        }
+        bookEntity.setVersion(bookEntity.getVersion() + 1);
+        return new BookUpsert(false, toLong(updated.get(0)));
+    }
+
+    private static Long toLong(Object value) {
+        return value == null ? null : ((Number) value).longValue();
+    }
+}
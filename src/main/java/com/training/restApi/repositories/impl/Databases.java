@@ -0,0 +1,23 @@
+package com.training.restApi.repositories.impl;
+
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+
+import javax.sql.DataSource;
+import java.sql.DatabaseMetaData;
+
+//Native statements differ between PostgreSQL and the H2 database used in tests
+final class Databases {
+
+    private Databases() {
+    }
+
+    static boolean isPostgres(DataSource dataSource) {
+        try {
+            String productName = JdbcUtils.extractDatabaseMetaData(dataSource, DatabaseMetaData::getDatabaseProductName);
+            return "PostgreSQL".equals(productName);
+        } catch (MetaDataAccessException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.training.restApi.repositories.impl;
+
+import com.training.restApi.domain.entities.AuthorEntity;
+import com.training.restApi.domain.entities.BookEntity;
+
+//Native query rows -> detached entities
+//author columns: id, name, age, version
+//book columns: isbn, title, version, then the author columns (LEFT JOIN, all null without an author)
+final class EntityRows {
+
+    private EntityRows() {
+    }
+
+    static AuthorEntity toAuthor(Object[] row, int from) {
+        if (row[from] == null) {
+            return null;
+        }
+        return AuthorEntity.builder()
+                .id(((Number) row[from]).longValue())
+                .name((String) row[from + 1])
+                .age(row[from + 2] == null ? null : ((Number) row[from + 2]).intValue())
+                .version(((Number) row[from + 3]).longValue())
+                .build();
+    }
+
+    static BookEntity toBook(Object[] row) {
+        return BookEntity.builder()
+                .isbn((String) row[0])
+                .title((String) row[1])
+                .version(((Number) row[2]).longValue())
+                .author(toAuthor(row, 3))
+                .build();
+    }
+}
@@ -0,0 +1,51 @@
+package com.training.restApi.repositories.impl;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import org.hibernate.action.internal.BulkOperationCleanupAction;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.cache.spi.CacheImplementor;
+import org.hibernate.cache.spi.TimestampsCache;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.query.NativeQuery;
+
+import java.util.Set;
+
+//Native writes made visible to the second-level and query caches, see SecondLevelCacheConfig
+//Hibernate can't tell which tables a native statement writes:
+//executeUpdate() without a declared table evicts every cache region, a write that returns rows
+//(RETURNING, FINAL TABLE) runs as a query and evicts nothing
+final class NativeWrites {
+
+    private NativeWrites() {
+    }
+
+    //for executeUpdate(), only the regions of table are evicted
+    static Query update(EntityManager entityManager, String sql, String table) {
+        return entityManager.createNativeQuery(sql)
+                .unwrap(NativeQuery.class)
+                .addSynchronizedQuerySpace(table);
+    }
+
+    //after a write run as a query: the same eviction executeUpdate() does, before and after the commit,
+    //so a concurrent reader can't cache the old row in between
+    static void written(EntityManager entityManager, String table) {
+        BulkOperationCleanupAction.schedule(entityManager.unwrap(SharedSessionContractImplementor.class), Set.of(table));
+    }
+
+    //after a write of the single row id of a cached entity, run as a query: the cached pages of table
+    //are invalidated like written(...) does, but only that row leaves the entity region, not every row
+    static void written(EntityManager entityManager, String table, Class<?> entityClass, Object id) {
+        SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+        String[] spaces = {table};
+        CacheImplementor cache = session.getFactory().getCache();
+        TimestampsCache timestamps = cache.getTimestampsCache();
+        timestamps.preInvalidate(spaces, session);
+        cache.evictEntityData(entityClass, id);
+        session.getActionQueue().registerProcess((AfterTransactionCompletionProcess) (success, completedSession) -> {
+            timestamps.invalidate(spaces, completedSession);
+            cache.evictEntityData(entityClass, id);
+        });
+    }
+}
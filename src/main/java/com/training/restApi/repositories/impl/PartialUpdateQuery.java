@@ -0,0 +1,99 @@
+package com.training.restApi.repositories.impl;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+//Builds a single UPDATE from the non-null fields of a PATCH body
+//and selects the updated row in the same statement, so no prior findById is needed
+//an empty result means no row matched the id (or the expected version)
+//every update bumps the @Version column, JPA does not see native statements
+//the second-level and query caches of the table are invalidated through NativeWrites
+class PartialUpdateQuery {
+
+    private final String table;
+    private final String idColumn;
+    private final Object id;
+    //column -> new value, insertion order is the SET order
+    private final Map<String, Object> assignments = new LinkedHashMap<>();
+    //If-Match version, null -> update whatever version is stored
+    private Long expectedVersion;
+    //entity kept in the second-level cache, only its updated row is evicted there
+    private Class<?> cachedEntity;
+
+    PartialUpdateQuery(String table, String idColumn, Object id) {
+        this.table = table;
+        this.idColumn = idColumn;
+        this.id = id;
+    }
+
+    //null means "not sent" in a partial update, so the column is left out
+    PartialUpdateQuery set(String column, Object value) {
+        if (value != null) {
+            assignments.put(column, value);
+        }
+        return this;
+    }
+
+    PartialUpdateQuery expectVersion(Long version) {
+        this.expectedVersion = version;
+        return this;
+    }
+
+    PartialUpdateQuery cachedAs(Class<?> entityClass) {
+        this.cachedEntity = entityClass;
+        return this;
+    }
+
+    boolean hasAssignments() {
+        return !assignments.isEmpty();
+    }
+
+    //selectList and joins refer to the updated row as "updated"
+    //PostgreSQL: data-modifying CTE with RETURNING
+    //H2: FINAL TABLE delta table
+    String toSql(boolean postgres, String selectList, String joins) {
+        StringBuilder update = new StringBuilder("UPDATE ").append(table).append(" SET ");
+        update.append(String.join(" = ?, ", assignments.keySet())).append(" = ?");
+        update.append(", version = version + 1");
+        update.append(" WHERE ").append(idColumn).append(" = ?");
+        if (expectedVersion != null) {
+            update.append(" AND version = ?");
+        }
+
+        if (postgres) {
+            return "WITH updated AS (" + update + " RETURNING *) SELECT " + selectList + " FROM updated " + joins;
+        }
+        return "SELECT " + selectList + " FROM FINAL TABLE (" + update + ") updated " + joins;
+    }
+
+    //positional parameters in the order they appear in toSql
+    private List<Object> parameters() {
+        List<Object> parameters = new ArrayList<>(assignments.values());
+        parameters.add(id);
+        if (expectedVersion != null) {
+            parameters.add(expectedVersion);
+        }
+        return parameters;
+    }
+
+    //runs the statement, each row is an Object[] in selectList order
+    List<?> execute(EntityManager entityManager, boolean postgres, String selectList, String joins) {
+        Query query = entityManager.createNativeQuery(toSql(postgres, selectList, joins));
+        List<Object> parameters = parameters();
+        for (int i = 0; i < parameters.size(); i++) {
+            query.setParameter(i + 1, parameters.get(i));
+        }
+        List<?> rows = query.getResultList();
+        if (cachedEntity != null) {
+            NativeWrites.written(entityManager, table, cachedEntity, id);
+        } else {
+            NativeWrites.written(entityManager, table);
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,55 @@
+package com.training.restApi.repositories.impl;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+//PostgreSQL indexes that ddl-auto can't declare, created here once the tables exist
+//GIN expression indexes behind BookSearchRepositoryImpl
+//text_pattern_ops for the LIKE 'prefix%' filters, the plain indexes on the entities only serve LIKE
+//when the database collation is C
+//(the EntityManagerFactory is only built after Hibernate has updated the schema)
+//built CONCURRENTLY, so writes to the tables go on while the first start against a large catalogue builds them
+//(outside a transaction: JdbcTemplate on the DataSource runs each statement in autocommit)
+//a concurrent build that failed leaves an invalid index behind, which IF NOT EXISTS would keep, it is dropped first
+@Component
+class SearchIndexes {
+
+    private static final List<Index> INDEXES = List.of(
+            new Index("books_title_fts", "ON books USING GIN (to_tsvector('simple', coalesce(title, '')))"),
+            new Index("authors_name_fts", "ON authors USING GIN (to_tsvector('simple', coalesce(name, '')))"),
+            new Index("books_title_prefix_idx", "ON books (title text_pattern_ops)"),
+            new Index("authors_name_prefix_idx", "ON authors (name text_pattern_ops)")
+    );
+
+    private static final String IS_VALID = "SELECT i.indisvalid FROM pg_index i JOIN pg_class c ON c.oid = i.indexrelid " +
+            "WHERE c.relname = ? AND pg_table_is_visible(c.oid)";
+
+    private DataSource dataSource;
+
+    SearchIndexes(DataSource dataSource, EntityManagerFactory entityManagerFactory) {
+        this.dataSource = dataSource;
+    }
+
+    @PostConstruct
+    void create() {
+        if (!Databases.isPostgres(dataSource)) {
+            return;
+        }
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        for (Index index : INDEXES) {
+            List<Boolean> valid = jdbcTemplate.queryForList(IS_VALID, Boolean.class, index.name());
+            if (valid.contains(Boolean.FALSE)) {
+                jdbcTemplate.execute("DROP INDEX CONCURRENTLY IF EXISTS " + index.name());
+            }
+            jdbcTemplate.execute("CREATE INDEX CONCURRENTLY IF NOT EXISTS " + index.name() + " " + index.definition());
+        }
+    }
+
+    private record Index(String name, String definition) {
+    }
+}
@@ -0,0 +1,68 @@
+package com.training.restApi.repositories.reactive;
+
+import com.training.restApi.domain.entities.AuthorEntity;
+import io.r2dbc.spi.Readable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+//Non-blocking author reads over R2DBC for the /reactive endpoints
+@Repository
+public class ReactiveAuthorRepository {
+
+    private static final String SELECT = "SELECT a.id, a.name, a.age FROM authors a";
+
+    private static final Map<String, String> SORT_COLUMNS = Map.of("id", "a.id", "name", "a.name", "age", "a.age");
+
+    private DatabaseClient databaseClient;
+
+    private int fetchSize;
+
+    public ReactiveAuthorRepository(DatabaseClient databaseClient, @Value("${export.fetch-size:1000}") int fetchSize) {
+        this.databaseClient = databaseClient;
+        this.fetchSize = fetchSize;
+    }
+
+    public Mono<AuthorEntity> findById(Long id) {
+        return databaseClient.sql(SELECT + " WHERE a.id = :id")
+                .bind("id", id)
+                .map(ReactiveAuthorRepository::toAuthor)
+                .one();
+    }
+
+    public Flux<AuthorEntity> findAll(Pageable pageable) {
+        String orderBy = ReactiveSort.orderBy(pageable.getSort().and(Sort.by("id")), SORT_COLUMNS, AuthorEntity.class);
+        return databaseClient.sql(SELECT + orderBy + " LIMIT :limit OFFSET :offset")
+                .bind("limit", pageable.getPageSize())
+                .bind("offset", pageable.getOffset())
+                .map(ReactiveAuthorRepository::toAuthor)
+                .all();
+    }
+
+    public Mono<Long> count() {
+        return databaseClient.sql("SELECT COUNT(*) FROM authors")
+                .map(row -> row.get(0, Long.class))
+                .one();
+    }
+
+    public Flux<AuthorEntity> streamAll() {
+        return databaseClient.sql(SELECT + " ORDER BY a.id")
+                .filter(statement -> statement.fetchSize(fetchSize))
+                .map(ReactiveAuthorRepository::toAuthor)
+                .all();
+    }
+
+    private static AuthorEntity toAuthor(Readable row) {
+        return AuthorEntity.builder()
+                .id(row.get(0, Long.class))
+                .name(row.get(1, String.class))
+                .age(row.get(2, Integer.class))
+                .build();
+    }
+}
@@ -0,0 +1,84 @@
+package com.training.restApi.repositories.reactive;
+
+import com.training.restApi.domain.entities.AuthorEntity;
+import com.training.restApi.domain.entities.BookEntity;
+import io.r2dbc.spi.Readable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+//Non-blocking book reads over R2DBC for the /reactive endpoints
+//rows become the same entities as on the JPA side (detached, author joined in the same query)
+@Repository
+public class ReactiveBookRepository {
+
+    private static final String SELECT =
+            "SELECT b.isbn, b.title, a.id, a.name, a.age FROM books b LEFT JOIN authors a ON a.id = b.author_id";
+
+    //sortable properties -> columns, anything else is rejected
+    private static final Map<String, String> SORT_COLUMNS = Map.of("isbn", "b.isbn", "title", "b.title");
+
+    private DatabaseClient databaseClient;
+
+    //rows per round trip while streaming, the subscriber's demand decides when the next one is fetched
+    private int fetchSize;
+
+    public ReactiveBookRepository(DatabaseClient databaseClient, @Value("${export.fetch-size:1000}") int fetchSize) {
+        this.databaseClient = databaseClient;
+        this.fetchSize = fetchSize;
+    }
+
+    public Mono<BookEntity> findById(String isbn) {
+        return databaseClient.sql(SELECT + " WHERE b.isbn = :isbn")
+                .bind("isbn", isbn)
+                .map(ReactiveBookRepository::toBook)
+                .one();
+    }
+
+    //one page, the isbn keeps the order stable between pages
+    public Flux<BookEntity> findAll(Pageable pageable) {
+        String orderBy = ReactiveSort.orderBy(pageable.getSort().and(Sort.by("isbn")), SORT_COLUMNS, BookEntity.class);
+        return databaseClient.sql(SELECT + orderBy + " LIMIT :limit OFFSET :offset")
+                .bind("limit", pageable.getPageSize())
+                .bind("offset", pageable.getOffset())
+                .map(ReactiveBookRepository::toBook)
+                .all();
+    }
+
+    public Mono<Long> count() {
+        return databaseClient.sql("SELECT COUNT(*) FROM books")
+                .map(row -> row.get(0, Long.class))
+                .one();
+    }
+
+    //every book ordered by isbn
+    public Flux<BookEntity> streamAll() {
+        return databaseClient.sql(SELECT + " ORDER BY b.isbn")
+                .filter(statement -> statement.fetchSize(fetchSize))
+                .map(ReactiveBookRepository::toBook)
+                .all();
+    }
+
+    private static BookEntity toBook(Readable row) {
+        AuthorEntity author = null;
+        Long authorId = row.get(2, Long.class);
+        if (authorId != null) {
+            author = AuthorEntity.builder()
+                    .id(authorId)
+                    .name(row.get(3, String.class))
+                    .age(row.get(4, Integer.class))
+                    .build();
+        }
+        return BookEntity.builder()
+                .isbn(row.get(0, String.class))
+                .title(row.get(1, String.class))
+                .author(author)
+                .build();
+    }
+}
@@ -0,0 +1,34 @@
+package com.training.restApi.repositories.reactive;
+
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mapping.PropertyReferenceException;
+import org.springframework.data.util.TypeInformation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+//ORDER BY for the hand written R2DBC queries
+//only whitelisted properties get into the SQL, the same exception as a bad sort on the JPA side otherwise
+final class ReactiveSort {
+
+    private ReactiveSort() {
+    }
+
+    static String orderBy(Sort sort, Map<String, String> columns, Class<?> entityType) {
+        List<String> orders = new ArrayList<>();
+        List<String> seen = new ArrayList<>();
+        for (Sort.Order order : sort) {
+            String column = columns.get(order.getProperty());
+            if (column == null) {
+                throw new PropertyReferenceException(order.getProperty(), TypeInformation.of(entityType), List.of());
+            }
+            //the tiebreaker appended by the caller may already be in the request sort
+            if (!seen.contains(column)) {
+                seen.add(column);
+                orders.add(column + (order.isAscending() ? " ASC" : " DESC"));
+            }
+        }
+        return " ORDER BY " + String.join(", ", orders);
+    }
+}
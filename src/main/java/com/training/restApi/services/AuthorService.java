@@ -1,24 +1,43 @@
 package com.training.restApi.services;
 
+import com.training.restApi.domain.AuthorFilter;
+import com.training.restApi.domain.BulkItemResult;
 import com.training.restApi.domain.entities.AuthorEntity;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
 
 public interface AuthorService {
     AuthorEntity save(AuthorEntity authorEntity);
 
+    //create (no id) or update (id) many authors, written in JDBC batches, one result per author in input order
+    List<BulkItemResult> bulkSave(Iterator<AuthorEntity> authorEntities);
+
     List<AuthorEntity> findAll();
 
     Page<AuthorEntity> findAll(Pageable pageable);
 
+    //page of the authors matching every filter that is set
+    Page<AuthorEntity> findAll(AuthorFilter filter, Pageable pageable);
+
+    //next limit authors after position in sort order, cost does not grow with the page number
+    Window<AuthorEntity> findAll(ScrollPosition position, Sort sort, int limit);
+
     Optional<AuthorEntity> findOne(Long id);
 
+    //one entry per id in request order, empty when the author does not exist
+    List<Optional<AuthorEntity>> findMany(List<Long> ids);
+
     boolean ifExist(Long id);
 
-    AuthorEntity partialUpdate(Long id, AuthorEntity authorEntity);
+    //empty Optional if the author does not exist
+    Optional<AuthorEntity> partialUpdate(Long id, AuthorEntity authorEntity);
 
     void delete(Long id);
 
@@ -1,29 +1,68 @@
 package com.training.restApi.services;
 
+import com.training.restApi.domain.BookFilter;
+import com.training.restApi.domain.BulkDeleteResult;
+import com.training.restApi.domain.BulkItemResult;
+import com.training.restApi.domain.IfMatch;
+import com.training.restApi.domain.UpsertResult;
 import com.training.restApi.domain.entities.BookEntity;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface BookService {
     BookEntity save(String isbn, BookEntity bookEntity);
 
+    //create or update in one statement, result tells which one happened
+    //ifMatch (null: unconditional) only updates a stored book it matches, never creates one,
+    //otherwise OptimisticLockingFailureException
+    UpsertResult<BookEntity> upsert(String isbn, BookEntity bookEntity, IfMatch ifMatch);
+
+    //create or update many books, written in JDBC batches, one result per book in input order
+    List<BulkItemResult> bulkSave(Iterator<BookEntity> bookEntities);
+
     List<BookEntity> findAll();
 
+    //every book in isbn order without loading the table into memory
+    //the consumer runs inside the read transaction, it should not keep references to the entities
+    void exportAll(Consumer<BookEntity> consumer);
+
     //Page like a list but with metadata
     //need pageable to inform content of page
     Page<BookEntity> findAll(Pageable pageable);
 
+    //page of the books matching every filter that is set
+    Page<BookEntity> findAll(BookFilter filter, Pageable pageable);
+
+    //full-text search over title and author name, best matches first
+    Page<BookEntity> search(String query, Pageable pageable);
+
+    //next limit books after position in sort order, cost does not grow with the page number
+    Window<BookEntity> findAll(ScrollPosition position, Sort sort, int limit);
+
     Optional<BookEntity> findOne(String isbn);
 
+    //one entry per isbn in request order, empty when the book does not exist
+    List<Optional<BookEntity>> findMany(List<String> isbns);
+
     boolean ifExist(String isbn);
 
-    BookEntity partialUpdate(String isbn, BookEntity bookEntity);
+    //empty Optional if the book does not exist
+    //ifMatch (null: unconditional) that the stored book does not match -> OptimisticLockingFailureException
+    Optional<BookEntity> partialUpdate(String isbn, BookEntity bookEntity, IfMatch ifMatch);
 
     void delete(String isbn);
 
     void deleteAll();
 
+    //books matching every filter that is set (all books for an empty filter) and the authors left without books
+    BulkDeleteResult deleteAll(BookFilter filter);
+
 }
@@ -0,0 +1,19 @@
+package com.training.restApi.services;
+
+import com.training.restApi.domain.entities.AuthorEntity;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+//Non-blocking reads, nothing here waits on a thread for the database
+public interface ReactiveAuthorService {
+
+    //empty Mono if the author does not exist
+    Mono<AuthorEntity> findOne(Long id);
+
+    Mono<Page<AuthorEntity>> findAll(Pageable pageable);
+
+    //all authors, fetched as fast as the subscriber requests them
+    Flux<AuthorEntity> streamAll();
+}
@@ -0,0 +1,19 @@
+package com.training.restApi.services;
+
+import com.training.restApi.domain.entities.BookEntity;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+//Non-blocking reads, nothing here waits on a thread for the database
+public interface ReactiveBookService {
+
+    //empty Mono if the book does not exist
+    Mono<BookEntity> findOne(String isbn);
+
+    Mono<Page<BookEntity>> findAll(Pageable pageable);
+
+    //all books, fetched as fast as the subscriber requests them
+    Flux<BookEntity> streamAll();
+}
@@ -0,0 +1,14 @@
+package com.training.restApi.services;
+
+import com.training.restApi.domain.AuthorStats;
+import com.training.restApi.domain.CatalogueStats;
+
+import java.util.Optional;
+
+public interface StatisticsService {
+
+    //empty when the author does not exist
+    Optional<AuthorStats> authorStats(Long authorId);
+
+    CatalogueStats catalogueStats();
+}
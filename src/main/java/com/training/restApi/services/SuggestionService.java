@@ -0,0 +1,12 @@
+package com.training.restApi.services;
+
+import com.training.restApi.domain.Suggestion;
+
+import java.util.List;
+
+public interface SuggestionService {
+
+    //book titles and author names starting with prefix (case and accents ignored), at most limit
+    //in alphabetical order, answered from memory without touching the database
+    List<Suggestion> suggest(String prefix, int limit);
+}
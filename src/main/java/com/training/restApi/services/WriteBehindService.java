@@ -0,0 +1,20 @@
+package com.training.restApi.services;
+
+import com.training.restApi.domain.WriteTicket;
+import com.training.restApi.domain.entities.AuthorEntity;
+import com.training.restApi.domain.entities.BookEntity;
+
+import java.util.Optional;
+
+//Writes acknowledged once they are queued in memory and written later in grouped transactions
+//a write is only durable once its ticket has left QUEUED, until then a crash of the process loses it
+public interface WriteBehindService {
+
+    //empty when the queue stays full for the enqueue timeout, or the application is shutting down
+    Optional<WriteTicket> submitAuthor(AuthorEntity authorEntity);
+
+    Optional<WriteTicket> submitBook(String isbn, BookEntity bookEntity);
+
+    //empty for an unknown id, or one whose outcome is older than the status retention
+    Optional<WriteTicket> status(String id);
+}
@@ -0,0 +1,26 @@
+package com.training.restApi.services.impl;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+//Runs in-memory changes (indexes, counters) that describe a database write once the write is committed
+//inside a transaction the change waits for the commit and is dropped on rollback
+//(a bulk chunk that is retried in halves only reports the items that were written)
+final class AfterCommit {
+
+    private AfterCommit() {
+    }
+
+    static void run(Runnable change) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            change.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                change.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,16 @@
+package com.training.restApi.services.impl;
+
+import com.training.restApi.domain.entities.AuthorEntity;
+import lombok.Value;
+
+//Identity of an author that has no id yet, used to write each distinct author once per bulk import
+@Value
+class AuthorKey {
+
+    String name;
+    Integer age;
+
+    static AuthorKey of(AuthorEntity authorEntity) {
+        return new AuthorKey(authorEntity.getName(), authorEntity.getAge());
+    }
+}
@@ -1,33 +1,184 @@
 package com.training.restApi.services.impl;
 
+import com.training.restApi.config.CacheConfig;
+import com.training.restApi.config.ReplicaReads;
+import com.training.restApi.domain.AuthorFilter;
+import com.training.restApi.domain.BulkItemResult;
 import com.training.restApi.domain.entities.AuthorEntity;
 import com.training.restApi.repositories.AuthorRepository;
+import com.training.restApi.repositories.AuthorSpecifications;
 import com.training.restApi.services.AuthorService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.annotation.Observed;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
+//every public method is timed as service.calls (tags class, method), see MetricsConfig
+@Observed(name = "service.calls")
 @Service
 public class AuthorServiceImpl implements AuthorService {
 
     //Need for CRUD methods
     private AuthorRepository authorRepository;
 
-    public AuthorServiceImpl(AuthorRepository authorRepository) {
+    //findOne and findMany read through it, evictions are declared on the write methods
+    private Cache authorsCache;
+
+    //cache misses of findOne
+    private LookupBatcher<Long, AuthorEntity> authorLookups;
+
+    //typeahead index of author names, told about every write
+    private SuggestionServiceImpl suggestions;
+
+    //book counts per author, told about created and deleted authors
+    private StatisticsServiceImpl statistics;
+
+    //bulk import runs one transaction per chunk of batchSize authors
+    private TransactionTemplate transactionTemplate;
+    private int batchSize;
+
+    public AuthorServiceImpl(AuthorRepository authorRepository, SuggestionServiceImpl suggestions,
+                             StatisticsServiceImpl statistics, CacheManager cacheManager,
+                             TransactionTemplate transactionTemplate, @Value("${bulk.batch-size:500}") int batchSize,
+                             MeterRegistry meterRegistry,
+                             @Value("${lookup.batch-window:2ms}") Duration batchWindow,
+                             @Value("${lookup.max-batch-size:100}") int maxBatchSize) {
         this.authorRepository = authorRepository;
+        this.suggestions = suggestions;
+        this.statistics = statistics;
+        this.authorsCache = cacheManager.getCache(CacheConfig.AUTHORS);
+        this.authorLookups = new LookupBatcher<>(CacheConfig.AUTHORS, this::load, batchWindow, maxBatchSize, meterRegistry);
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
     }
 
     @Override
+    @CacheEvict(cacheNames = CacheConfig.AUTHORS, key = "#result.id")
     public AuthorEntity save(AuthorEntity authorEntity) {
-        return authorRepository.save(authorEntity);
+        if (authorEntity.getId() != null) {
+            //through the second-level cache, the same entry the merge below reads, no SELECT when it is cached
+            //a miss reads the primary, a replica behind it would turn an update into a second author
+            Optional<Long> storedVersion = ReplicaReads.onPrimary(() -> authorRepository.findById(authorEntity.getId()))
+                    .map(AuthorEntity::getVersion);
+            if (authorEntity.getVersion() == null) {
+                //no If-Match: overwrite whatever version is stored (a write committed in between fails the merge,
+                //409 rather than 412, see OptimisticLockingExceptionHandler)
+                //an id that does not exist creates a new author, as merge always did
+                storedVersion.ifPresentOrElse(authorEntity::setVersion, () -> authorEntity.setId(null));
+            } else if (storedVersion.isEmpty()) {
+                throw new OptimisticLockingFailureException("Author " + authorEntity.getId() + " does not exist");
+            }
+            //a version that is not the stored one fails in merge
+        }
+        boolean created = authorEntity.getId() == null;
+        AuthorEntity savedAuthor = authorRepository.save(authorEntity);
+        suggestions.authorSaved(savedAuthor.getId(), savedAuthor.getName());
+        if (created) {
+            statistics.authorCreated(savedAuthor.getId());
+        }
+        return savedAuthor;
     }
 
     @Override
+    @CacheEvict(cacheNames = CacheConfig.AUTHORS, allEntries = true)
+    public List<BulkItemResult> bulkSave(Iterator<AuthorEntity> authorEntities) {
+        //authors without id created by earlier chunks, repeats in the import are reported as DUPLICATE
+        Map<AuthorKey, Long> createdIds = new HashMap<>();
+        BulkChunkWriter<AuthorEntity> writer = new BulkChunkWriter<>(transactionTemplate, batchSize,
+                author -> Objects.toString(author.getId(), null));
+
+        return writer.write(authorEntities, new BulkChunkWriter.ChunkWriter<>() {
+            private Map<AuthorKey, AuthorEntity> chunkCreated;
+
+            @Override
+            public List<BulkItemResult> write(List<AuthorEntity> chunk) {
+                chunkCreated = new HashMap<>();
+                //one SELECT for all authors of the chunk that carry an id
+                Map<Long, AuthorEntity> existing = new HashMap<>();
+                authorRepository.findAllById(chunk.stream().map(AuthorEntity::getId).filter(Objects::nonNull).toList())
+                        .forEach(author -> existing.put(author.getId(), author));
+
+                List<BulkItemResult> results = new ArrayList<>(chunk.size());
+                for (AuthorEntity item : chunk) {
+                    results.add(item.getId() == null ? create(item) : update(item, existing.get(item.getId())));
+                }
+                return results;
+            }
+
+            @Override
+            public void committed(List<AuthorEntity> chunk) {
+                chunkCreated.forEach((key, author) -> createdIds.put(key, author.getId()));
+            }
+
+            private BulkItemResult create(AuthorEntity item) {
+                AuthorKey key = AuthorKey.of(item);
+                Long createdId = createdIds.get(key);
+                if (createdId == null && chunkCreated.containsKey(key)) {
+                    createdId = chunkCreated.get(key).getId();
+                }
+                if (createdId != null) {
+                    return result(createdId, BulkItemResult.Status.DUPLICATE);
+                }
+                //persist a copy, the item keeps a null id if this chunk has to be retried
+                AuthorEntity author = authorRepository.save(AuthorEntity.builder()
+                        .name(item.getName())
+                        .age(item.getAge())
+                        .build());
+                chunkCreated.put(key, author);
+                suggestions.authorSaved(author.getId(), author.getName());
+                statistics.authorCreated(author.getId());
+                return result(author.getId(), BulkItemResult.Status.CREATED);
+            }
+
+            private BulkItemResult update(AuthorEntity item, AuthorEntity existingAuthor) {
+                if (existingAuthor == null) {
+                    return BulkItemResult.builder()
+                            .key(item.getId().toString())
+                            .status(BulkItemResult.Status.FAILED)
+                            .error("Author does not exist")
+                            .build();
+                }
+                //managed entity, dirty checking queues the UPDATE for the batch
+                existingAuthor.setName(item.getName());
+                existingAuthor.setAge(item.getAge());
+                suggestions.authorSaved(existingAuthor.getId(), existingAuthor.getName());
+                return result(existingAuthor.getId(), BulkItemResult.Status.UPDATED);
+            }
+        });
+    }
+
+    private static BulkItemResult result(Long id, BulkItemResult.Status status) {
+        return BulkItemResult.builder().key(id.toString()).status(status).build();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
     public List<AuthorEntity> findAll() {
         //findAll() returns Iterable -> convert to Spliterator -> create stream -> collect stream into List
         List<AuthorEntity> listOfAuthors = StreamSupport.stream(authorRepository
@@ -40,46 +191,102 @@ public class AuthorServiceImpl implements AuthorService {
     }
 
     @Override
+    @Transactional(readOnly = true)
     public Page<AuthorEntity> findAll(Pageable pageable) {
         return authorRepository.findAll(pageable);
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public Page<AuthorEntity> findAll(AuthorFilter filter, Pageable pageable) {
+        if (filter.isEmpty()) {
+            return authorRepository.findAll(pageable);
+        }
+        return authorRepository.findAll(AuthorSpecifications.matching(filter), pageable);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Window<AuthorEntity> findAll(ScrollPosition position, Sort sort, int limit) {
+        return authorRepository.findBy(position, sort, Limit.of(limit));
+    }
+
     @Override
     public Optional<AuthorEntity> findOne(Long id) {
-        return authorRepository.findById(id);
+        //a missing author is cached as null too, save() evicts it once the id exists
+        Cache.ValueWrapper hit = CacheFill.get(authorsCache, id);
+        if (hit != null) {
+            return Optional.ofNullable((AuthorEntity) hit.get());
+        }
+        //concurrent misses for the same id share one load, distinct ids within the window one query
+        return authorLookups.load(id);
+    }
+
+    @Override
+    public List<Optional<AuthorEntity>> findMany(List<Long> ids) {
+        Map<Long, AuthorEntity> authors = load(new LinkedHashSet<>(ids));
+        //one entry per requested id, duplicates included, in request order
+        return ids.stream()
+                .map(id -> Optional.ofNullable(authors.get(id)))
+                .toList();
+    }
+
+    //authors found for the ids, also the bulk loader of authorLookups
+    private Map<Long, AuthorEntity> load(Collection<Long> ids) {
+        //cache first (a cached null is a known missing id), everything else in one query
+        Map<Long, AuthorEntity> authors = new HashMap<>();
+        Set<Long> misses = new LinkedHashSet<>();
+        for (Long id : ids) {
+            Cache.ValueWrapper hit = CacheFill.get(authorsCache, id);
+            if (hit != null) {
+                if (hit.get() != null) {
+                    authors.put(id, (AuthorEntity) hit.get());
+                }
+            } else {
+                misses.add(id);
+            }
+        }
+        //from the primary, like every load that ends up in a cache
+        //cached unless a write evicted the id while the query ran
+        authors.putAll(CacheFill.load(authorsCache, misses,
+                keys -> ReplicaReads.onPrimary(() -> authorRepository.multiGet(keys)).stream()
+                        .collect(Collectors.toMap(AuthorEntity::getId, author -> author))));
+        return authors;
     }
 
     @Override
+    @Transactional(readOnly = true)
     public boolean ifExist(Long id) {
         return authorRepository.existsById(id);
     }
 
     @Override
-    public AuthorEntity partialUpdate(Long id, AuthorEntity authorEntity) {
-        authorEntity.setId(id);
-
-        //findById returns Optional(author)
-        //map used to extract and transform the value inside the Optional if it is present
-        return authorRepository.findById(id).map(retrievedAuthor -> {
-            //Optional.ofNullable wraps potentially null values
-            //ifPresent(existingAuthor::???) only used if Optional has a value
-            //Optional.ofNullable handle partial updates, update only fields that are not null.
-            //The Optional.ofNullable handle cases where individual fields within authorEntity might be null.
-            Optional.ofNullable(authorEntity.getName()).ifPresent(retrievedAuthor::setName);
-            Optional.ofNullable(authorEntity.getAge()).ifPresent(retrievedAuthor::setAge);
-            //save updated author back into database
-            return authorRepository.save(retrievedAuthor);
-        }).orElseThrow(() -> new RuntimeException("Author does not exist"));
+    @Transactional
+    @CacheEvict(cacheNames = CacheConfig.AUTHORS, key = "#id")
+    public Optional<AuthorEntity> partialUpdate(Long id, AuthorEntity authorEntity) {
+        //one UPDATE built from the non-null fields, updated row read back in the same statement
+        //no row matched -> empty Optional, so no findById/existsById beforehand
+        Optional<AuthorEntity> updatedAuthor = authorRepository.partialUpdate(id, authorEntity);
+        updatedAuthor.ifPresent(author -> suggestions.authorSaved(author.getId(), author.getName()));
+        return updatedAuthor;
     }
 
     @Override
+    @CacheEvict(cacheNames = CacheConfig.AUTHORS, key = "#id")
     public void delete(Long id) {
         authorRepository.deleteById(id);
+        suggestions.authorDeleted(id);
+        statistics.authorDeleted(id);
     }
 
+    //one DELETE statement, fails as a whole while any book still has an author
     @Override
+    @CacheEvict(cacheNames = CacheConfig.AUTHORS, allEntries = true)
+    @Transactional
     public void deleteAll() {
-        authorRepository.deleteAll();
+        authorRepository.deleteAllInBulk();
+        suggestions.authorsDeleted();
+        statistics.authorsDeleted();
     }
 
 }
@@ -1,33 +1,262 @@
 package com.training.restApi.services.impl;
 
+import com.training.restApi.config.CacheConfig;
+import com.training.restApi.config.ReplicaReads;
+import com.training.restApi.domain.BookFilter;
+import com.training.restApi.domain.BulkDeleteResult;
+import com.training.restApi.domain.BulkItemResult;
+import com.training.restApi.domain.IfMatch;
+import com.training.restApi.domain.UpsertResult;
+import com.training.restApi.domain.entities.AuthorEntity;
 import com.training.restApi.domain.entities.BookEntity;
+import com.training.restApi.repositories.AuthorRepository;
+import com.training.restApi.repositories.BookDeletion;
 import com.training.restApi.repositories.BookRepository;
+import com.training.restApi.repositories.BookSpecifications;
+import com.training.restApi.repositories.BookState;
+import com.training.restApi.repositories.BookUpsert;
+import com.training.restApi.services.AuthorService;
 import com.training.restApi.services.BookService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.annotation.Observed;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Caching;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
+//every public method is timed as service.calls (tags class, method), see MetricsConfig
+@Observed(name = "service.calls")
 @Service
 public class BookServiceImpl implements BookService {
     private BookRepository bookRepository;
+    private AuthorRepository authorRepository;
+    //nested authors are saved like PUT /authors/{id} saves them
+    private AuthorService authorService;
 
-    public BookServiceImpl(BookRepository bookRepository) {
+    //findOne reads through these, evictions are declared on the write methods
+    private Cache booksCache;
+    private Cache authorsCache;
+    //evicted directly by a filtered delete
+    private Cache bookJsonCache;
+
+    //cache misses of findOne
+    private LookupBatcher<String, BookEntity> bookLookups;
+
+    //typeahead index of titles (and of the names of authors created by the bulk import), told about every write
+    private SuggestionServiceImpl suggestions;
+
+    //book counts per author and for the catalogue, also told about every write
+    private StatisticsServiceImpl statistics;
+
+    //bulk import runs one transaction per chunk of batchSize books
+    private TransactionTemplate transactionTemplate;
+    private int batchSize;
+
+    public BookServiceImpl(BookRepository bookRepository, AuthorRepository authorRepository, AuthorService authorService,
+                           SuggestionServiceImpl suggestions, StatisticsServiceImpl statistics,
+                           CacheManager cacheManager, TransactionTemplate transactionTemplate,
+                           @Value("${bulk.batch-size:500}") int batchSize, MeterRegistry meterRegistry,
+                           @Value("${lookup.batch-window:2ms}") Duration batchWindow,
+                           @Value("${lookup.max-batch-size:100}") int maxBatchSize) {
         this.bookRepository = bookRepository;
+        this.authorRepository = authorRepository;
+        this.authorService = authorService;
+        this.suggestions = suggestions;
+        this.statistics = statistics;
+        this.booksCache = cacheManager.getCache(CacheConfig.BOOKS);
+        this.authorsCache = cacheManager.getCache(CacheConfig.AUTHORS);
+        this.bookJsonCache = cacheManager.getCache(CacheConfig.BOOK_JSON);
+        this.bookLookups = new LookupBatcher<>(CacheConfig.BOOKS, this::load, batchWindow, maxBatchSize, meterRegistry);
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
     }
 
+    //a cascaded author write changes the author row, books only hold the author id in the cache
     @Override
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.BOOKS, key = "#isbn"),
+            @CacheEvict(cacheNames = CacheConfig.BOOK_JSON, key = "#isbn"),
+            @CacheEvict(cacheNames = CacheConfig.AUTHORS, key = "#result.author.id", condition = "#result.author != null")
+    })
+    @Transactional
     public BookEntity save(String isbn, BookEntity bookEntity) {
         //ensure that entity isbn is the same as the one passed in method
         bookEntity.setIsbn(isbn);
-        return bookRepository.save(bookEntity);
+        //managed author, so cascading the book save leaves it alone
+        if (bookEntity.getAuthor() != null) {
+            bookEntity.setAuthor(authorService.save(bookEntity.getAuthor()));
+        }
+        //the stored author moves the statistics, none stored -> new book
+        Optional<BookState> previous = bookRepository.findStateById(isbn);
+        //no If-Match: overwrite whatever version is stored (a write committed in between fails the save,
+        //409 rather than 412, see OptimisticLockingExceptionHandler)
+        if (bookEntity.getVersion() == null) {
+            previous.map(BookState::getVersion).ifPresent(bookEntity::setVersion);
+        }
+        BookEntity savedBook = bookRepository.save(bookEntity);
+        suggestions.bookSaved(savedBook.getIsbn(), savedBook.getTitle());
+        previous.ifPresentOrElse(state -> statistics.bookMoved(state.getAuthorId(), authorIdOf(savedBook)),
+                () -> statistics.bookCreated(authorIdOf(savedBook)));
+        return savedBook;
     }
 
     @Override
+    @Transactional
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.BOOKS, key = "#isbn"),
+            @CacheEvict(cacheNames = CacheConfig.BOOK_JSON, key = "#isbn"),
+            @CacheEvict(cacheNames = CacheConfig.AUTHORS, key = "#bookEntity.author.id", condition = "#bookEntity.author != null")
+    })
+    public UpsertResult<BookEntity> upsert(String isbn, BookEntity bookEntity, IfMatch ifMatch) {
+        bookEntity.setIsbn(isbn);
+        if (ifMatch != null) {
+            //a conditional PUT never creates the book, the update below is at the version checked
+            BookState stored = lockMatching(isbn, ifMatch)
+                    .orElseThrow(() -> new OptimisticLockingFailureException("Book " + isbn + " does not exist"));
+            bookEntity.setVersion(stored.getVersion());
+        }
+        //native upsert does not cascade, save a nested author the same way CascadeType.ALL would
+        if (bookEntity.getAuthor() != null) {
+            bookEntity.setAuthor(authorService.save(bookEntity.getAuthor()));
+        }
+        //the upsert statement also returns the author it replaced, for the statistics
+        BookUpsert upsert = bookRepository.upsert(bookEntity);
+        suggestions.bookSaved(isbn, bookEntity.getTitle());
+        if (upsert.created()) {
+            statistics.bookCreated(authorIdOf(bookEntity));
+        } else {
+            statistics.bookMoved(upsert.previousAuthorId(), authorIdOf(bookEntity));
+        }
+        return new UpsertResult<>(bookEntity, upsert.created());
+    }
+
+    @Override
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.BOOKS, allEntries = true),
+            @CacheEvict(cacheNames = CacheConfig.BOOK_JSON, allEntries = true),
+            @CacheEvict(cacheNames = CacheConfig.AUTHORS, allEntries = true)
+    })
+    public List<BulkItemResult> bulkSave(Iterator<BookEntity> bookEntities) {
+        //nested authors without id created by earlier chunks, each distinct author is inserted once
+        Map<AuthorKey, Long> createdAuthorIds = new HashMap<>();
+        BulkChunkWriter<BookEntity> writer = new BulkChunkWriter<>(transactionTemplate, batchSize, BookEntity::getIsbn);
+
+        return writer.write(bookEntities, new BulkChunkWriter.ChunkWriter<>() {
+            private Map<AuthorKey, AuthorEntity> chunkCreatedAuthors;
+
+            @Override
+            public List<BulkItemResult> write(List<BookEntity> chunk) {
+                chunkCreatedAuthors = new HashMap<>();
+                //one SELECT for the books of the chunk that already exist
+                Map<String, BookEntity> books = new HashMap<>();
+                bookRepository.findAllById(chunk.stream().map(BookEntity::getIsbn).filter(Objects::nonNull).toList())
+                        .forEach(book -> books.put(book.getIsbn(), book));
+                //one SELECT for the authors referenced by id (or created by an earlier chunk)
+                Map<Long, AuthorEntity> authors = new HashMap<>();
+                authorRepository.findAllById(chunk.stream().map(this::authorId).filter(Objects::nonNull).toList())
+                        .forEach(author -> authors.put(author.getId(), author));
+
+                List<BulkItemResult> results = new ArrayList<>(chunk.size());
+                for (BookEntity item : chunk) {
+                    results.add(write(item, books, authors));
+                }
+                return results;
+            }
+
+            @Override
+            public void committed(List<BookEntity> chunk) {
+                chunkCreatedAuthors.forEach((key, author) -> createdAuthorIds.put(key, author.getId()));
+            }
+
+            private BulkItemResult write(BookEntity item, Map<String, BookEntity> books, Map<Long, AuthorEntity> authors) {
+                if (item.getIsbn() == null) {
+                    return failed(item, "isbn is required");
+                }
+
+                AuthorEntity author = null;
+                if (item.getAuthor() != null) {
+                    Long authorId = authorId(item);
+                    author = authorId != null
+                            ? authors.get(authorId)
+                            : chunkCreatedAuthors.computeIfAbsent(AuthorKey.of(item.getAuthor()), this::createAuthor);
+                    if (author == null) {
+                        return failed(item, "Author does not exist");
+                    }
+                }
+
+                //same isbn earlier in the chunk is also found here, the later item wins
+                BookEntity existingBook = books.get(item.getIsbn());
+                if (existingBook != null) {
+                    statistics.bookMoved(authorIdOf(existingBook), author == null ? null : author.getId());
+                    existingBook.setTitle(item.getTitle());
+                    existingBook.setAuthor(author);
+                    suggestions.bookSaved(item.getIsbn(), item.getTitle());
+                    return BulkItemResult.builder().key(item.getIsbn()).status(BulkItemResult.Status.UPDATED).build();
+                }
+
+                //new instance, the item is left untouched if this chunk has to be retried
+                BookEntity book = BookEntity.builder().isbn(item.getIsbn()).title(item.getTitle()).author(author).build();
+                bookRepository.insert(book);
+                books.put(book.getIsbn(), book);
+                suggestions.bookSaved(book.getIsbn(), book.getTitle());
+                statistics.bookCreated(authorIdOf(book));
+                return BulkItemResult.builder().key(item.getIsbn()).status(BulkItemResult.Status.CREATED).build();
+            }
+
+            private AuthorEntity createAuthor(AuthorKey key) {
+                AuthorEntity author = authorRepository.save(AuthorEntity.builder().name(key.getName()).age(key.getAge()).build());
+                suggestions.authorSaved(author.getId(), author.getName());
+                statistics.authorCreated(author.getId());
+                return author;
+            }
+
+            //id given in the request, or the id an earlier chunk created for the same author
+            private Long authorId(BookEntity item) {
+                AuthorEntity author = item.getAuthor();
+                if (author == null) {
+                    return null;
+                }
+                return author.getId() != null ? author.getId() : createdAuthorIds.get(AuthorKey.of(author));
+            }
+
+            private BulkItemResult failed(BookEntity item, String error) {
+                return BulkItemResult.builder()
+                        .key(item.getIsbn())
+                        .status(BulkItemResult.Status.FAILED)
+                        .error(error)
+                        .build();
+            }
+        });
+    }
+
+    @Override
+    @Transactional(readOnly = true)
     public List<BookEntity> findAll() {
         List<BookEntity> listOfBooks = StreamSupport.stream(
                         bookRepository.findAll().spliterator(), false)
@@ -37,39 +266,275 @@ public class BookServiceImpl implements BookService {
     }
 
     @Override
+    @Transactional(readOnly = true)
+    public void exportAll(Consumer<BookEntity> consumer) {
+        bookRepository.forEachBook(consumer);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
     public Page<BookEntity> findAll(Pageable pageable) {
         return bookRepository.findAll(pageable);
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public Page<BookEntity> findAll(BookFilter filter, Pageable pageable) {
+        if (filter.isEmpty()) {
+            return bookRepository.findAll(pageable);
+        }
+        return bookRepository.findAll(BookSpecifications.matching(filter), pageable);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Page<BookEntity> search(String query, Pageable pageable) {
+        return bookRepository.search(query, pageable);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Window<BookEntity> findAll(ScrollPosition position, Sort sort, int limit) {
+        return bookRepository.findBy(position, sort, Limit.of(limit));
+    }
+
     @Override
     public Optional<BookEntity> findOne(String isbn) {
-        return bookRepository.findById(isbn);
+        //the books cache keeps the author as a bare id, a missing isbn is cached as null
+        Cache.ValueWrapper hit = CacheFill.get(booksCache, isbn);
+        if (hit == null) {
+            //concurrent misses for the same isbn share one load, distinct isbns within the window one query
+            return bookLookups.load(isbn).map(book -> fromCached(book, book.getAuthor()));
+        }
+        BookEntity cached = (BookEntity) hit.get();
+        if (cached == null) {
+            return Optional.empty();
+        }
+
+        AuthorEntity author = null;
+        if (cached.getAuthor() != null) {
+            author = authorService.findOne(cached.getAuthor().getId()).orElse(null);
+        }
+        return Optional.of(fromCached(cached, author));
+    }
+
+    @Override
+    public List<Optional<BookEntity>> findMany(List<String> isbns) {
+        Map<String, BookEntity> books = load(new LinkedHashSet<>(isbns));
+        //one entry per requested isbn, duplicates included, in request order
+        return isbns.stream()
+                .map(isbn -> Optional.ofNullable(books.get(isbn)).map(book -> fromCached(book, book.getAuthor())))
+                .toList();
+    }
+
+    //books found for the isbns, with their authors, also the bulk loader of bookLookups
+    private Map<String, BookEntity> load(Collection<String> isbns) {
+        //cache first (a cached null is a known missing isbn), everything else in one query
+        Map<String, BookEntity> cachedBooks = new HashMap<>();
+        Set<String> misses = new LinkedHashSet<>();
+        for (String isbn : isbns) {
+            Cache.ValueWrapper hit = CacheFill.get(booksCache, isbn);
+            if (hit != null) {
+                cachedBooks.put(isbn, (BookEntity) hit.get());
+            } else {
+                misses.add(isbn);
+            }
+        }
+        //from the primary, like every load that ends up in a cache
+        //cached unless a write evicted the isbn while the query ran
+        Map<String, BookEntity> loaded = CacheFill.load(booksCache, misses,
+                keys -> ReplicaReads.onPrimary(() -> bookRepository.multiGet(keys)).stream()
+                        .collect(Collectors.toMap(BookEntity::getIsbn, this::toCached)));
+        for (String isbn : misses) {
+            cachedBooks.put(isbn, loaded.get(isbn));
+        }
+
+        //authors not in the authors cache yet are loaded together as well
+        Map<Long, AuthorEntity> authors = new HashMap<>();
+        Set<Long> authorMisses = new LinkedHashSet<>();
+        for (BookEntity cached : cachedBooks.values()) {
+            if (cached == null || cached.getAuthor() == null) {
+                continue;
+            }
+            Long authorId = cached.getAuthor().getId();
+            Cache.ValueWrapper hit = CacheFill.get(authorsCache, authorId);
+            if (hit != null && hit.get() != null) {
+                authors.put(authorId, (AuthorEntity) hit.get());
+            } else {
+                authorMisses.add(authorId);
+            }
+        }
+        authors.putAll(CacheFill.load(authorsCache, authorMisses,
+                keys -> ReplicaReads.onPrimary(() -> authorRepository.multiGet(keys)).stream()
+                        .collect(Collectors.toMap(AuthorEntity::getId, author -> author))));
+
+        Map<String, BookEntity> books = new HashMap<>();
+        cachedBooks.forEach((isbn, cached) -> {
+            if (cached != null) {
+                books.put(isbn, fromCached(cached,
+                        cached.getAuthor() == null ? null : authors.get(cached.getAuthor().getId())));
+            }
+        });
+        return books;
+    }
+
+    //fresh instance per call, callers can't change what is in the cache
+    private static BookEntity fromCached(BookEntity cached, AuthorEntity author) {
+        return BookEntity.builder()
+                .isbn(cached.getIsbn())
+                .title(cached.getTitle())
+                .version(cached.getVersion())
+                .author(author)
+                .build();
+    }
+
+    //the author loaded with the book warms the authors cache, so a cold lookup stays one SELECT
+    private BookEntity toCached(BookEntity book) {
+        AuthorEntity author = book.getAuthor();
+        if (author == null) {
+            return BookEntity.builder().isbn(book.getIsbn()).title(book.getTitle()).version(book.getVersion()).build();
+        }
+        authorsCache.putIfAbsent(author.getId(), author);
+        return BookEntity.builder()
+                .isbn(book.getIsbn())
+                .title(book.getTitle())
+                .version(book.getVersion())
+                .author(AuthorEntity.builder().id(author.getId()).build())
+                .build();
     }
 
     @Override
+    @Transactional(readOnly = true)
     public boolean ifExist(String isbn) {
         return bookRepository.existsById(isbn);
     }
 
     @Override
-    public BookEntity partialUpdate(String isbn, BookEntity bookEntity) {
-        bookEntity.setIsbn(isbn);
+    @Transactional
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.BOOKS, key = "#isbn"),
+            @CacheEvict(cacheNames = CacheConfig.BOOK_JSON, key = "#isbn"),
+            @CacheEvict(cacheNames = CacheConfig.AUTHORS, key = "#bookEntity.author.id", condition = "#bookEntity.author != null && #bookEntity.author.id != null")
+    })
+    public Optional<BookEntity> partialUpdate(String isbn, BookEntity bookEntity, IfMatch ifMatch) {
+        //the book row is locked before anything is written when it has to be compared with If-Match
+        //or a nested author comes along: the author is written first (the book row only stores its id),
+        //only for a book that exists, and the author it replaces (statistics) can't change until the commit
+        //a plain PATCH stays the single UPDATE
+        Optional<BookState> stored = Optional.empty();
+        if (ifMatch != null || bookEntity.getAuthor() != null) {
+            stored = ifMatch != null ? lockMatching(isbn, ifMatch) : bookRepository.findStateForUpdate(isbn);
+            if (stored.isEmpty()) {
+                return Optional.empty();
+            }
+        }
+        if (ifMatch != null) {
+            bookEntity.setVersion(stored.get().getVersion());
+        }
+        if (bookEntity.getAuthor() != null) {
+            bookEntity.setAuthor(patchAuthor(bookEntity.getAuthor()));
+        }
+        Optional<BookEntity> updatedBook = bookRepository.partialUpdate(isbn, bookEntity);
+        updatedBook.ifPresent(book -> suggestions.bookSaved(book.getIsbn(), book.getTitle()));
+        if (updatedBook.isPresent() && bookEntity.getAuthor() != null) {
+            statistics.bookMoved(stored.get().getAuthorId(), bookEntity.getAuthor().getId());
+        }
+        return updatedBook;
+    }
 
-        return bookRepository.findById(isbn).map(retrievedBook -> {
-            Optional.ofNullable(bookEntity.getTitle()).ifPresent(retrievedBook::setTitle);
-            Optional.ofNullable(bookEntity.getAuthor()).ifPresent(retrievedBook::setAuthor);
+    //If-Match against the book row, locked before anything is written (a nested author write
+    //would move the author version), empty when the book does not exist
+    private Optional<BookState> lockMatching(String isbn, IfMatch ifMatch) {
+        Optional<BookState> stored = bookRepository.findStateForUpdate(isbn);
+        if (stored.isPresent() && !ifMatch.matches(stored.get().getVersion(), stored.get().getAuthorVersion())) {
+            throw new OptimisticLockingFailureException("Book " + isbn + " does not match If-Match");
+        }
+        return stored;
+    }
 
-            return bookRepository.save(retrievedBook);
-        }).orElseThrow(() -> new RuntimeException("Book does not exist"));
+    //the nested author of a PATCH is patched too: one UPDATE of its non-null fields,
+    //created like PUT /authors/{id} creates it when it has no id or its id is unknown
+    private AuthorEntity patchAuthor(AuthorEntity author) {
+        if (author.getId() != null) {
+            Optional<AuthorEntity> updatedAuthor = authorService.partialUpdate(author.getId(), author);
+            if (updatedAuthor.isPresent()) {
+                return updatedAuthor.get();
+            }
+        }
+        return authorService.save(author);
     }
 
     @Override
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.BOOKS, key = "#isbn"),
+            @CacheEvict(cacheNames = CacheConfig.BOOK_JSON, key = "#isbn")
+    })
+    @Transactional
     public void delete(String isbn) {
-        bookRepository.deleteById(isbn);
+        //same find and remove as deleteById, CascadeType.ALL removes the author with the book
+        bookRepository.findById(isbn).ifPresent(book -> {
+            bookRepository.delete(book);
+            suggestions.bookDeleted(isbn);
+            if (book.getAuthor() != null) {
+                Long authorId = book.getAuthor().getId();
+                suggestions.authorDeleted(authorId);
+                //the cascaded author delete, after the commit like @CacheEvict
+                AfterCommit.run(() -> authorsCache.evict(authorId));
+            }
+            statistics.bookDeleted(authorIdOf(book));
+        });
     }
 
+    //set-based, see BookBulkDeleteRepositoryImpl, the authors of the books are removed as well
+    //one clear per cache, nothing is evicted key by key
     @Override
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.BOOKS, allEntries = true),
+            @CacheEvict(cacheNames = CacheConfig.BOOK_JSON, allEntries = true),
+            @CacheEvict(cacheNames = CacheConfig.AUTHORS, allEntries = true)
+    })
+    @Transactional
     public void deleteAll() {
-        bookRepository.deleteAll();
+        deleteBooks(new BookFilter());
+    }
+
+    //an empty filter deletes everything and clears the caches like deleteAll()
+    @Override
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.BOOKS, allEntries = true, condition = "#filter.empty"),
+            @CacheEvict(cacheNames = CacheConfig.BOOK_JSON, allEntries = true, condition = "#filter.empty"),
+            @CacheEvict(cacheNames = CacheConfig.AUTHORS, allEntries = true, condition = "#filter.empty")
+    })
+    @Transactional
+    public BulkDeleteResult deleteAll(BookFilter filter) {
+        BookDeletion deletion = deleteBooks(filter);
+        return BulkDeleteResult.builder()
+                .books(deletion.count())
+                .authors(deletion.deletedAuthorIds().size())
+                .build();
+    }
+
+    private BookDeletion deleteBooks(BookFilter filter) {
+        BookDeletion deletion = bookRepository.deleteMatching(filter);
+        if (filter.isEmpty()) {
+            suggestions.allBooksDeleted(deletion.deletedAuthorIds());
+            statistics.allBooksDeleted();
+            return deletion;
+        }
+        suggestions.booksDeleted(deletion.books().keySet(), deletion.deletedAuthorIds());
+        statistics.booksDeleted(deletion.books().values(), deletion.deletedAuthorIds());
+        //just the deleted keys, after the commit like @CacheEvict
+        AfterCommit.run(() -> {
+            deletion.books().keySet().forEach(isbn -> {
+                booksCache.evict(isbn);
+                bookJsonCache.evict(isbn);
+            });
+            deletion.deletedAuthorIds().forEach(authorsCache::evict);
+        });
+        return deletion;
+    }
+
+    private static Long authorIdOf(BookEntity book) {
+        return book.getAuthor() == null ? null : book.getAuthor().getId();
     }
 }
@@ -0,0 +1,89 @@
+package com.training.restApi.services.impl;
+
+import com.training.restApi.domain.BulkItemResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
+
+//Writes a stream of items in chunks, one transaction per chunk
+//memory stays bounded by the chunk size whatever the size of the import
+//a chunk that fails is rolled back and retried in halves so only the bad items are reported
+//ChunkWriter must not modify the items, a chunk can be written more than once
+class BulkChunkWriter<T> {
+
+    //writes one chunk inside the transaction, one result per item in chunk order (index is filled in here)
+    interface ChunkWriter<T> {
+        List<BulkItemResult> write(List<T> chunk);
+
+        //called once the chunk transaction has committed
+        default void committed(List<T> chunk) {
+        }
+    }
+
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final Function<T, String> keyOf;
+
+    BulkChunkWriter(TransactionTemplate transactionTemplate, int batchSize, Function<T, String> keyOf) {
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.keyOf = keyOf;
+    }
+
+    List<BulkItemResult> write(Iterator<T> items, ChunkWriter<T> writer) {
+        List<BulkItemResult> results = new ArrayList<>();
+        List<T> chunk = new ArrayList<>(batchSize);
+        while (items.hasNext()) {
+            chunk.add(items.next());
+            if (chunk.size() == batchSize) {
+                results.addAll(writeChunk(chunk, results.size(), writer));
+                chunk = new ArrayList<>(batchSize);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            results.addAll(writeChunk(chunk, results.size(), writer));
+        }
+        return results;
+    }
+
+    private List<BulkItemResult> writeChunk(List<T> chunk, int firstIndex, ChunkWriter<T> writer) {
+        try {
+            List<BulkItemResult> results = transactionTemplate.execute(status -> writer.write(chunk));
+            writer.committed(chunk);
+            return withIndexes(results, firstIndex);
+        } catch (RuntimeException chunkFailure) {
+            if (chunk.size() == 1) {
+                return List.of(failed(firstIndex, chunk.get(0), chunkFailure));
+            }
+            //isolate the failing items, every other item still gets written
+            int half = chunk.size() / 2;
+            List<BulkItemResult> results = new ArrayList<>(chunk.size());
+            results.addAll(writeChunk(chunk.subList(0, half), firstIndex, writer));
+            results.addAll(writeChunk(chunk.subList(half, chunk.size()), firstIndex + half, writer));
+            return results;
+        }
+    }
+
+    private static List<BulkItemResult> withIndexes(List<BulkItemResult> results, int firstIndex) {
+        for (int i = 0; i < results.size(); i++) {
+            results.get(i).setIndex(firstIndex + i);
+        }
+        return results;
+    }
+
+    private BulkItemResult failed(int index, T item, RuntimeException e) {
+        Throwable cause = e;
+        while (cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return BulkItemResult.builder()
+                .index(index)
+                .key(keyOf.apply(item))
+                .status(BulkItemResult.Status.FAILED)
+                .error(cause.getMessage())
+                .build();
+    }
+}
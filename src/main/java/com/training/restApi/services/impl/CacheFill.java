@@ -0,0 +1,59 @@
+package com.training.restApi.services.impl;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.NullValue;
+
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+//Fills a Caffeine cache from a bulk load without undoing the evictions of writes
+//a write evicts after its commit, a load that read the row before that commit would put the old row back
+//so the missed keys are reserved with a placeholder before the query and the loaded values only replace
+//their own placeholder: a write that evicts a key meanwhile removes the placeholder, the value is not cached
+//a key reserved by another load is loaded without being cached
+final class CacheFill {
+
+    private CacheFill() {
+    }
+
+    //the cached entry, null when the key is missing or still being loaded
+    static Cache.ValueWrapper get(Cache cache, Object key) {
+        Cache.ValueWrapper hit = cache.get(key);
+        return hit == null || hit.get() instanceof Placeholder ? null : hit;
+    }
+
+    //loader returns the values it found, the keys it did not find are cached as null
+    static <K, V> Map<K, V> load(Cache cache, Set<K> keys, Function<Set<K>, Map<K, V>> loader) {
+        ConcurrentMap<Object, Object> entries = entries(cache);
+        Placeholder placeholder = new Placeholder();
+        Set<K> reserved = new LinkedHashSet<>();
+        for (K key : keys) {
+            if (entries.putIfAbsent(key, placeholder) == null) {
+                reserved.add(key);
+            }
+        }
+        try {
+            Map<K, V> values = loader.apply(keys);
+            for (K key : reserved) {
+                V value = values.get(key);
+                entries.replace(key, placeholder, value != null ? value : NullValue.INSTANCE);
+            }
+            return values;
+        } finally {
+            //a failed load leaves nothing behind
+            reserved.forEach(key -> entries.remove(key, placeholder));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ConcurrentMap<Object, Object> entries(Cache cache) {
+        return ((com.github.benmanes.caffeine.cache.Cache<Object, Object>) cache.getNativeCache()).asMap();
+    }
+
+    //one per load, compared by identity
+    private static final class Placeholder {
+    }
+}
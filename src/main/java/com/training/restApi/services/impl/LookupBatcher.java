@@ -0,0 +1,144 @@
+package com.training.restApi.services.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+//Single-flight plus micro-batching for lookups by key
+//a key that is already being loaded is not loaded again, the caller waits for that load (coalesced)
+//distinct keys asked for within the batch window are loaded together with one call of the bulk loader
+//no extra threads: the first caller of a batch waits out the window and runs the load for everyone
+//(a batch that reaches maxBatchSize is run right away by the caller that filled it)
+//a caller with no other lookup in flight does not wait, batching only costs latency under concurrency
+class LookupBatcher<K, V> {
+
+    private final Function<Collection<K>, Map<K, V>> bulkLoader;
+    private final long windowNanos;
+    private final int maxBatchSize;
+
+    //keys queued or being loaded, removed once their result is handed out
+    private final ConcurrentHashMap<K, CompletableFuture<Optional<V>>> inFlight = new ConcurrentHashMap<>();
+    //batch still taking keys, guarded by this
+    private List<K> open;
+    //callers inside load(), queued, waiting for a load or loading
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final Counter calls;
+    private final Counter coalesced;
+    private final DistributionSummary batchSizes;
+
+    //bulkLoader returns the values it found, keys without a value come back as empty
+    LookupBatcher(String name, Function<Collection<K>, Map<K, V>> bulkLoader, Duration window, int maxBatchSize,
+                  MeterRegistry meterRegistry) {
+        this.bulkLoader = bulkLoader;
+        this.windowNanos = window.toNanos();
+        this.maxBatchSize = maxBatchSize;
+        this.calls = Counter.builder("lookup.calls")
+                .description("Lookups that missed the cache")
+                .tag("name", name)
+                .register(meterRegistry);
+        this.coalesced = Counter.builder("lookup.coalesced")
+                .description("Lookups served by a load already in flight for the same key")
+                .tag("name", name)
+                .register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("lookup.batch.size")
+                .description("Keys per bulk load, one recording per query")
+                .tag("name", name)
+                .register(meterRegistry);
+    }
+
+    Optional<V> load(K key) {
+        calls.increment();
+        active.incrementAndGet();
+        try {
+            return batched(key);
+        } finally {
+            active.decrementAndGet();
+        }
+    }
+
+    private Optional<V> batched(K key) {
+        CompletableFuture<Optional<V>> result = new CompletableFuture<>();
+        CompletableFuture<Optional<V>> existing = inFlight.putIfAbsent(key, result);
+        if (existing != null) {
+            coalesced.increment();
+            return join(existing);
+        }
+
+        List<K> batch;
+        boolean first;
+        boolean full;
+        synchronized (this) {
+            first = open == null;
+            if (first) {
+                open = new ArrayList<>();
+            }
+            batch = open;
+            batch.add(key);
+            full = batch.size() >= maxBatchSize;
+            if (full) {
+                open = null;
+            }
+        }
+
+        boolean run = full;
+        if (first && !full) {
+            if (windowNanos > 0 && active.get() > 1) {
+                LockSupport.parkNanos(windowNanos);
+            }
+            synchronized (this) {
+                //still open -> close it, otherwise it filled up and is run by someone else
+                run = open == batch;
+                if (run) {
+                    open = null;
+                }
+            }
+        }
+        if (run) {
+            runBatch(batch);
+        }
+        return join(result);
+    }
+
+    private void runBatch(List<K> batch) {
+        batchSizes.record(batch.size());
+        try {
+            Map<K, V> values = bulkLoader.apply(batch);
+            for (K key : batch) {
+                inFlight.remove(key).complete(Optional.ofNullable(values.get(key)));
+            }
+        } catch (RuntimeException | Error e) {
+            //everyone waiting on the batch gets the failure, the next lookup tries again
+            for (K key : batch) {
+                inFlight.remove(key).completeExceptionally(e);
+            }
+        }
+    }
+
+    private static <V> Optional<V> join(CompletableFuture<Optional<V>> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.training.restApi.services.impl;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+
+//Sorted in-memory index of short texts (titles, names) for prefix lookups
+//every text is stored under its normalized form, so all texts with a prefix are one contiguous range:
+//a lookup is a skip list search plus reading the first limit entries of the range
+//reads never lock, writes are serialized (they are rare compared to lookups)
+class PrefixIndex {
+
+    //combining marks left over after decomposing accented letters, and control characters
+    private static final Pattern MARKS = Pattern.compile("[\\p{M}\\p{Cntrl}]");
+    private static final Pattern SPACES = Pattern.compile("\\s+");
+
+    //sorts before any character of a normalized text, so "abc" comes before "abc d"
+    private static final char SEPARATOR = '\0';
+
+    record Match(String key, String text, String normalized) {
+    }
+
+    //normalized text + SEPARATOR + key -> original text
+    private final ConcurrentSkipListMap<String, String> entries = new ConcurrentSkipListMap<>();
+    //key -> its entry, to find the old text when a key is updated or removed
+    private final Map<String, String> entryOf = new ConcurrentHashMap<>();
+
+    static String normalize(String text) {
+        String stripped = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        return SPACES.matcher(stripped.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+    }
+
+    //a null text removes the key
+    synchronized void put(String key, String text) {
+        if (text == null || normalize(text).isEmpty()) {
+            remove(key);
+            return;
+        }
+        String entry = normalize(text) + SEPARATOR + key;
+        String old = entryOf.put(key, entry);
+        if (old != null && !old.equals(entry)) {
+            entries.remove(old);
+        }
+        entries.put(entry, text);
+    }
+
+    synchronized void remove(String key) {
+        String old = entryOf.remove(key);
+        if (old != null) {
+            entries.remove(old);
+        }
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        entryOf.clear();
+    }
+
+    int size() {
+        return entryOf.size();
+    }
+
+    //prefix has to be normalized already
+    List<Match> find(String prefix, int limit) {
+        List<Match> matches = new ArrayList<>(limit);
+        for (Map.Entry<String, String> entry : entries.tailMap(prefix).entrySet()) {
+            String indexed = entry.getKey();
+            if (matches.size() == limit || !indexed.startsWith(prefix)) {
+                break;
+            }
+            int separator = indexed.lastIndexOf(SEPARATOR);
+            matches.add(new Match(indexed.substring(separator + 1), entry.getValue(), indexed.substring(0, separator)));
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,38 @@
+package com.training.restApi.services.impl;
+
+import com.training.restApi.domain.entities.AuthorEntity;
+import com.training.restApi.repositories.reactive.ReactiveAuthorRepository;
+import com.training.restApi.services.ReactiveAuthorService;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@Service
+public class ReactiveAuthorServiceImpl implements ReactiveAuthorService {
+
+    private ReactiveAuthorRepository reactiveAuthorRepository;
+
+    public ReactiveAuthorServiceImpl(ReactiveAuthorRepository reactiveAuthorRepository) {
+        this.reactiveAuthorRepository = reactiveAuthorRepository;
+    }
+
+    @Override
+    public Mono<AuthorEntity> findOne(Long id) {
+        return reactiveAuthorRepository.findById(id);
+    }
+
+    @Override
+    public Mono<Page<AuthorEntity>> findAll(Pageable pageable) {
+        //page content and total run concurrently
+        return Mono.zip(reactiveAuthorRepository.findAll(pageable).collectList(), reactiveAuthorRepository.count())
+                .map(pageAndTotal -> new PageImpl<>(pageAndTotal.getT1(), pageable, pageAndTotal.getT2()));
+    }
+
+    @Override
+    public Flux<AuthorEntity> streamAll() {
+        return reactiveAuthorRepository.streamAll();
+    }
+}
@@ -0,0 +1,38 @@
+package com.training.restApi.services.impl;
+
+import com.training.restApi.domain.entities.BookEntity;
+import com.training.restApi.repositories.reactive.ReactiveBookRepository;
+import com.training.restApi.services.ReactiveBookService;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@Service
+public class ReactiveBookServiceImpl implements ReactiveBookService {
+
+    private ReactiveBookRepository reactiveBookRepository;
+
+    public ReactiveBookServiceImpl(ReactiveBookRepository reactiveBookRepository) {
+        this.reactiveBookRepository = reactiveBookRepository;
+    }
+
+    @Override
+    public Mono<BookEntity> findOne(String isbn) {
+        return reactiveBookRepository.findById(isbn);
+    }
+
+    @Override
+    public Mono<Page<BookEntity>> findAll(Pageable pageable) {
+        //page content and total run concurrently
+        return Mono.zip(reactiveBookRepository.findAll(pageable).collectList(), reactiveBookRepository.count())
+                .map(pageAndTotal -> new PageImpl<>(pageAndTotal.getT1(), pageable, pageAndTotal.getT2()));
+    }
+
+    @Override
+    public Flux<BookEntity> streamAll() {
+        return reactiveBookRepository.streamAll();
+    }
+}
@@ -0,0 +1,198 @@
+package com.training.restApi.services.impl;
+
+import com.training.restApi.config.ReplicaReads;
+import com.training.restApi.domain.AuthorStats;
+import com.training.restApi.domain.CatalogueStats;
+import com.training.restApi.repositories.AuthorBookCount;
+import com.training.restApi.repositories.AuthorRepository;
+import com.training.restApi.repositories.BookRepository;
+import com.training.restApi.services.StatisticsService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+//Book counts per author and for the whole catalogue, kept in memory so the stats endpoints never scan books
+//counted once at startup, then moved by BookServiceImpl and AuthorServiceImpl after each commit
+//reconcile() recounts on a schedule and repairs drift: writes made around the API (eg. straight in SQL),
+//two writes to the same book racing between reading its old author and committing,
+//or a write committing while the recount runs
+@Service
+public class StatisticsServiceImpl implements StatisticsService, SmartInitializingSingleton {
+
+    private AuthorRepository authorRepository;
+    private BookRepository bookRepository;
+
+    //author id -> books, every author has an entry, replaced as a whole by a recount
+    private volatile Map<Long, Long> bookCounts = new ConcurrentHashMap<>();
+    //writes to any counter hold the lock on this
+    private long books;
+    private long authorsWithBooks;
+    private long booksWithoutAuthor;
+
+    //counters a scheduled reconcile found wrong (one per author, one for the books without author)
+    private Counter corrections;
+
+    public StatisticsServiceImpl(AuthorRepository authorRepository, BookRepository bookRepository,
+                                 MeterRegistry meterRegistry) {
+        this.authorRepository = authorRepository;
+        this.bookRepository = bookRepository;
+        this.corrections = meterRegistry.counter("stats.reconcile.corrections");
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        recount();
+    }
+
+    @Override
+    public Optional<AuthorStats> authorStats(Long authorId) {
+        return Optional.ofNullable(bookCounts.get(authorId))
+                .map(count -> AuthorStats.builder().authorId(authorId).books(count).build());
+    }
+
+    @Override
+    public synchronized CatalogueStats catalogueStats() {
+        long authoredBooks = books - booksWithoutAuthor;
+        return CatalogueStats.builder()
+                .books(books)
+                .authors(bookCounts.size())
+                .authorsWithBooks(authorsWithBooks)
+                .booksWithoutAuthor(booksWithoutAuthor)
+                .averageBooksPerAuthor(authorsWithBooks == 0 ? 0 : (double) authoredBooks / authorsWithBooks)
+                .build();
+    }
+
+    //first run one interval after startup, which counted already
+    @Scheduled(initialDelayString = "${stats.reconcile-interval:PT1H}", fixedDelayString = "${stats.reconcile-interval:PT1H}")
+    public void reconcile() {
+        corrections.increment(recount());
+    }
+
+    //one GROUP BY over the books.author_id index plus a count, read without holding the lock
+    //so the endpoints keep answering, returns how many counters were wrong
+    //from the primary: a replica behind it would "repair" counters that are right
+    private long recount() {
+        Map<Long, Long> counted = new ConcurrentHashMap<>();
+        for (AuthorBookCount row : ReplicaReads.onPrimary(authorRepository::countBooksByAuthor)) {
+            counted.put(row.getAuthorId(), row.getBooks());
+        }
+        long countedWithoutAuthor = ReplicaReads.onPrimary(bookRepository::countByAuthorIsNull);
+
+        synchronized (this) {
+            Set<Long> authorIds = new HashSet<>(counted.keySet());
+            authorIds.addAll(bookCounts.keySet());
+            long wrong = authorIds.stream()
+                    .filter(id -> !Objects.equals(counted.get(id), bookCounts.get(id)))
+                    .count();
+            if (countedWithoutAuthor != booksWithoutAuthor) {
+                wrong++;
+            }
+
+            bookCounts = counted;
+            booksWithoutAuthor = countedWithoutAuthor;
+            books = countedWithoutAuthor + counted.values().stream().mapToLong(Long::longValue).sum();
+            authorsWithBooks = counted.values().stream().filter(count -> count > 0).count();
+            return wrong;
+        }
+    }
+
+    //Called by the write paths of the services, applied once the transaction commits
+    //a null author id stands for a book without author
+
+    void bookCreated(Long authorId) {
+        AfterCommit.run(() -> addBooks(authorId, 1));
+    }
+
+    void bookMoved(Long fromAuthorId, Long toAuthorId) {
+        if (Objects.equals(fromAuthorId, toAuthorId)) {
+            return;
+        }
+        AfterCommit.run(() -> {
+            addBooks(fromAuthorId, -1);
+            addBooks(toAuthorId, 1);
+        });
+    }
+
+    //CascadeType.ALL removes the author with the book
+    void bookDeleted(Long authorId) {
+        AfterCommit.run(() -> {
+            addBooks(authorId, -1);
+            if (authorId != null) {
+                removeAuthor(authorId);
+            }
+        });
+    }
+
+    //the authors of the books went with them, only the authors without books are left
+    void allBooksDeleted() {
+        AfterCommit.run(() -> {
+            synchronized (this) {
+                bookCounts.values().removeIf(count -> count > 0);
+                books = 0;
+                authorsWithBooks = 0;
+                booksWithoutAuthor = 0;
+            }
+        });
+    }
+
+    //bookAuthorIds: the author id of every deleted book (null for a book without author)
+    void booksDeleted(Collection<Long> bookAuthorIds, Collection<Long> deletedAuthorIds) {
+        AfterCommit.run(() -> {
+            synchronized (this) {
+                bookAuthorIds.forEach(authorId -> addBooks(authorId, -1));
+                deletedAuthorIds.forEach(this::removeAuthor);
+            }
+        });
+    }
+
+    void authorCreated(Long authorId) {
+        AfterCommit.run(() -> bookCounts.putIfAbsent(authorId, 0L));
+    }
+
+    void authorDeleted(Long authorId) {
+        AfterCommit.run(() -> removeAuthor(authorId));
+    }
+
+    void authorsDeleted() {
+        AfterCommit.run(() -> {
+            synchronized (this) {
+                //the foreign key only lets this through when no book has an author
+                bookCounts.keySet().forEach(this::removeAuthor);
+            }
+        });
+    }
+
+    private synchronized void addBooks(Long authorId, long delta) {
+        books += delta;
+        if (authorId == null) {
+            booksWithoutAuthor += delta;
+            return;
+        }
+        long before = bookCounts.getOrDefault(authorId, 0L);
+        long after = before + delta;
+        bookCounts.put(authorId, after);
+        if (before <= 0 && after > 0) {
+            authorsWithBooks++;
+        } else if (before > 0 && after <= 0) {
+            authorsWithBooks--;
+        }
+    }
+
+    private synchronized void removeAuthor(Long authorId) {
+        Long count = bookCounts.remove(authorId);
+        if (count != null && count > 0) {
+            books -= count;
+            authorsWithBooks--;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.training.restApi.services.impl;
+
+import com.training.restApi.config.ReplicaReads;
+import com.training.restApi.domain.Suggestion;
+import com.training.restApi.repositories.AuthorRepository;
+import com.training.restApi.repositories.BookRepository;
+import com.training.restApi.services.SuggestionService;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.support.WindowIterator;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+//Titles and author names in two PrefixIndexes, loaded once at startup
+//BookServiceImpl and AuthorServiceImpl report every write, so the indexes follow the database
+//without being reloaded (writes made around the API, eg. straight in SQL, show up after a restart)
+@Service
+public class SuggestionServiceImpl implements SuggestionService, SmartInitializingSingleton {
+
+    //rows per query while loading at startup
+    private static final int LOAD_PAGE_SIZE = 1000;
+
+    private BookRepository bookRepository;
+    private AuthorRepository authorRepository;
+
+    private PrefixIndex titles = new PrefixIndex();
+    private PrefixIndex authorNames = new PrefixIndex();
+
+    public SuggestionServiceImpl(BookRepository bookRepository, AuthorRepository authorRepository) {
+        this.bookRepository = bookRepository;
+        this.authorRepository = authorRepository;
+    }
+
+    //runs before the web server starts, so no request sees a half loaded index
+    //keyset pages, one short query each, the persistence context never holds more than one page
+    //from the primary, writes missing on a replica would be missing from the index for good
+    @Override
+    public void afterSingletonsInstantiated() {
+        WindowIterator.of(position -> ReplicaReads.onPrimary(() ->
+                        bookRepository.findBy(position, Sort.by("isbn"), Limit.of(LOAD_PAGE_SIZE))))
+                .startingAt(ScrollPosition.keyset())
+                .forEachRemaining(book -> titles.put(book.getIsbn(), book.getTitle()));
+        loadAuthorNames();
+    }
+
+    private void loadAuthorNames() {
+        WindowIterator.of(position -> ReplicaReads.onPrimary(() ->
+                        authorRepository.findBy(position, Sort.by("id"), Limit.of(LOAD_PAGE_SIZE))))
+                .startingAt(ScrollPosition.keyset())
+                .forEachRemaining(author -> authorNames.put(author.getId().toString(), author.getName()));
+    }
+
+    @Override
+    public List<Suggestion> suggest(String prefix, int limit) {
+        String normalized = PrefixIndex.normalize(prefix == null ? "" : prefix);
+        if (normalized.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        //first limit of each index, merged in alphabetical order
+        List<PrefixIndex.Match> books = titles.find(normalized, limit);
+        List<PrefixIndex.Match> authors = authorNames.find(normalized, limit);
+        List<Suggestion> suggestions = new ArrayList<>(limit);
+        int b = 0;
+        int a = 0;
+        while (suggestions.size() < limit && (b < books.size() || a < authors.size())) {
+            if (a == authors.size()
+                    || (b < books.size() && books.get(b).normalized().compareTo(authors.get(a).normalized()) <= 0)) {
+                suggestions.add(suggestion(Suggestion.Type.BOOK, books.get(b++)));
+            } else {
+                suggestions.add(suggestion(Suggestion.Type.AUTHOR, authors.get(a++)));
+            }
+        }
+        return suggestions;
+    }
+
+    private static Suggestion suggestion(Suggestion.Type type, PrefixIndex.Match match) {
+        return Suggestion.builder().type(type).key(match.key()).text(match.text()).build();
+    }
+
+    //Called by the write paths of the services, a null title or name takes the entry out
+
+    void bookSaved(String isbn, String title) {
+        AfterCommit.run(() -> titles.put(isbn, title));
+    }
+
+    void bookDeleted(String isbn) {
+        AfterCommit.run(() -> titles.remove(isbn));
+    }
+
+    //authorIds: the authors that went with their books
+    void allBooksDeleted(Collection<Long> authorIds) {
+        AfterCommit.run(() -> {
+            titles.clear();
+            authorIds.forEach(id -> authorNames.remove(id.toString()));
+        });
+    }
+
+    void booksDeleted(Collection<String> isbns, Collection<Long> authorIds) {
+        AfterCommit.run(() -> {
+            isbns.forEach(titles::remove);
+            authorIds.forEach(id -> authorNames.remove(id.toString()));
+        });
+    }
+
+    void authorSaved(Long id, String name) {
+        AfterCommit.run(() -> authorNames.put(id.toString(), name));
+    }
+
+    void authorDeleted(Long id) {
+        AfterCommit.run(() -> authorNames.remove(id.toString()));
+    }
+
+    void authorsDeleted() {
+        AfterCommit.run(authorNames::clear);
+    }
+}
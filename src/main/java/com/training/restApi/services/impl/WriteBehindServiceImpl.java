@@ -0,0 +1,344 @@
+package com.training.restApi.services.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.training.restApi.config.CacheConfig;
+import com.training.restApi.domain.BulkItemResult;
+import com.training.restApi.domain.UpsertResult;
+import com.training.restApi.domain.WriteTicket;
+import com.training.restApi.domain.entities.AuthorEntity;
+import com.training.restApi.domain.entities.BookEntity;
+import com.training.restApi.services.AuthorService;
+import com.training.restApi.services.BookService;
+import com.training.restApi.services.WriteBehindService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+//Write-behind for POST /authors and PUT /books/{isbn} with Prefer: respond-async
+//requests only put the write on a bounded queue, one flusher thread takes up to flushSize of them
+//(or what arrived within flushInterval of the first) and writes them one transaction per bulk.batch-size chunk
+//instead of one per request, each through the save of the synchronous endpoint (AuthorService.save,
+//BookService.upsert), so a write has the same outcome whether it was queued or not
+//a full queue makes the request wait up to enqueueTimeout for room, then it is rejected (503)
+//durability: queued writes only live in memory, a crash or kill loses them, a clean shutdown
+//stops taking writes once the web server is down and flushes everything still queued
+@Service
+public class WriteBehindServiceImpl implements WriteBehindService, SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindServiceImpl.class);
+
+    //below the web server lifecycles (DEFAULT_PHASE - 1024 / - 2048): stopped after them, started before them
+    private static final int PHASE = SmartLifecycle.DEFAULT_PHASE - 4096;
+
+    private AuthorService authorService;
+    private BookService bookService;
+
+    //the saves evict their keys when they return, before the chunk commits,
+    //the flushed keys are evicted again once it has committed
+    private org.springframework.cache.Cache booksCache;
+    private org.springframework.cache.Cache authorsCache;
+    private org.springframework.cache.Cache bookJsonCache;
+
+    private TransactionTemplate transactionTemplate;
+    private int batchSize;
+
+    private BlockingQueue<PendingWrite> queue;
+    private int flushSize;
+    private long flushIntervalNanos;
+    private long enqueueTimeoutNanos;
+
+    //tickets by id, queued ones and outcomes until the retention runs out
+    private Cache<String, WriteTicket> tickets;
+
+    //submissions hold the read lock while they queue, stop() takes the write lock to close the queue
+    private ReadWriteLock gate = new ReentrantReadWriteLock();
+    private boolean accepting = true;
+    private volatile boolean running;
+    private Thread flusher;
+
+    private Counter rejected;
+    private DistributionSummary flushSizes;
+
+    public WriteBehindServiceImpl(AuthorService authorService, BookService bookService, MeterRegistry meterRegistry,
+                                  CacheManager cacheManager, TransactionTemplate transactionTemplate,
+                                  @Value("${bulk.batch-size:500}") int batchSize,
+                                  @Value("${write-behind.capacity:10000}") int capacity,
+                                  @Value("${write-behind.flush-size:${bulk.batch-size:500}}") int flushSize,
+                                  @Value("${write-behind.flush-interval:100ms}") Duration flushInterval,
+                                  @Value("${write-behind.enqueue-timeout:50ms}") Duration enqueueTimeout,
+                                  @Value("${write-behind.status-retention:10m}") Duration statusRetention,
+                                  @Value("${write-behind.max-tracked:100000}") long maxTracked) {
+        this.authorService = authorService;
+        this.bookService = bookService;
+        this.booksCache = cacheManager.getCache(CacheConfig.BOOKS);
+        this.authorsCache = cacheManager.getCache(CacheConfig.AUTHORS);
+        this.bookJsonCache = cacheManager.getCache(CacheConfig.BOOK_JSON);
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.flushSize = flushSize;
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.enqueueTimeoutNanos = enqueueTimeout.toNanos();
+        this.tickets = Caffeine.newBuilder()
+                .expireAfterWrite(statusRetention)
+                .maximumSize(maxTracked)
+                .build();
+        Gauge.builder("write.behind.queue.size", queue, BlockingQueue::size)
+                .description("Writes waiting for a flush")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("write.behind.rejected")
+                .description("Writes turned away because the queue was full or closed")
+                .register(meterRegistry);
+        this.flushSizes = DistributionSummary.builder("write.behind.flush.size")
+                .description("Writes per flush")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Optional<WriteTicket> submitAuthor(AuthorEntity authorEntity) {
+        return submit(WriteTicket.Type.AUTHOR, null, authorEntity, null);
+    }
+
+    @Override
+    public Optional<WriteTicket> submitBook(String isbn, BookEntity bookEntity) {
+        bookEntity.setIsbn(isbn);
+        return submit(WriteTicket.Type.BOOK, isbn, null, bookEntity);
+    }
+
+    @Override
+    public Optional<WriteTicket> status(String id) {
+        return Optional.ofNullable(tickets.getIfPresent(id));
+    }
+
+    private Optional<WriteTicket> submit(WriteTicket.Type type, String key, AuthorEntity author, BookEntity book) {
+        WriteTicket ticket = WriteTicket.builder()
+                .id(UUID.randomUUID().toString())
+                .type(type)
+                .key(key)
+                .status(WriteTicket.Status.QUEUED)
+                .build();
+        //tracked before it is queued, so the outcome of a fast flush can't be overwritten by QUEUED
+        tickets.put(ticket.getId(), ticket);
+        boolean queued = false;
+        gate.readLock().lock();
+        try {
+            queued = accepting && queue.offer(new PendingWrite(ticket, author, book), enqueueTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            gate.readLock().unlock();
+        }
+        if (!queued) {
+            tickets.invalidate(ticket.getId());
+            rejected.increment();
+            return Optional.empty();
+        }
+        return Optional.of(ticket);
+    }
+
+    @Override
+    public void start() {
+        gate.writeLock().lock();
+        try {
+            accepting = true;
+        } finally {
+            gate.writeLock().unlock();
+        }
+        running = true;
+        flusher = new Thread(this::flushLoop, "write-behind");
+        //a JVM exiting without closing the context does not wait for it, see durability above
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    //no submission gets in once accepting is off, the flusher drains the queue and ends
+    @Override
+    public void stop() {
+        gate.writeLock().lock();
+        try {
+            accepting = false;
+        } finally {
+            gate.writeLock().unlock();
+        }
+        running = false;
+        if (flusher == null) {
+            return;
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    private void flushLoop() {
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingWrite first = running ? queue.poll(flushIntervalNanos, TimeUnit.NANOSECONDS) : queue.poll();
+                if (first != null) {
+                    flush(collect(first));
+                }
+            } catch (InterruptedException e) {
+                //nothing interrupts the flusher on purpose, stop() waits for the queue to drain
+            }
+        }
+    }
+
+    //the first write plus whatever joins it within flushInterval, at most flushSize
+    //no waiting once stopped, the rest of the queue is flushed right away
+    private List<PendingWrite> collect(PendingWrite first) throws InterruptedException {
+        List<PendingWrite> batch = new ArrayList<>(flushSize);
+        batch.add(first);
+        long deadline = System.nanoTime() + flushIntervalNanos;
+        while (batch.size() < flushSize) {
+            queue.drainTo(batch, flushSize - batch.size());
+            long left = deadline - System.nanoTime();
+            if (batch.size() >= flushSize || left <= 0 || !running) {
+                break;
+            }
+            PendingWrite next = queue.poll(left, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+        return batch;
+    }
+
+    //authors first, in the order they were submitted, then books
+    private void flush(List<PendingWrite> batch) {
+        flushSizes.record(batch.size());
+        List<PendingWrite> authors = batch.stream().filter(write -> write.author() != null).toList();
+        List<PendingWrite> books = batch.stream().filter(write -> write.book() != null).toList();
+        if (!authors.isEmpty()) {
+            complete(authors, this::writeAuthor);
+        }
+        if (!books.isEmpty()) {
+            complete(books, this::writeBook);
+        }
+    }
+
+    //a chunk that fails is retried in halves (BulkChunkWriter), only the writes that fail on their own end up FAILED
+    //an exception here means the whole flush failed, writes are not retried
+    private void complete(List<PendingWrite> writes, Function<PendingWrite, Written> writeOne) {
+        try {
+            BulkChunkWriter<PendingWrite> writer = new BulkChunkWriter<>(transactionTemplate, batchSize,
+                    pending -> pending.ticket().getKey());
+            List<BulkItemResult> results = writer.write(writes.iterator(), new BulkChunkWriter.ChunkWriter<>() {
+                private List<Written> chunkWritten;
+
+                @Override
+                public List<BulkItemResult> write(List<PendingWrite> chunk) {
+                    chunkWritten = new ArrayList<>(chunk.size());
+                    List<BulkItemResult> chunkResults = new ArrayList<>(chunk.size());
+                    for (PendingWrite pending : chunk) {
+                        Written written = writeOne.apply(pending);
+                        chunkWritten.add(written);
+                        chunkResults.add(BulkItemResult.builder().key(written.key()).status(written.status()).build());
+                    }
+                    return chunkResults;
+                }
+
+                @Override
+                public void committed(List<PendingWrite> chunk) {
+                    chunkWritten.forEach(Written::evict);
+                }
+            });
+            for (int i = 0; i < writes.size(); i++) {
+                WriteTicket ticket = writes.get(i).ticket();
+                BulkItemResult result = results.get(i);
+                tickets.put(ticket.getId(), ticket.toBuilder()
+                        .key(result.getKey() != null ? result.getKey() : ticket.getKey())
+                        .status(WriteTicket.Status.valueOf(result.getStatus().name()))
+                        .error(result.getError())
+                        .build());
+            }
+        } catch (RuntimeException e) {
+            log.error("Write-behind flush of {} writes failed", writes.size(), e);
+            for (PendingWrite write : writes) {
+                WriteTicket ticket = write.ticket();
+                tickets.put(ticket.getId(), ticket.toBuilder()
+                        .status(WriteTicket.Status.FAILED)
+                        .error(e.getMessage())
+                        .build());
+            }
+        }
+    }
+
+    //POST /authors: an id that is stored updates that author, anything else creates one
+    //the saves fill in ids and versions, so each attempt of a chunk writes a copy of the submitted entity
+    private Written writeAuthor(PendingWrite pending) {
+        AuthorEntity submitted = pending.author();
+        AuthorEntity saved = authorService.save(copy(submitted));
+        boolean created = submitted.getId() == null || !submitted.getId().equals(saved.getId());
+        return new Written(String.valueOf(saved.getId()),
+                created ? BulkItemResult.Status.CREATED : BulkItemResult.Status.UPDATED,
+                () -> authorsCache.evict(saved.getId()));
+    }
+
+    //PUT /books/{isbn}, the nested author is saved or merged as there
+    private Written writeBook(PendingWrite pending) {
+        BookEntity submitted = pending.book();
+        BookEntity book = copy(submitted);
+        book.setAuthor(submitted.getAuthor() != null ? copy(submitted.getAuthor()) : null);
+        UpsertResult<BookEntity> result = bookService.upsert(submitted.getIsbn(), book, null);
+        AuthorEntity author = result.getEntity().getAuthor();
+        return new Written(submitted.getIsbn(),
+                result.isCreated() ? BulkItemResult.Status.CREATED : BulkItemResult.Status.UPDATED,
+                () -> {
+                    booksCache.evict(submitted.getIsbn());
+                    bookJsonCache.evict(submitted.getIsbn());
+                    if (author != null) {
+                        authorsCache.evict(author.getId());
+                    }
+                });
+    }
+
+    private static AuthorEntity copy(AuthorEntity author) {
+        return AuthorEntity.builder().id(author.getId()).name(author.getName()).age(author.getAge())
+                .version(author.getVersion()).build();
+    }
+
+    private static BookEntity copy(BookEntity book) {
+        return BookEntity.builder().isbn(book.getIsbn()).title(book.getTitle()).author(book.getAuthor())
+                .version(book.getVersion()).build();
+    }
+
+    //outcome of one write, evict runs once its chunk has committed
+    private record Written(String key, BulkItemResult.Status status, Runnable evict) {
+    }
+
+    private record PendingWrite(WriteTicket ticket, AuthorEntity author, BookEntity book) {
+    }
+}
@@ -26,6 +26,14 @@ public class TestDataUtil {
                 .build();
     }
 
+    public static AuthorEntity createTestAuthorC() {
+        return AuthorEntity.builder()
+                .id(3L)
+                .name("Ben Dover")
+                .age(42)
+                .build();
+    }
+
     public static AuthorDto createTestAuthorDto() {
         return AuthorDto.builder()
                 .id(4L)
@@ -46,6 +54,12 @@ public class TestDataUtil {
                 .build();
     }
 
+    public static BookEntity createTestBookC(final AuthorEntity author) {
+        return BookEntity.builder()
+                .isbn("312abc").title("Book 3").author(author)
+                .build();
+    }
+
     public static BookDto createTestBookDtoA(final AuthorDto author) {
         return BookDto.builder()
                 .isbn("123abc").title("Book Dto").author(author)
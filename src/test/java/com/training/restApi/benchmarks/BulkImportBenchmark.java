@@ -0,0 +1,75 @@
+package com.training.restApi.benchmarks;
+
+import com.training.restApi.RestApiApplication;
+import com.training.restApi.domain.BulkItemResult;
+import com.training.restApi.domain.entities.AuthorEntity;
+import com.training.restApi.domain.entities.BookEntity;
+import com.training.restApi.services.BookService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+//Time to load a catalogue: POST /books/_bulk path vs one PUT /books/{isbn} upsert per book
+//every invocation writes fresh isbns so both paths measure inserts into a growing table
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BulkImportBenchmark {
+
+    @Param({"100000"})
+    private int rows;
+
+    //distinct authors per import, books reference them round robin
+    @Param({"1000"})
+    private int authors;
+
+    @Param({"500"})
+    private int batchSize;
+
+    private ConfigurableApplicationContext context;
+    private BookService bookService;
+    private int run;
+
+    @Setup
+    public void setup() {
+        //production chunk size instead of the small one in the test properties
+        context = new SpringApplicationBuilder(RestApiApplication.class)
+                .run("--spring.main.web-application-type=none", "--logging.level.root=WARN",
+                        "--bulk.batch-size=" + batchSize);
+        bookService = context.getBean(BookService.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<BulkItemResult> bulkImport() {
+        return bookService.bulkSave(books(run++).iterator());
+    }
+
+    @Benchmark
+    public int upsertPerBook() {
+        List<BookEntity> books = books(run++);
+        books.forEach(book -> bookService.upsert(book.getIsbn(), book, null));
+        return books.size();
+    }
+
+    private List<BookEntity> books(int run) {
+        return IntStream.range(0, rows)
+                .mapToObj(i -> BookEntity.builder()
+                        .isbn(String.format("bulk-%d-%07d", run, i))
+                        .title("Title " + i)
+                        .author(AuthorEntity.builder().name("Author " + run + "-" + i % authors).age(40).build())
+                        .build())
+                .toList();
+    }
+}
@@ -0,0 +1,83 @@
+package com.training.restApi.benchmarks;
+
+import com.training.restApi.TestDataUtil;
+import com.training.restApi.config.MapperConfig;
+import com.training.restApi.domain.dto.AuthorDto;
+import com.training.restApi.domain.dto.BookDto;
+import com.training.restApi.domain.entities.AuthorEntity;
+import com.training.restApi.domain.entities.BookEntity;
+import com.training.restApi.mappers.Mapper;
+import com.training.restApi.mappers.impl.AuthorMapperImpl;
+import com.training.restApi.mappers.impl.BookMapperImpl;
+import com.training.restApi.mappers.mapstruct.AuthorMapStructMapper;
+import com.training.restApi.mappers.mapstruct.BookMapStructMapper;
+import org.mapstruct.factory.Mappers;
+import org.modelmapper.ModelMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+//ModelMapper (reflective, LOOSE matching) vs MapStruct (generated) on the same objects
+//run with -prof gc to compare allocation per operation
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MapperBenchmark {
+
+    private Mapper<AuthorEntity, AuthorDto> modelMapperAuthorMapper;
+    private Mapper<BookEntity, BookDto> modelMapperBookMapper;
+    private Mapper<AuthorEntity, AuthorDto> mapStructAuthorMapper;
+    private Mapper<BookEntity, BookDto> mapStructBookMapper;
+
+    private AuthorEntity authorEntity;
+    private AuthorDto authorDto;
+    private BookEntity bookEntity;
+    private BookDto bookDto;
+
+    @Setup
+    public void setup() {
+        ModelMapper modelMapper = new MapperConfig().modelMapper();
+        modelMapperAuthorMapper = new AuthorMapperImpl(modelMapper);
+        modelMapperBookMapper = new BookMapperImpl(modelMapper);
+        mapStructAuthorMapper = Mappers.getMapper(AuthorMapStructMapper.class);
+        mapStructBookMapper = Mappers.getMapper(BookMapStructMapper.class);
+
+        authorEntity = TestDataUtil.createTestAuthorA();
+        authorDto = TestDataUtil.createTestAuthorDto();
+        bookEntity = TestDataUtil.createTestBookA(authorEntity);
+        bookDto = TestDataUtil.createTestBookDtoA(authorDto);
+    }
+
+    @Benchmark
+    public AuthorDto authorMapToModelMapper() {
+        return modelMapperAuthorMapper.mapTo(authorEntity);
+    }
+
+    @Benchmark
+    public AuthorDto authorMapToMapStruct() {
+        return mapStructAuthorMapper.mapTo(authorEntity);
+    }
+
+    @Benchmark
+    public BookDto bookMapToModelMapper() {
+        return modelMapperBookMapper.mapTo(bookEntity);
+    }
+
+    @Benchmark
+    public BookDto bookMapToMapStruct() {
+        return mapStructBookMapper.mapTo(bookEntity);
+    }
+
+    @Benchmark
+    public BookEntity bookMapFromModelMapper() {
+        return modelMapperBookMapper.mapFrom(bookDto);
+    }
+
+    @Benchmark
+    public BookEntity bookMapFromMapStruct() {
+        return mapStructBookMapper.mapFrom(bookDto);
+    }
+}
@@ -0,0 +1,76 @@
+package com.training.restApi.benchmarks;
+
+import com.training.restApi.RestApiApplication;
+import com.training.restApi.domain.entities.AuthorEntity;
+import com.training.restApi.domain.entities.BookEntity;
+import com.training.restApi.services.BookService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+//Blocking (JPA) vs reactive (R2DBC) read endpoints over HTTP, each pair returns the same DTOs
+//GET /books/{isbn} is served from the caches after the first request, /reactive/books/{isbn} always reads the database
+//export and _stream write all books as NDJSON
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+@Threads(64)
+@State(Scope.Benchmark)
+public class ReactiveReadBenchmark {
+
+    @Param({"/books/load-0000500", "/reactive/books/load-0000500",
+            "/books?size=20", "/reactive/books?size=20",
+            "/books/export", "/reactive/books/_stream"})
+    private String path;
+
+    @Param({"1000"})
+    private int books;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient client;
+    private HttpRequest request;
+
+    @Setup
+    public void setup() {
+        context = new SpringApplicationBuilder(RestApiApplication.class)
+                .run("--server.port=0", "--logging.level.root=WARN");
+
+        BookService bookService = context.getBean(BookService.class);
+        bookService.bulkSave(IntStream.range(0, books)
+                .mapToObj(i -> BookEntity.builder()
+                        .isbn(String.format("load-%07d", i))
+                        .title("Title " + i)
+                        .author(AuthorEntity.builder().name("Author " + i % 100).age(40).build())
+                        .build())
+                .iterator());
+
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path)).GET().build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int read() throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException(path + " returned " + response.statusCode());
+        }
+        return response.body().length;
+    }
+}
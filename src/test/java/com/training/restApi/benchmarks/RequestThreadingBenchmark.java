@@ -0,0 +1,141 @@
+package com.training.restApi.benchmarks;
+
+import com.training.restApi.RestApiApplication;
+import com.training.restApi.domain.entities.AuthorEntity;
+import com.training.restApi.domain.entities.BookEntity;
+import com.training.restApi.services.BookService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+//Load test of GET /books over HTTP: Tomcat's platform thread pool vs one virtual thread per request
+//every SQL statement is delayed by latencyMs to stand in for a slow database
+//400 client threads against 200 Tomcat threads, with a pool smaller and larger than that
+//Throughput gives requests/s, SampleTime the p99
+//virtualThreads=true needs a Java 21+ JVM, on older ones Spring Boot keeps the platform pool,
+//the benchmark profile runs on the JDK Maven runs on:
+//  JAVA_HOME=<JDK 21> ./mvnw -P benchmark verify -Dbenchmark.include=RequestThreadingBenchmark
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+@Threads(400)
+@State(Scope.Benchmark)
+public class RequestThreadingBenchmark {
+
+    @Param({"false", "true"})
+    private boolean virtualThreads;
+
+    @Param({"10", "400"})
+    private int dbPoolSize;
+
+    @Param({"20"})
+    private int latencyMs;
+
+    @Param({"1000"})
+    private int books;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient client;
+    private HttpRequest listBooks;
+
+    @Setup
+    public void setup() {
+        context = new SpringApplicationBuilder(RestApiApplication.class, SlowDatabase.class)
+                //no replicas: every read goes through the pool sized here and the delayed connections
+                .run("--server.port=0", "--logging.level.root=WARN", "--replicas.urls=",
+                        "--spring.threads.virtual.enabled=" + virtualThreads,
+                        "--spring.datasource.hikari.maximum-pool-size=" + dbPoolSize,
+                        "--db.max-concurrency=" + dbPoolSize,
+                        "--db.acquire-timeout=60s",
+                        "--benchmark.statement-latency-ms=" + latencyMs);
+
+        BookService bookService = context.getBean(BookService.class);
+        bookService.bulkSave(IntStream.range(0, books)
+                .mapToObj(i -> BookEntity.builder()
+                        .isbn(String.format("load-%07d", i))
+                        .title("Title " + i)
+                        .author(AuthorEntity.builder().name("Author " + i % 100).age(40).build())
+                        .build())
+                .iterator());
+
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        listBooks = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/books?size=20")).GET().build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int listBooks() throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = client.send(listBooks, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("GET /books returned " + response.statusCode());
+        }
+        return response.body().length;
+    }
+
+    //Sleeps after prepareStatement while the connection is held, like a slow round trip to the database
+    //(after: behind the lazy routing proxy the pooled connection is only taken by the call itself)
+    @Configuration
+    static class SlowDatabase {
+
+        @Bean
+        static BeanPostProcessor slowDataSourcePostProcessor(Environment environment) {
+            long latencyMs = environment.getProperty("benchmark.statement-latency-ms", Long.class, 0L);
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    if (!(bean instanceof DataSource dataSource) || latencyMs == 0) {
+                        return bean;
+                    }
+                    return new DelegatingDataSource(dataSource) {
+                        @Override
+                        public Connection getConnection() throws SQLException {
+                            return slow(super.getConnection(), latencyMs);
+                        }
+                    };
+                }
+            };
+        }
+
+        private static Connection slow(Connection connection, long latencyMs) {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        Object result;
+                        try {
+                            result = method.invoke(connection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getTargetException();
+                        }
+                        if (method.getName().equals("prepareStatement")) {
+                            Thread.sleep(latencyMs);
+                        }
+                        return result;
+                    });
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.training.restApi.benchmarks;
+
+import com.training.restApi.RestApiApplication;
+import com.training.restApi.domain.entities.AuthorEntity;
+import com.training.restApi.domain.entities.BookEntity;
+import com.training.restApi.services.BookService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+//GET /books/search latency over a large catalogue
+//the test properties use H2, where search falls back to an unindexed LIKE scan
+//for the GIN index numbers run against PostgreSQL, eg. with
+//-jvmArgsAppend "-Dspring.datasource.url=jdbc:postgresql://localhost:5432/bench -Dspring.datasource.username=...
+//-Dspring.datasource.password=... -Dspring.r2dbc.url=r2dbc:postgresql://localhost:5432/bench ..."
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class SearchBenchmark {
+
+    //rare word, common word, two words across title and author name
+    @Param({"hobbit", "title", "author 42 title 4242"})
+    private String query;
+
+    @Param({"1000000"})
+    private int books;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient client;
+    private HttpRequest request;
+
+    @Setup
+    public void setup() {
+        context = new SpringApplicationBuilder(RestApiApplication.class)
+                .run("--server.port=0", "--logging.level.root=WARN");
+
+        BookService bookService = context.getBean(BookService.class);
+        bookService.bulkSave(IntStream.range(0, books)
+                .mapToObj(i -> BookEntity.builder()
+                        .isbn(String.format("search-%07d", i))
+                        .title(i % 10_000 == 0 ? "The Hobbit " + i : "Title " + i)
+                        .author(AuthorEntity.builder().name("Author " + i % 1000).age(40).build())
+                        .build())
+                .iterator());
+
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/books/search?size=20&q="
+                + URLEncoder.encode(query, StandardCharsets.UTF_8))).GET().build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int search() throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException(query + " returned " + response.statusCode());
+        }
+        return response.body().length;
+    }
+}
@@ -0,0 +1,49 @@
+package com.training.restApi.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.training.restApi.domain.dto.AuthorDto;
+import com.training.restApi.domain.dto.BookDto;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//Jackson cost of the GET /books response body
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SerializationBenchmark {
+
+    @Param({"20", "100"})
+    private int pageSize;
+
+    private ObjectMapper objectMapper;
+    private Page<BookDto> page;
+
+    @Setup
+    public void setup() {
+        //same builder Spring Boot uses for the MVC ObjectMapper
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+        List<BookDto> books = new ArrayList<>(pageSize);
+        for (int i = 0; i < pageSize; i++) {
+            AuthorDto author = AuthorDto.builder().id((long) i % 10).name("Author " + i % 10).age(40 + i % 10).build();
+            books.add(BookDto.builder().isbn(String.format("isbn-%07d", i)).title("Title " + i).author(author).build());
+        }
+        page = new PageImpl<>(books, PageRequest.of(0, pageSize), 10_000);
+    }
+
+    @Benchmark
+    public byte[] bookPageToJson() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(page);
+    }
+}
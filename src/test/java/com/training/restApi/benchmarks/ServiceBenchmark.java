@@ -0,0 +1,76 @@
+package com.training.restApi.benchmarks;
+
+import com.training.restApi.RestApiApplication;
+import com.training.restApi.domain.entities.AuthorEntity;
+import com.training.restApi.domain.entities.BookEntity;
+import com.training.restApi.services.AuthorService;
+import com.training.restApi.services.BookService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.concurrent.TimeUnit;
+
+//Services against the embedded H2 database from src/test/resources/application.properties
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ServiceBenchmark {
+
+    @Param({"1000"})
+    private int books;
+
+    @Param({"20"})
+    private int pageSize;
+
+    private ConfigurableApplicationContext context;
+    private BookService bookService;
+    private AuthorService authorService;
+
+    private AuthorEntity author;
+    private int deepPage;
+    private int counter;
+
+    @Setup
+    public void setup() {
+        //no web server, only the service and repository beans are measured
+        context = new SpringApplicationBuilder(RestApiApplication.class)
+                .run("--spring.main.web-application-type=none", "--logging.level.root=WARN");
+        bookService = context.getBean(BookService.class);
+        authorService = context.getBean(AuthorService.class);
+
+        author = authorService.save(AuthorEntity.builder().name("Bench Author").age(50).build());
+        for (int i = 0; i < books; i++) {
+            String isbn = String.format("bench-%07d", i);
+            bookService.save(isbn, BookEntity.builder().isbn(isbn).title("Title " + i).author(author).build());
+        }
+        deepPage = books / pageSize - 1;
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Page<BookEntity> bookFindAllFirstPage() {
+        return bookService.findAll(PageRequest.of(0, pageSize));
+    }
+
+    @Benchmark
+    public Page<BookEntity> bookFindAllLastPage() {
+        return bookService.findAll(PageRequest.of(deepPage, pageSize));
+    }
+
+    @Benchmark
+    public AuthorEntity authorPartialUpdate() {
+        //only name set, age must be left untouched
+        AuthorEntity update = AuthorEntity.builder().name("Bench Author " + (counter++ & 1023)).build();
+        return authorService.partialUpdate(author.getId(), update).orElseThrow();
+    }
+}
@@ -0,0 +1,81 @@
+package com.training.restApi.benchmarks;
+
+import com.training.restApi.RestApiApplication;
+import com.training.restApi.domain.entities.AuthorEntity;
+import com.training.restApi.domain.entities.BookEntity;
+import com.training.restApi.repositories.AuthorRepository;
+import com.training.restApi.repositories.BookRepository;
+import com.training.restApi.services.BookService;
+import com.training.restApi.services.SuggestionService;
+import com.training.restApi.services.impl.SuggestionServiceImpl;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+//Typeahead lookups against the in-memory prefix indexes, titles built from a small vocabulary
+//so short prefixes match a large part of the catalogue
+//setup also prints the heap retained by a freshly loaded copy of the indexes
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class SuggestBenchmark {
+
+    private static final String[] WORDS = {"the", "silent", "river", "garden", "night", "stone", "winter", "shadow",
+            "king", "road", "house", "light", "dark", "city", "song", "fire", "glass", "storm", "queen", "tower"};
+
+    @Param({"1000000"})
+    private int books;
+
+    //one letter, a common word, a rare title
+    @Param({"t", "silent r", "winter king 4242"})
+    private String prefix;
+
+    private ConfigurableApplicationContext context;
+    private SuggestionService suggestionService;
+
+    @Setup
+    public void setup() {
+        context = new SpringApplicationBuilder(RestApiApplication.class)
+                .run("--spring.main.web-application-type=none", "--logging.level.root=WARN");
+        context.getBean(BookService.class).bulkSave(IntStream.range(0, books)
+                .mapToObj(i -> BookEntity.builder()
+                        .isbn(String.format("suggest-%07d", i))
+                        .title(WORDS[i % WORDS.length] + " " + WORDS[i / WORDS.length % WORDS.length] + " " + i)
+                        .author(AuthorEntity.builder().name("Author " + i % 1000).age(40).build())
+                        .build())
+                .iterator());
+        suggestionService = context.getBean(SuggestionService.class);
+
+        long before = usedHeapAfterGc();
+        SuggestionServiceImpl copy = new SuggestionServiceImpl(context.getBean(BookRepository.class),
+                context.getBean(AuthorRepository.class));
+        copy.afterSingletonsInstantiated();
+        long after = usedHeapAfterGc();
+        System.out.printf("%nsuggestion indexes for %d books: %d MB (%s)%n", books, (after - before) >> 20,
+                copy.suggest("a", 1).isEmpty() ? "empty" : "loaded");
+    }
+
+    private static long usedHeapAfterGc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int suggest() {
+        return suggestionService.suggest(prefix, 10).size();
+    }
+}
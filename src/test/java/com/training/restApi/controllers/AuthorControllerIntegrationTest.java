@@ -2,20 +2,38 @@ package com.training.restApi.controllers;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.training.restApi.TestDataUtil;
+import com.training.restApi.domain.WriteTicket;
 import com.training.restApi.domain.dto.AuthorDto;
 import com.training.restApi.domain.entities.AuthorEntity;
 import com.training.restApi.services.AuthorService;
+import com.training.restApi.services.BookService;
+import com.training.restApi.services.impl.WriteBehindServiceImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SpringBootTest
 @ExtendWith(SpringExtension.class)
@@ -26,12 +44,20 @@ public class AuthorControllerIntegrationTest {
     private MockMvc mockMvc;
     private ObjectMapper objectMapper;
     private AuthorService authorService;
+    private BookService bookService;
+    private CacheManager cacheManager;
+    private TransactionTemplate transactionTemplate;
 
     @Autowired
-    public AuthorControllerIntegrationTest(MockMvc mockMvc, ObjectMapper objectMapper, AuthorService authorService){
+    public AuthorControllerIntegrationTest(MockMvc mockMvc, ObjectMapper objectMapper, AuthorService authorService,
+                                           BookService bookService, CacheManager cacheManager,
+                                           TransactionTemplate transactionTemplate){
         this.mockMvc = mockMvc;
         this.objectMapper = objectMapper;
         this.authorService = authorService;
+        this.bookService = bookService;
+        this.cacheManager = cacheManager;
+        this.transactionTemplate = transactionTemplate;
     }
 
     @Test
@@ -72,6 +98,39 @@ public class AuthorControllerIntegrationTest {
         );
     }
 
+    @Test
+    public void testBulkImportAuthorsReturnsResultPerAuthor() throws Exception {
+        AuthorEntity savedAuthor = authorService.save(TestDataUtil.createTestAuthorA());
+        AuthorEntity newAuthor = TestDataUtil.createTestAuthorB();
+        newAuthor.setId(null);
+        AuthorEntity updatedAuthor = TestDataUtil.createTestAuthorC();
+        updatedAuthor.setId(savedAuthor.getId());
+        String authorsNdjson = objectMapper.writeValueAsString(newAuthor) + "\n"
+                + objectMapper.writeValueAsString(newAuthor) + "\n"
+                + objectMapper.writeValueAsString(updatedAuthor) + "\n";
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.post("/authors/_bulk")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(authorsNdjson)
+        ).andExpect(
+                MockMvcResultMatchers.status().isOk()
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$[0].status").value("CREATED")
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$[1].status").value("DUPLICATE")
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$[2].status").value("UPDATED")
+        );
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.get("/authors/" + savedAuthor.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.name").value(updatedAuthor.getName())
+        );
+    }
+
     @Test
     public void testListAuthorsReturnsHttp200() throws Exception{
         mockMvc.perform(
@@ -90,11 +149,54 @@ public class AuthorControllerIntegrationTest {
                 MockMvcRequestBuilders.get("/authors")
                         .contentType(MediaType.APPLICATION_JSON)
         ).andExpect(
-                MockMvcResultMatchers.jsonPath("$[0].id").isNumber()
+                MockMvcResultMatchers.jsonPath("$.content[0].id").isNumber()
         ).andExpect(
-                MockMvcResultMatchers.jsonPath("$[0].name").value(savedAuthor.getName())
+                MockMvcResultMatchers.jsonPath("$.content[0].name").value(savedAuthor.getName())
         ).andExpect(
-                MockMvcResultMatchers.jsonPath("$[0].age").value(savedAuthor.getAge())
+                MockMvcResultMatchers.jsonPath("$.content[0].age").value(savedAuthor.getAge())
+        );
+    }
+
+    @Test
+    public void testReactiveListAuthorsReturnsPageOfAuthors() throws Exception {
+        AuthorEntity savedAuthorA = authorService.save(TestDataUtil.createTestAuthorA());
+        authorService.save(TestDataUtil.createTestAuthorB());
+
+        MvcResult result = mockMvc.perform(
+                MockMvcRequestBuilders.get("/reactive/authors?size=1")
+        ).andExpect(MockMvcResultMatchers.request().asyncStarted()).andReturn();
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.asyncDispatch(result)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.content[0].id").value(savedAuthorA.getId())
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.content[0].name").value(savedAuthorA.getName())
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.totalElements").value(2)
+        );
+    }
+
+    @Test
+    public void testListAuthorsAfterCursorReturnsNextAuthors() throws Exception {
+        AuthorEntity authorA = authorService.save(TestDataUtil.createTestAuthorA());
+        AuthorEntity authorB = authorService.save(TestDataUtil.createTestAuthorB());
+
+        String firstPage = mockMvc.perform(
+                MockMvcRequestBuilders.get("/authors").param("after", "").param("size", "1")
+                        .contentType(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.content[0].id").value(authorA.getId())
+        ).andReturn().getResponse().getContentAsString();
+        String next = objectMapper.readTree(firstPage).get("next").asText();
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.get("/authors").param("after", next).param("size", "1")
+                        .contentType(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.content[0].id").value(authorB.getId())
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.hasNext").value(false)
         );
     }
 
@@ -126,6 +228,155 @@ public class AuthorControllerIntegrationTest {
         );
     }
 
+    @Test
+    public void testListAuthorsFiltersByNamePrefixAndAgeRange() throws Exception {
+        authorService.save(TestDataUtil.createTestAuthorA());
+        authorService.save(TestDataUtil.createTestAuthorB());
+        AuthorEntity authorC = authorService.save(TestDataUtil.createTestAuthorC());
+        AuthorEntity authorD = TestDataUtil.createTestAuthorC();
+        authorD.setId(null);
+        authorD.setName("Ben Other");
+        authorD.setAge(30);
+        authorService.save(authorD);
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.get("/authors?name=Ben&minAge=40&maxAge=70")
+                        .contentType(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.totalElements").value(1)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.content[0].id").value(authorC.getId())
+        );
+    }
+
+    @Test
+    public void testListAuthorBooksReturnsOnlyBooksOfTheAuthor() throws Exception {
+        AuthorEntity authorA = authorService.save(TestDataUtil.createTestAuthorA());
+        AuthorEntity authorB = authorService.save(TestDataUtil.createTestAuthorB());
+        bookService.save("123abc", TestDataUtil.createTestBookA(authorA));
+        bookService.save("213abc", TestDataUtil.createTestBookB(authorB));
+        bookService.save("312abc", TestDataUtil.createTestBookC(authorA));
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.get("/authors/" + authorA.getId() + "/books?sort=isbn")
+                        .contentType(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                MockMvcResultMatchers.status().isOk()
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.totalElements").value(2)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.content[1].isbn").value("312abc")
+        );
+    }
+
+    @Test
+    public void testListBooksOfMissingAuthorReturnsHttp404() throws Exception {
+        mockMvc.perform(
+                MockMvcRequestBuilders.get("/authors/999/books")
+                        .contentType(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                MockMvcResultMatchers.status().isNotFound()
+        );
+    }
+
+    @Test
+    public void testMultiGetAuthorsReturnsRequestOrderWithNotFoundMarkers() throws Exception {
+        AuthorEntity authorA = authorService.save(TestDataUtil.createTestAuthorA());
+        AuthorEntity authorB = authorService.save(TestDataUtil.createTestAuthorB());
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.post("/authors/_mget")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(List.of(authorB.getId(), 999L, authorA.getId())))
+        ).andExpect(
+                MockMvcResultMatchers.status().isOk()
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$[0].key").value(authorB.getId())
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$[0].value.name").value(authorB.getName())
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$[1].key").value(999)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$[1].found").value(false)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$[1].value").doesNotExist()
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$[2].value.name").value(authorA.getName())
+        );
+    }
+
+    @Test
+    public void testGetAuthorAfterUpdateReturnsUpdatedAuthor() throws Exception {
+        AuthorEntity author = TestDataUtil.createTestAuthorA();
+        AuthorEntity savedAuthor = authorService.save(author);
+        //first GET puts the author in the cache
+        mockMvc.perform(MockMvcRequestBuilders.get("/authors/" + savedAuthor.getId()));
+
+        AuthorEntity updatedAuthor = TestDataUtil.createTestAuthorB();
+        updatedAuthor.setId(savedAuthor.getId());
+        mockMvc.perform(
+                MockMvcRequestBuilders.put("/authors/" + savedAuthor.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(updatedAuthor))
+        ).andExpect(MockMvcResultMatchers.status().isOk());
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.get("/authors/" + savedAuthor.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.name").value(updatedAuthor.getName())
+        );
+    }
+
+    @Test
+    public void testGetAuthorWithCurrentETagReturnsHttp304() throws Exception {
+        AuthorEntity savedAuthor = authorService.save(TestDataUtil.createTestAuthorA());
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.get("/authors/" + savedAuthor.getId())
+                        .header("If-None-Match", "\"0\"")
+        ).andExpect(
+                MockMvcResultMatchers.status().isNotModified()
+        );
+    }
+
+    @Test
+    public void testWriteThatLostARaceWithoutIfMatchReturnsHttp409() {
+        OptimisticLockingExceptionHandler handler = new OptimisticLockingExceptionHandler();
+        MockHttpServletRequest unconditional = new MockHttpServletRequest("PUT", "/authors/1");
+        MockHttpServletRequest conditional = new MockHttpServletRequest("PUT", "/authors/1");
+        conditional.addHeader("If-Match", "\"0\"");
+
+        assertEquals(HttpStatus.CONFLICT, handler.versionConflict(unconditional).getStatusCode());
+        assertEquals(HttpStatus.PRECONDITION_FAILED, handler.versionConflict(conditional).getStatusCode());
+    }
+
+    @Test
+    public void testUpdateAuthorWithStaleIfMatchReturnsHttp412() throws Exception {
+        AuthorEntity savedAuthor = authorService.save(TestDataUtil.createTestAuthorA());
+        //version 0 -> 1
+        authorService.partialUpdate(savedAuthor.getId(), AuthorEntity.builder().age(99).build());
+
+        AuthorDto authorDto = TestDataUtil.createTestAuthorDto();
+        mockMvc.perform(
+                MockMvcRequestBuilders.put("/authors/" + savedAuthor.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header("If-Match", "\"0\"")
+                        .content(objectMapper.writeValueAsString(authorDto))
+        ).andExpect(MockMvcResultMatchers.status().isPreconditionFailed());
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.put("/authors/" + savedAuthor.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header("If-Match", "\"1\"")
+                        .content(objectMapper.writeValueAsString(authorDto))
+        ).andExpect(
+                MockMvcResultMatchers.status().isOk()
+        ).andExpect(
+                MockMvcResultMatchers.header().string("ETag", "\"2\"")
+        );
+    }
+
     @Test
     public void testUpdateAuthorReturnsHttp200IfAuthorExists() throws Exception {
         AuthorEntity author = TestDataUtil.createTestAuthorC();
@@ -202,6 +453,39 @@ public class AuthorControllerIntegrationTest {
         );
     }
 
+    @Test
+    public void testPartialUpdateKeepsFieldsNotInRequest() throws Exception {
+        AuthorEntity authorEntity = TestDataUtil.createTestAuthorA();
+        AuthorEntity savedAuthorEntity = authorService.save(authorEntity);
+
+        AuthorDto authorDto = AuthorDto.builder().name("McLuvin").build();
+        String authorJson = objectMapper.writeValueAsString(authorDto);
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.patch("/authors/" + savedAuthorEntity.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(authorJson)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.name").value("McLuvin")
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.age").value(savedAuthorEntity.getAge())
+        );
+    }
+
+    @Test
+    public void testPartialUpdateMissingAuthorReturnsHttp404() throws Exception {
+        AuthorDto authorDto = TestDataUtil.createTestAuthorDto();
+        String authorJson = objectMapper.writeValueAsString(authorDto);
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.patch("/authors/999")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(authorJson)
+        ).andExpect(
+                MockMvcResultMatchers.status().isNotFound()
+        );
+    }
+
     @Test
     public void testDeleteAuthorReturnsHttp204() throws Exception{
         AuthorEntity authorEntity = TestDataUtil.createTestAuthorA();
@@ -224,4 +508,119 @@ public class AuthorControllerIntegrationTest {
                 MockMvcResultMatchers.status().isNoContent()
         );
     }
+
+    @Test
+    public void testCachedAuthorPageIsInvalidatedByPartialUpdate() throws Exception {
+        AuthorEntity savedAuthor = authorService.save(TestDataUtil.createTestAuthorA());
+        //second request is answered by the query cache
+        mockMvc.perform(MockMvcRequestBuilders.get("/authors"));
+        mockMvc.perform(MockMvcRequestBuilders.get("/authors"));
+
+        //PATCH runs a native UPDATE ... RETURNING, which Hibernate does not track by itself
+        mockMvc.perform(
+                MockMvcRequestBuilders.patch("/authors/" + savedAuthor.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"Renamed\"}")
+        ).andExpect(MockMvcResultMatchers.status().isOk());
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.get("/authors")
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.content[0].name").value("Renamed")
+        );
+    }
+
+    @Test
+    public void testAsyncCreateAuthorReturnsHttp202AndTicketFollowsTheFlush() throws Exception {
+        AuthorEntity author = TestDataUtil.createTestAuthorA();
+        author.setId(null);
+        String authorJson = objectMapper.writeValueAsString(author);
+
+        MvcResult accepted = mockMvc.perform(
+                MockMvcRequestBuilders.post("/authors")
+                        .header("Prefer", "respond-async")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(authorJson)
+        ).andExpect(
+                MockMvcResultMatchers.status().isAccepted()
+        ).andExpect(
+                MockMvcResultMatchers.header().string("Preference-Applied", "respond-async")
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.status").value("QUEUED")
+        ).andReturn();
+        WriteTicket ticket = objectMapper.readValue(accepted.getResponse().getContentAsString(), WriteTicket.class);
+        assertEquals("/writes/" + ticket.getId(), accepted.getResponse().getHeader("Location"));
+
+        WriteTicket written = awaitWrite(ticket.getId());
+        assertEquals(WriteTicket.Status.CREATED, written.getStatus());
+        //the key of a written author is its new id
+        mockMvc.perform(
+                MockMvcRequestBuilders.get("/authors/" + written.getKey())
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.name").value("Hugh Mungus")
+        );
+    }
+
+    @Test
+    public void testAsyncCreateAuthorsFlushedTogetherAreCreatedLikeSynchronousOnes() throws Exception {
+        AuthorEntity author = TestDataUtil.createTestAuthorA();
+        author.setId(null);
+        String authorJson = objectMapper.writeValueAsString(author);
+
+        //the same author twice, with other preferences next to respond-async
+        List<WriteTicket> tickets = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            MvcResult accepted = mockMvc.perform(
+                    MockMvcRequestBuilders.post("/authors")
+                            .header("Prefer", "respond-async, wait=10")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(authorJson)
+            ).andExpect(
+                    MockMvcResultMatchers.status().isAccepted()
+            ).andReturn();
+            tickets.add(objectMapper.readValue(accepted.getResponse().getContentAsString(), WriteTicket.class));
+        }
+
+        //two POST /authors create two authors, queued or not
+        WriteTicket first = awaitWrite(tickets.get(0).getId());
+        WriteTicket second = awaitWrite(tickets.get(1).getId());
+        assertEquals(WriteTicket.Status.CREATED, first.getStatus());
+        assertEquals(WriteTicket.Status.CREATED, second.getStatus());
+        assertNotEquals(first.getKey(), second.getKey());
+    }
+
+    @Test
+    public void testUnknownWriteTicketReturnsHttp404() throws Exception {
+        mockMvc.perform(
+                MockMvcRequestBuilders.get("/writes/no-such-ticket")
+        ).andExpect(
+                MockMvcResultMatchers.status().isNotFound()
+        );
+    }
+
+    @Test
+    public void testFullWriteQueueRejectsAfterTheEnqueueTimeout() {
+        //not started, so nothing drains the single slot
+        WriteBehindServiceImpl writeBehind = new WriteBehindServiceImpl(authorService, bookService,
+                new SimpleMeterRegistry(), cacheManager, transactionTemplate, 500, 1, 50, Duration.ofMillis(200), Duration.ofMillis(10),
+                Duration.ofMinutes(10), 100);
+
+        assertTrue(writeBehind.submitAuthor(TestDataUtil.createTestAuthorA()).isPresent());
+        assertTrue(writeBehind.submitAuthor(TestDataUtil.createTestAuthorB()).isEmpty());
+    }
+
+    //polls GET /writes/{id} until the flush of the write has run (or 10 seconds have passed)
+    private WriteTicket awaitWrite(String id) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (true) {
+            String json = mockMvc.perform(MockMvcRequestBuilders.get("/writes/" + id))
+                    .andExpect(MockMvcResultMatchers.status().isOk())
+                    .andReturn().getResponse().getContentAsString();
+            WriteTicket ticket = objectMapper.readValue(json, WriteTicket.class);
+            if (ticket.getStatus() != WriteTicket.Status.QUEUED || System.nanoTime() > deadline) {
+                return ticket;
+            }
+            Thread.sleep(20);
+        }
+    }
 }
@@ -2,36 +2,96 @@ package com.training.restApi.controllers;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.training.restApi.TestDataUtil;
+import com.training.restApi.config.QueryBudgetExceededException;
+import com.training.restApi.config.QueryGuardProperties;
+import com.training.restApi.config.ReplicaPool;
+import com.training.restApi.config.ReplicaProperties;
+import com.training.restApi.domain.WriteTicket;
+import com.training.restApi.domain.dto.AuthorDto;
 import com.training.restApi.domain.dto.BookDto;
+import com.training.restApi.domain.entities.AuthorEntity;
 import com.training.restApi.domain.entities.BookEntity;
 import com.training.restApi.services.BookService;
+import com.training.restApi.services.impl.StatisticsServiceImpl;
+import com.training.restApi.services.impl.WriteBehindServiceImpl;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.Cookie;
+import jakarta.persistence.Cache;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 
+import java.sql.Connection;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
 @SpringBootTest
 @ExtendWith(SpringExtension.class)
 @DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
 @AutoConfigureMockMvc
+//real meter registries (Prometheus) instead of the test default, for the scrape test
+@AutoConfigureObservability(tracing = false)
 public class BookControllerIntegrationTest {
 
     private MockMvc mockMvc;
     private ObjectMapper objectMapper;
     private BookService bookService;
+    private Statistics statistics;
+    private Cache secondLevelCache;
+    private MeterRegistry meterRegistry;
+    private StatisticsServiceImpl statisticsService;
+    private JdbcTemplate jdbcTemplate;
+    private QueryGuardProperties queryGuard;
+    private WriteBehindServiceImpl writeBehindService;
+    private ReplicaPool replicaPool;
+    private ReplicaProperties replicaProperties;
 
     @Autowired
-    public BookControllerIntegrationTest(MockMvc mockMvc, ObjectMapper objectMapper, BookService bookService){
+    public BookControllerIntegrationTest(MockMvc mockMvc, ObjectMapper objectMapper, BookService bookService,
+                                         EntityManagerFactory entityManagerFactory, MeterRegistry meterRegistry,
+                                         StatisticsServiceImpl statisticsService, JdbcTemplate jdbcTemplate,
+                                         QueryGuardProperties queryGuard, WriteBehindServiceImpl writeBehindService,
+                                         ReplicaPool replicaPool, ReplicaProperties replicaProperties){
         this.mockMvc = mockMvc;
         this.objectMapper = objectMapper;
         this.bookService = bookService;
+        this.statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        this.secondLevelCache = entityManagerFactory.getCache();
+        this.meterRegistry = meterRegistry;
+        this.statisticsService = statisticsService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.queryGuard = queryGuard;
+        this.writeBehindService = writeBehindService;
+        this.replicaPool = replicaPool;
+        this.replicaProperties = replicaProperties;
     }
 
     @Test
@@ -104,6 +164,106 @@ public class BookControllerIntegrationTest {
         );
     }
 
+    @Test
+    public void testThatCreateBookWithNewAuthorReturnsSavedAuthor() throws Exception {
+        AuthorDto authorDto = TestDataUtil.createTestAuthorDto();
+        authorDto.setId(null);
+        BookDto bookDto = TestDataUtil.createTestBookDtoA(authorDto);
+        String bookJson = objectMapper.writeValueAsString(bookDto);
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.put("/books/" + bookDto.getIsbn())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(bookJson)
+        ).andExpect(
+                MockMvcResultMatchers.status().isCreated()
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.author.id").isNumber()
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.author.name").value(authorDto.getName())
+        );
+    }
+
+    @Test
+    public void testUpdateBookPersistsUpdatedBook() throws Exception{
+        BookEntity bookEntity = TestDataUtil.createTestBookA(null);
+        bookService.save(bookEntity.getIsbn(), bookEntity);
+
+        BookDto bookDto = TestDataUtil.createTestBookDtoA(null);
+        bookDto.setTitle("Book Volume 2");
+        String bookJson = objectMapper.writeValueAsString(bookDto);
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.put("/books/" + bookEntity.getIsbn())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(bookJson)
+        ).andExpect(
+                MockMvcResultMatchers.status().isOk()
+        );
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.get("/books/" + bookEntity.getIsbn())
+                        .contentType(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.title").value("Book Volume 2")
+        );
+    }
+
+    @Test
+    public void testBulkImportBooksCreatesUpdatesAndDeduplicatesAuthors() throws Exception {
+        BookEntity existingBook = TestDataUtil.createTestBookA(null);
+        bookService.save(existingBook.getIsbn(), existingBook);
+
+        AuthorDto authorDto = TestDataUtil.createTestAuthorDto();
+        authorDto.setId(null);
+        List<BookDto> bookDtos = List.of(
+                TestDataUtil.createTestBookDtoA(authorDto),
+                BookDto.builder().isbn("213abc").title("Book 2").author(authorDto).build(),
+                BookDto.builder().isbn("312abc").title("Book 3").author(authorDto).build());
+        String booksJson = objectMapper.writeValueAsString(bookDtos);
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.post("/books/_bulk")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(booksJson)
+        ).andExpect(
+                MockMvcResultMatchers.status().isOk()
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$[0].status").value("UPDATED")
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$[1].status").value("CREATED")
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$[2].key").value("312abc")
+        );
+
+        //three books share one new author, it is inserted once
+        mockMvc.perform(
+                MockMvcRequestBuilders.get("/authors")
+                        .contentType(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.totalElements").value(1)
+        );
+    }
+
+    @Test
+    public void testBulkImportBooksAcceptsNdjsonAndReportsFailures() throws Exception {
+        AuthorDto missingAuthor = TestDataUtil.createTestAuthorDto();
+        String booksNdjson = objectMapper.writeValueAsString(TestDataUtil.createTestBookDtoA(null)) + "\n"
+                + objectMapper.writeValueAsString(BookDto.builder().isbn("213abc").author(missingAuthor).build()) + "\n";
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.post("/books/_bulk")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(booksNdjson)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$[0].status").value("CREATED")
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$[1].status").value("FAILED")
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$[1].error").value("Author does not exist")
+        );
+    }
+
     @Test
     public void testListBooksReturnsHttp200() throws Exception {
         mockMvc.perform(
@@ -123,95 +283,1553 @@ public class BookControllerIntegrationTest {
                 MockMvcRequestBuilders.get("/books")
                         .contentType(MediaType.APPLICATION_JSON)
         ).andExpect(
-                MockMvcResultMatchers.jsonPath("$[0].isbn").value(savedBookEntity.getIsbn())
+                MockMvcResultMatchers.jsonPath("$.content[0].isbn").value(savedBookEntity.getIsbn())
         ).andExpect(
-                MockMvcResultMatchers.jsonPath("$[0].title").value(savedBookEntity.getTitle())
+                MockMvcResultMatchers.jsonPath("$.content[0].title").value(savedBookEntity.getTitle())
         );
     }
 
     @Test
-    public void testFindBookReturnsHttp200IfBookExists() throws Exception {
-        BookEntity book = TestDataUtil.createTestBookB(null);
+    public void testSearchBooksMatchesWordPrefixesOfTitleAndAuthorByRelevance() throws Exception {
+        AuthorEntity authorA = TestDataUtil.createTestAuthorA();
+        authorA.setId(null);
+        AuthorEntity authorB = TestDataUtil.createTestAuthorB();
+        authorB.setId(null);
+        AuthorEntity authorC = TestDataUtil.createTestAuthorC();
+        authorC.setId(null);
+        BookEntity bookA = TestDataUtil.createTestBookA(authorC);
+        bookA.setTitle("The Hobbit");
+        BookEntity bookB = TestDataUtil.createTestBookB(authorA);
+        bookB.setTitle("Hobbits of Dover");
+        BookEntity bookC = TestDataUtil.createTestBookC(authorB);
+        for (BookEntity book : List.of(bookA, bookB, bookC)) {
+            bookService.save(book.getIsbn(), book);
+        }
+
+        //both words in the title of book B, book A has "dover" only in the author name, book C has neither
+        mockMvc.perform(
+                MockMvcRequestBuilders.get("/books/search?q=dover hob")
+                        .contentType(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                MockMvcResultMatchers.status().isOk()
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.totalElements").value(2)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.content[0].isbn").value(bookB.getIsbn())
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.content[1].isbn").value(bookA.getIsbn())
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.content[1].author.name").value(authorC.getName())
+        );
+    }
+
+    @Test
+    public void testSearchBooksPagesThroughMatches() throws Exception {
+        AuthorEntity author = TestDataUtil.createTestAuthorA();
+        author.setId(null);
+        for (BookEntity book : List.of(TestDataUtil.createTestBookA(author), TestDataUtil.createTestBookB(author),
+                TestDataUtil.createTestBookC(author))) {
+            bookService.save(book.getIsbn(), book);
+        }
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.get("/books/search?q=BOOK&page=1&size=2")
+                        .contentType(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.totalElements").value(3)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.content.length()").value(1)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.content[0].isbn").value("312abc")
+        );
+    }
+
+    @Test
+    public void testSearchBooksWithoutWordsReturnsEmptyPage() throws Exception {
+        AuthorEntity author = TestDataUtil.createTestAuthorA();
+        author.setId(null);
+        BookEntity book = TestDataUtil.createTestBookA(author);
         bookService.save(book.getIsbn(), book);
 
         mockMvc.perform(
-                MockMvcRequestBuilders.get("/books/" + book.getIsbn())
+                MockMvcRequestBuilders.get("/books/search?q=%25_*")
+                        .contentType(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                MockMvcResultMatchers.status().isOk()
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.content.length()").value(0)
+        );
+    }
+
+    @Test
+    public void testSuggestReturnsTitlesAndAuthorNamesInAlphabeticalOrder() throws Exception {
+        AuthorEntity authorA = TestDataUtil.createTestAuthorA();
+        authorA.setId(null);
+        AuthorEntity authorB = TestDataUtil.createTestAuthorB();
+        authorB.setId(null);
+        authorB.setName("Thea Queen");
+        BookEntity bookA = TestDataUtil.createTestBookA(authorA);
+        bookA.setTitle("The Hobbit");
+        BookEntity bookB = TestDataUtil.createTestBookB(authorB);
+        bookB.setTitle("Théâtre");
+        BookEntity bookC = TestDataUtil.createTestBookC(authorA);
+        for (BookEntity book : List.of(bookA, bookB, bookC)) {
+            bookService.save(book.getIsbn(), book);
+        }
+
+        //case and accents are ignored, "the hobbit" < "thea queen" < "theatre"
+        mockMvc.perform(
+                MockMvcRequestBuilders.get("/books/suggest?prefix=THE")
+                        .contentType(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                MockMvcResultMatchers.status().isOk()
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.length()").value(3)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$[0].type").value("BOOK")
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$[0].key").value(bookA.getIsbn())
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$[1].type").value("AUTHOR")
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$[1].text").value("Thea Queen")
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$[2].text").value("Théâtre")
+        );
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.get("/books/suggest?prefix=the&size=1")
+                        .contentType(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.length()").value(1)
+        );
+    }
+
+    @Test
+    public void testSuggestFollowsPartialUpdateAndDelete() throws Exception {
+        AuthorEntity authorA = TestDataUtil.createTestAuthorA();
+        authorA.setId(null);
+        AuthorEntity authorB = TestDataUtil.createTestAuthorB();
+        authorB.setId(null);
+        BookEntity bookA = TestDataUtil.createTestBookA(authorA);
+        bookA.setTitle("The Hobbit");
+        BookEntity bookB = TestDataUtil.createTestBookB(authorB);
+        bookB.setTitle("The Silmarillion");
+        bookService.save(bookA.getIsbn(), bookA);
+        bookService.save(bookB.getIsbn(), bookB);
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.patch("/books/" + bookA.getIsbn())
                         .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"title\": \"Hobbit\"}")
         ).andExpect(MockMvcResultMatchers.status().isOk());
+        mockMvc.perform(MockMvcRequestBuilders.delete("/books/" + bookB.getIsbn()))
+                .andExpect(MockMvcResultMatchers.status().isNoContent());
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.get("/books/suggest?prefix=the")
+                        .contentType(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.length()").value(0)
+        );
+        mockMvc.perform(
+                MockMvcRequestBuilders.get("/books/suggest?prefix=hob")
+                        .contentType(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$[0].text").value("Hobbit")
+        );
+        //the author of the deleted book was deleted with it
+        mockMvc.perform(
+                MockMvcRequestBuilders.get("/books/suggest?prefix=" + authorB.getName())
+                        .contentType(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.length()").value(0)
+        );
     }
 
     @Test
-    public void testFindBookReturnsBookIfBookExists() throws Exception {
-        BookEntity book = TestDataUtil.createTestBookB(null);
-        bookService.save(book.getIsbn(), book);
+    public void testStatsFollowBookWritesWithoutQueries() throws Exception {
+        AuthorEntity authorA = TestDataUtil.createTestAuthorA();
+        authorA.setId(null);
+        AuthorEntity authorB = TestDataUtil.createTestAuthorB();
+        authorB.setId(null);
+        BookEntity bookA = bookService.save("111", TestDataUtil.createTestBookA(authorA));
+        bookService.save("222", TestDataUtil.createTestBookB(bookA.getAuthor()));
+        BookEntity bookC = bookService.save("333", TestDataUtil.createTestBookC(authorB));
+        //PUT without author
+        mockMvc.perform(
+                MockMvcRequestBuilders.put("/books/444")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(TestDataUtil.createTestBookDtoA(null)))
+        ).andExpect(MockMvcResultMatchers.status().isCreated());
+        Long authorAId = bookA.getAuthor().getId();
+        Long authorBId = bookC.getAuthor().getId();
 
+        //book 222 moves from author A to author B
+        AuthorDto authorBDto = AuthorDto.builder().id(authorBId).name(authorB.getName()).age(authorB.getAge()).build();
         mockMvc.perform(
-                MockMvcRequestBuilders.get("/books/" + book.getIsbn())
+                MockMvcRequestBuilders.patch("/books/222")
                         .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"author\": " + objectMapper.writeValueAsString(authorBDto) + "}")
+        ).andExpect(MockMvcResultMatchers.status().isOk());
+        mockMvc.perform(MockMvcRequestBuilders.get("/authors/" + authorBId + "/stats"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.books").value(2));
+
+        //author A goes with its last book
+        mockMvc.perform(MockMvcRequestBuilders.delete("/books/111"))
+                .andExpect(MockMvcResultMatchers.status().isNoContent());
+        mockMvc.perform(MockMvcRequestBuilders.get("/authors/" + authorAId + "/stats"))
+                .andExpect(MockMvcResultMatchers.status().isNotFound());
+
+        statistics.clear();
+        mockMvc.perform(
+                MockMvcRequestBuilders.get("/stats")
         ).andExpect(
-                MockMvcResultMatchers.jsonPath("$.isbn").value(book.getIsbn())
+                MockMvcResultMatchers.jsonPath("$.books").value(3)
         ).andExpect(
-                MockMvcResultMatchers.jsonPath("$.title").value(book.getTitle())
+                MockMvcResultMatchers.jsonPath("$.authors").value(1)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.authorsWithBooks").value(1)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.booksWithoutAuthor").value(1)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.averageBooksPerAuthor").value(2.0)
         );
+        assertEquals(0, statistics.getPrepareStatementCount());
     }
 
     @Test
-    public void testPartialUpdateExistingBookReturnsHttp200() throws Exception{
-        BookEntity bookEntity = TestDataUtil.createTestBookB(null);
-        BookEntity savedBookEntity = bookService.save(bookEntity.getIsbn(), bookEntity);
+    public void testPutOverAnExistingBookIsOneStatementThatMovesTheStats() throws Exception {
+        AuthorEntity authorA = TestDataUtil.createTestAuthorA();
+        authorA.setId(null);
+        BookEntity bookA = bookService.save("111", TestDataUtil.createTestBookA(authorA));
+        bookService.save("222", TestDataUtil.createTestBookB(bookA.getAuthor()));
 
-        BookDto bookDto = TestDataUtil.createTestBookDtoA(null);
-        String bookJson = objectMapper.writeValueAsString(bookDto);
+        //the author it replaces comes back from the update itself, no lookup before it
+        statistics.clear();
+        mockMvc.perform(
+                MockMvcRequestBuilders.put("/books/111")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(TestDataUtil.createTestBookDtoA(null)))
+        ).andExpect(MockMvcResultMatchers.status().isOk());
+        assertEquals(1, statistics.getPrepareStatementCount());
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/authors/" + bookA.getAuthor().getId() + "/stats"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.books").value(1));
+        mockMvc.perform(MockMvcRequestBuilders.get("/stats"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.books").value(2))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.booksWithoutAuthor").value(1));
+    }
+
+    @Test
+    public void testReconcileRepairsStatsAfterWriteAroundTheApi() throws Exception {
+        AuthorEntity authorA = TestDataUtil.createTestAuthorA();
+        authorA.setId(null);
+        BookEntity bookA = bookService.save("111", TestDataUtil.createTestBookA(authorA));
+        jdbcTemplate.update("INSERT INTO books (isbn, title, author_id, version) VALUES ('999', 'Side door', ?, 0)",
+                bookA.getAuthor().getId());
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/stats"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.books").value(1));
 
+        statisticsService.reconcile();
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/authors/" + bookA.getAuthor().getId() + "/stats"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.books").value(2));
+        mockMvc.perform(MockMvcRequestBuilders.get("/stats"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.books").value(2));
+        assertEquals(1, meterRegistry.counter("stats.reconcile.corrections").count());
+    }
+
+    @Test
+    public void testListBooksFiltersByTitlePrefixAndAuthorAge() throws Exception {
+        AuthorEntity authorA = TestDataUtil.createTestAuthorA();
+        authorA.setId(null);
+        AuthorEntity authorB = TestDataUtil.createTestAuthorB();
+        authorB.setId(null);
+        AuthorEntity authorC = TestDataUtil.createTestAuthorC();
+        authorC.setId(null);
+        BookEntity bookA = TestDataUtil.createTestBookA(authorA);
+        BookEntity bookB = TestDataUtil.createTestBookB(authorB);
+        BookEntity bookC = TestDataUtil.createTestBookC(authorC);
+        bookC.setTitle("Other 3");
+        for (BookEntity book : List.of(bookA, bookB, bookC)) {
+            bookService.save(book.getIsbn(), book);
+        }
+
+        //ages 69, 85 and 42: "Book" drops book C, minAge=50 keeps A and B, maxAge=80 drops B
         mockMvc.perform(
-                MockMvcRequestBuilders.patch("/books/" + savedBookEntity.getIsbn())
+                MockMvcRequestBuilders.get("/books?title=Book&minAge=50&maxAge=80")
                         .contentType(MediaType.APPLICATION_JSON)
-                        .content(bookJson)
         ).andExpect(
-                MockMvcResultMatchers.status().isOk()
+                MockMvcResultMatchers.jsonPath("$.totalElements").value(1)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.content[0].isbn").value(bookA.getIsbn())
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.content[0].author.name").value(authorA.getName())
+        );
+
+        //wildcards in the prefix are taken literally
+        mockMvc.perform(
+                MockMvcRequestBuilders.get("/books?title=B%25")
+                        .contentType(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.totalElements").value(0)
         );
     }
 
     @Test
-    public void testPartialUpdateExistingBookReturnsUpdatedBook() throws Exception{
-        BookEntity bookEntity = TestDataUtil.createTestBookC(null);
-        BookEntity savedBookEntity = bookService.save(bookEntity.getIsbn(), bookEntity);
+    public void testListBooksFiltersByAuthorId() throws Exception {
+        AuthorEntity authorA = TestDataUtil.createTestAuthorA();
+        authorA.setId(null);
+        AuthorEntity authorB = TestDataUtil.createTestAuthorB();
+        authorB.setId(null);
+        BookEntity bookA = bookService.save("123abc", TestDataUtil.createTestBookA(authorA));
+        bookService.save("213abc", TestDataUtil.createTestBookB(authorB));
 
-        BookDto bookDto = TestDataUtil.createTestBookDtoA(null);
-        bookDto.setTitle("Testing Patch");
-        String bookJson = objectMapper.writeValueAsString(bookDto);
+        mockMvc.perform(
+                MockMvcRequestBuilders.get("/books?authorId=" + bookA.getAuthor().getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.totalElements").value(1)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.content[0].isbn").value("123abc")
+        );
+    }
+
+    @Test
+    public void testListBooksAfterCursorWalksAllPages() throws Exception {
+        for (BookEntity book : List.of(TestDataUtil.createTestBookA(null), TestDataUtil.createTestBookB(null),
+                TestDataUtil.createTestBookC(null))) {
+            bookService.save(book.getIsbn(), book);
+        }
+
+        String firstPage = mockMvc.perform(
+                MockMvcRequestBuilders.get("/books").param("after", "").param("size", "2")
+                        .contentType(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.content[0].isbn").value("123abc")
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.content[1].isbn").value("213abc")
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.hasNext").value(true)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.totalElements").doesNotExist()
+        ).andReturn().getResponse().getContentAsString();
+        String next = objectMapper.readTree(firstPage).get("next").asText();
 
         mockMvc.perform(
-                MockMvcRequestBuilders.patch("/books/" + savedBookEntity.getIsbn())
+                MockMvcRequestBuilders.get("/books").param("after", next).param("size", "2")
                         .contentType(MediaType.APPLICATION_JSON)
-                        .content(bookJson)
         ).andExpect(
-                MockMvcResultMatchers.jsonPath("$.isbn").value(savedBookEntity.getIsbn())
+                MockMvcResultMatchers.jsonPath("$.content[0].isbn").value("312abc")
         ).andExpect(
-                MockMvcResultMatchers.jsonPath("$.title").value("Testing Patch")
+                MockMvcResultMatchers.jsonPath("$.size").value(1)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.hasNext").value(false)
         );
     }
 
     @Test
-    public void testDeleteBookReturnsHttp204() throws Exception{
-        BookEntity bookEntity = TestDataUtil.createTestBookA(null);
-        BookEntity savedBookEntity = bookService.save(bookEntity.getIsbn(), bookEntity);
+    public void testListBooksAfterCursorKeepsSortByTitle() throws Exception {
+        for (BookEntity book : List.of(TestDataUtil.createTestBookA(null), TestDataUtil.createTestBookB(null),
+                TestDataUtil.createTestBookC(null))) {
+            bookService.save(book.getIsbn(), book);
+        }
+
+        String firstPage = mockMvc.perform(
+                MockMvcRequestBuilders.get("/books").param("after", "").param("size", "1").param("sort", "title,desc")
+                        .contentType(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.content[0].title").value("Book 3")
+        ).andReturn().getResponse().getContentAsString();
+        String next = objectMapper.readTree(firstPage).get("next").asText();
 
+        //no sort parameter, it comes from the cursor
         mockMvc.perform(
-                MockMvcRequestBuilders.delete("/books/" + savedBookEntity.getIsbn())
+                MockMvcRequestBuilders.get("/books").param("after", next).param("size", "1")
                         .contentType(MediaType.APPLICATION_JSON)
         ).andExpect(
-                MockMvcResultMatchers.status().isNoContent()
+                MockMvcResultMatchers.jsonPath("$.content[0].title").value("Book 2")
         );
     }
 
     @Test
-    public void testDeleteAllBooksReturnsHttp204() throws Exception{
+    public void testListBooksWithInvalidCursorReturnsHttp400() throws Exception {
         mockMvc.perform(
-                MockMvcRequestBuilders.delete("/books")
+                MockMvcRequestBuilders.get("/books").param("after", "not-a-cursor")
                         .contentType(MediaType.APPLICATION_JSON)
         ).andExpect(
-                MockMvcResultMatchers.status().isNoContent()
+                MockMvcResultMatchers.status().isBadRequest()
+        );
+    }
+
+    @Test
+    public void testExportBooksWritesOneJsonLinePerBook() throws Exception {
+        BookEntity bookA = TestDataUtil.createTestBookA(null);
+        bookService.save(bookA.getIsbn(), bookA);
+        BookEntity bookB = TestDataUtil.createTestBookB(null);
+        bookService.save(bookB.getIsbn(), bookB);
+
+        String ndjson = mockMvc.perform(
+                MockMvcRequestBuilders.get("/books/export")
+        ).andExpect(
+                MockMvcResultMatchers.status().isOk()
+        ).andExpect(
+                MockMvcResultMatchers.content().contentType(MediaType.APPLICATION_NDJSON)
+        ).andReturn().getResponse().getContentAsString();
+
+        String[] lines = ndjson.split("\n");
+        assertEquals(2, lines.length);
+        assertEquals(bookA.getIsbn(), objectMapper.readValue(lines[0], BookDto.class).getIsbn());
+        assertEquals(bookB.getIsbn(), objectMapper.readValue(lines[1], BookDto.class).getIsbn());
+    }
+
+    @Test
+    public void testReactiveGetBookReturnsBookWithAuthor() throws Exception {
+        AuthorEntity author = TestDataUtil.createTestAuthorA();
+        author.setId(null);
+        BookEntity book = TestDataUtil.createTestBookA(author);
+        bookService.save(book.getIsbn(), book);
+
+        MvcResult result = mockMvc.perform(
+                MockMvcRequestBuilders.get("/reactive/books/" + book.getIsbn())
+        ).andExpect(MockMvcResultMatchers.request().asyncStarted()).andReturn();
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.asyncDispatch(result)
+        ).andExpect(
+                MockMvcResultMatchers.status().isOk()
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.title").value(book.getTitle())
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.author.name").value(author.getName())
+        );
+    }
+
+    @Test
+    public void testReactiveGetMissingBookReturnsHttp404() throws Exception {
+        MvcResult result = mockMvc.perform(
+                MockMvcRequestBuilders.get("/reactive/books/missing")
+        ).andReturn();
+
+        mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
+                .andExpect(MockMvcResultMatchers.status().isNotFound());
+    }
+
+    @Test
+    public void testReactiveStreamBooksWritesOneJsonLinePerBook() throws Exception {
+        BookEntity bookA = TestDataUtil.createTestBookA(null);
+        bookService.save(bookA.getIsbn(), bookA);
+        BookEntity bookB = TestDataUtil.createTestBookB(null);
+        bookService.save(bookB.getIsbn(), bookB);
+
+        MvcResult result = mockMvc.perform(
+                MockMvcRequestBuilders.get("/reactive/books/_stream")
+        ).andExpect(MockMvcResultMatchers.request().asyncStarted()).andReturn();
+        result.getAsyncResult();
+
+        String[] lines = result.getResponse().getContentAsString().split("\n");
+        assertEquals(2, lines.length);
+        assertEquals(bookA.getIsbn(), objectMapper.readValue(lines[0], BookDto.class).getIsbn());
+        assertEquals(bookB.getIsbn(), objectMapper.readValue(lines[1], BookDto.class).getIsbn());
+    }
+
+    @Test
+    public void testExportBooksAsCsvQuotesFields() throws Exception {
+        AuthorEntity author = TestDataUtil.createTestAuthorA();
+        author.setId(null);
+        BookEntity book = TestDataUtil.createTestBookA(author);
+        book.setTitle("Book, \"Volume\" 1");
+        BookEntity savedBook = bookService.save(book.getIsbn(), book);
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.get("/books/export").param("format", "csv")
+        ).andExpect(
+                MockMvcResultMatchers.status().isOk()
+        ).andExpect(
+                MockMvcResultMatchers.content().string("isbn,title,author_id,author_name,author_age\n"
+                        + "123abc,\"Book, \"\"Volume\"\" 1\"," + savedBook.getAuthor().getId() + ",Hugh Mungus,69\n")
         );
     }
+
+    @Test
+    public void testListBooksLoadsAuthorsInTheSameQuery() throws Exception {
+        AuthorEntity authorA = TestDataUtil.createTestAuthorA();
+        authorA.setId(null);
+        AuthorEntity authorB = TestDataUtil.createTestAuthorB();
+        authorB.setId(null);
+        AuthorEntity authorC = TestDataUtil.createTestAuthorC();
+        authorC.setId(null);
+        for (BookEntity book : List.of(TestDataUtil.createTestBookA(authorA), TestDataUtil.createTestBookB(authorB),
+                TestDataUtil.createTestBookC(authorC))) {
+            bookService.save(book.getIsbn(), book);
+        }
+        statistics.clear();
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.get("/books")
+                        .contentType(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.content[2].author.name").value(authorC.getName())
+        );
+
+        //one page query with the author join for three books with three authors
+        //(no count query, Spring Data skips it when the first page is not full)
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void testRepeatedBookPageComesFromTheQueryCacheUntilABookChanges() throws Exception {
+        AuthorEntity authorA = TestDataUtil.createTestAuthorA();
+        authorA.setId(null);
+        AuthorEntity authorB = TestDataUtil.createTestAuthorB();
+        authorB.setId(null);
+        for (BookEntity book : List.of(TestDataUtil.createTestBookA(authorA), TestDataUtil.createTestBookB(authorB))) {
+            bookService.save(book.getIsbn(), book);
+        }
+        mockMvc.perform(MockMvcRequestBuilders.get("/books"));
+        statistics.clear();
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.get("/books")
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.content[1].author.name").value(authorB.getName())
+        );
+        //book rows and their fetched authors from the query cache
+        assertEquals(0, statistics.getPrepareStatementCount());
+        assertEquals(1, statistics.getQueryCacheHitCount());
+
+        //a native single-statement update, the cached page must not survive it
+        mockMvc.perform(
+                MockMvcRequestBuilders.patch("/books/" + TestDataUtil.createTestBookA(null).getIsbn())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"title\":\"Renamed\"}")
+        ).andExpect(MockMvcResultMatchers.status().isOk());
+        statistics.clear();
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.get("/books")
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.content[0].title").value("Renamed")
+        );
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void testSaveBookMergesExistingAuthorFromTheSecondLevelCache() throws Exception {
+        AuthorEntity author = TestDataUtil.createTestAuthorA();
+        author.setId(null);
+        BookEntity book = TestDataUtil.createTestBookA(author);
+        bookService.save(book.getIsbn(), book);
+        statistics.clear();
+
+        BookDto bookDto = TestDataUtil.createTestBookDtoA(AuthorDto.builder()
+                .id(book.getAuthor().getId()).name(author.getName()).age(author.getAge()).build());
+        mockMvc.perform(
+                MockMvcRequestBuilders.put("/books/" + book.getIsbn())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(bookDto))
+        ).andExpect(MockMvcResultMatchers.status().isOk());
+
+        //the nested author is merged from memory, no SELECT by id before its save
+        assertEquals(1, statistics.getSecondLevelCacheHitCount());
+        assertEquals(0, statistics.getEntityLoadCount());
+    }
+
+    @Test
+    public void testPatchAuthorEvictsOnlyThatAuthorFromTheSecondLevelCache() throws Exception {
+        AuthorEntity authorA = TestDataUtil.createTestAuthorA();
+        authorA.setId(null);
+        AuthorEntity authorB = TestDataUtil.createTestAuthorB();
+        authorB.setId(null);
+        Long authorAId = bookService.save("111", TestDataUtil.createTestBookA(authorA)).getAuthor().getId();
+        Long authorBId = bookService.save("222", TestDataUtil.createTestBookB(authorB)).getAuthor().getId();
+        assertTrue(secondLevelCache.contains(AuthorEntity.class, authorAId));
+        assertTrue(secondLevelCache.contains(AuthorEntity.class, authorBId));
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.patch("/authors/" + authorAId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"Renamed\"}")
+        ).andExpect(MockMvcResultMatchers.status().isOk());
+
+        assertFalse(secondLevelCache.contains(AuthorEntity.class, authorAId));
+        assertTrue(secondLevelCache.contains(AuthorEntity.class, authorBId));
+    }
+
+    @Test
+    public void testFindBookLoadsAuthorInTheSameQuery() throws Exception {
+        AuthorEntity author = TestDataUtil.createTestAuthorA();
+        author.setId(null);
+        BookEntity book = TestDataUtil.createTestBookA(author);
+        bookService.save(book.getIsbn(), book);
+        statistics.clear();
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.get("/books/" + book.getIsbn())
+                        .contentType(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.author.name").value(author.getName())
+        );
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void testFindBookTwiceServesSecondRequestFromCache() throws Exception {
+        AuthorEntity author = TestDataUtil.createTestAuthorA();
+        author.setId(null);
+        BookEntity book = TestDataUtil.createTestBookA(author);
+        bookService.save(book.getIsbn(), book);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/books/" + book.getIsbn()));
+        statistics.clear();
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.get("/books/" + book.getIsbn())
+                        .contentType(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.author.name").value(author.getName())
+        );
+
+        assertEquals(0, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void testConcurrentFindBookLookupsShareOneQuery() throws Exception {
+        AuthorEntity authorA = TestDataUtil.createTestAuthorA();
+        authorA.setId(null);
+        AuthorEntity authorB = TestDataUtil.createTestAuthorB();
+        authorB.setId(null);
+        BookEntity bookA = TestDataUtil.createTestBookA(authorA);
+        BookEntity bookB = TestDataUtil.createTestBookB(authorB);
+        bookService.save(bookA.getIsbn(), bookA);
+        bookService.save(bookB.getIsbn(), bookB);
+        statistics.clear();
+
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Optional<BookEntity>>> lookups = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            String isbn = i % 3 == 0 ? bookB.getIsbn() : bookA.getIsbn();
+            lookups.add(executor.submit(() -> {
+                start.await();
+                return bookService.findOne(isbn);
+            }));
+        }
+        start.countDown();
+        for (int i = 0; i < 6; i++) {
+            BookEntity book = lookups.get(i).get(10, TimeUnit.SECONDS).orElseThrow();
+            assertEquals(i % 3 == 0 ? authorB.getName() : authorA.getName(), book.getAuthor().getName());
+        }
+        executor.shutdown();
+
+        //six lookups of two isbns: the repeated isbns waited for the load in flight,
+        //the two distinct ones were loaded together, unless the first lookup found no other one in flight
+        //and went ahead on its own
+        assertTrue(statistics.getPrepareStatementCount() <= 2);
+        assertTrue(meterRegistry.get("lookup.coalesced").tag("name", "books").counter().count() > 0);
+    }
+
+    @Test
+    public void testMultiGetBooksReturnsRequestOrderWithNotFoundMarkersInOneQuery() throws Exception {
+        AuthorEntity authorA = TestDataUtil.createTestAuthorA();
+        authorA.setId(null);
+        AuthorEntity authorB = TestDataUtil.createTestAuthorB();
+        authorB.setId(null);
+        BookEntity bookA = TestDataUtil.createTestBookA(authorA);
+        BookEntity bookB = TestDataUtil.createTestBookB(authorB);
+        bookService.save(bookA.getIsbn(), bookA);
+        bookService.save(bookB.getIsbn(), bookB);
+        statistics.clear();
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.post("/books/_mget")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(List.of(bookB.getIsbn(), "missing", bookA.getIsbn())))
+        ).andExpect(
+                MockMvcResultMatchers.status().isOk()
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$[0].key").value(bookB.getIsbn())
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$[0].value.author.name").value(authorB.getName())
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$[1].key").value("missing")
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$[1].found").value(false)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$[1].value").doesNotExist()
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$[2].found").value(true)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$[2].value.title").value(bookA.getTitle())
+        );
+
+        //books and their authors in one query, nothing cached yet
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void testMultiGetBooksServesCachedBooksWithoutQuery() throws Exception {
+        AuthorEntity author = TestDataUtil.createTestAuthorA();
+        author.setId(null);
+        BookEntity book = TestDataUtil.createTestBookA(author);
+        bookService.save(book.getIsbn(), book);
+
+        String keys = objectMapper.writeValueAsString(List.of(book.getIsbn(), "missing"));
+        mockMvc.perform(MockMvcRequestBuilders.post("/books/_mget").contentType(MediaType.APPLICATION_JSON).content(keys));
+        statistics.clear();
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.post("/books/_mget")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(keys)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$[0].value.author.name").value(author.getName())
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$[1].found").value(false)
+        );
+
+        //the missing isbn is cached as missing too
+        assertEquals(0, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void testMultiGetBooksWithTooManyKeysReturnsHttp400() throws Exception {
+        List<String> isbns = IntStream.rangeClosed(0, 1000).mapToObj(i -> "isbn-" + i).toList();
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.post("/books/_mget")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(isbns))
+        ).andExpect(
+                MockMvcResultMatchers.status().isBadRequest()
+        );
+    }
+
+    @Test
+    public void testFindBookAfterAuthorUpdateReturnsUpdatedAuthor() throws Exception {
+        AuthorEntity author = TestDataUtil.createTestAuthorA();
+        author.setId(null);
+        BookEntity book = TestDataUtil.createTestBookA(author);
+        BookEntity savedBook = bookService.save(book.getIsbn(), book);
+        mockMvc.perform(MockMvcRequestBuilders.get("/books/" + book.getIsbn()));
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.patch("/authors/" + savedBook.getAuthor().getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"UPDATED\"}")
+        ).andExpect(MockMvcResultMatchers.status().isOk());
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.get("/books/" + book.getIsbn())
+                        .contentType(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.author.name").value("UPDATED")
+        );
+    }
+
+    @Test
+    public void testFindBookAfterPartialUpdateReturnsUpdatedTitle() throws Exception {
+        BookEntity book = TestDataUtil.createTestBookB(null);
+        bookService.save(book.getIsbn(), book);
+        //first GET caches the serialized body
+        mockMvc.perform(MockMvcRequestBuilders.get("/books/" + book.getIsbn()))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.title").value(book.getTitle()));
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.patch("/books/" + book.getIsbn())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"title\":\"UPDATED\"}")
+        ).andExpect(MockMvcResultMatchers.status().isOk());
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.get("/books/" + book.getIsbn())
+                        .contentType(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                MockMvcResultMatchers.content().contentType(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.title").value("UPDATED")
+        );
+    }
+
+    @Test
+    public void testFindBookWithCurrentETagReturnsHttp304() throws Exception {
+        AuthorEntity author = TestDataUtil.createTestAuthorA();
+        author.setId(null);
+        BookEntity book = TestDataUtil.createTestBookA(author);
+        bookService.save(book.getIsbn(), book);
+
+        String eTag = mockMvc.perform(MockMvcRequestBuilders.get("/books/" + book.getIsbn()))
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.get("/books/" + book.getIsbn())
+                        .header("If-None-Match", eTag)
+        ).andExpect(
+                MockMvcResultMatchers.status().isNotModified()
+        ).andExpect(
+                MockMvcResultMatchers.content().string("")
+        );
+    }
+
+    @Test
+    public void testFindBookAfterAuthorUpdateChangesETag() throws Exception {
+        AuthorEntity author = TestDataUtil.createTestAuthorA();
+        author.setId(null);
+        BookEntity book = TestDataUtil.createTestBookA(author);
+        BookEntity savedBook = bookService.save(book.getIsbn(), book);
+        String eTag = mockMvc.perform(MockMvcRequestBuilders.get("/books/" + book.getIsbn()))
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.patch("/authors/" + savedBook.getAuthor().getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"UPDATED\"}")
+        );
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.get("/books/" + book.getIsbn())
+                        .header("If-None-Match", eTag)
+        ).andExpect(
+                MockMvcResultMatchers.status().isOk()
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.author.name").value("UPDATED")
+        );
+    }
+
+    @Test
+    public void testPartialUpdateBookWithCurrentIfMatchReturnsHttp200() throws Exception {
+        BookEntity book = TestDataUtil.createTestBookB(null);
+        bookService.save(book.getIsbn(), book);
+        String eTag = mockMvc.perform(MockMvcRequestBuilders.get("/books/" + book.getIsbn()))
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.patch("/books/" + book.getIsbn())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header("If-Match", eTag)
+                        .content("{\"title\":\"UPDATED\"}")
+        ).andExpect(
+                MockMvcResultMatchers.status().isOk()
+        ).andExpect(
+                MockMvcResultMatchers.header().string("ETag", "\"1\"")
+        );
+    }
+
+    @Test
+    public void testPartialUpdateBookWithStaleIfMatchReturnsHttp412() throws Exception {
+        BookEntity book = TestDataUtil.createTestBookB(null);
+        bookService.save(book.getIsbn(), book);
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.patch("/books/" + book.getIsbn())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header("If-Match", "\"5\"")
+                        .content("{\"title\":\"UPDATED\"}")
+        ).andExpect(MockMvcResultMatchers.status().isPreconditionFailed());
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/books/" + book.getIsbn()))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.title").value(book.getTitle()));
+    }
+
+    @Test
+    public void testUpdateMissingBookWithIfMatchReturnsHttp412() throws Exception {
+        BookDto bookDto = TestDataUtil.createTestBookDtoA(null);
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.put("/books/" + bookDto.getIsbn())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header("If-Match", "\"0\"")
+                        .content(objectMapper.writeValueAsString(bookDto))
+        ).andExpect(MockMvcResultMatchers.status().isPreconditionFailed());
+    }
+
+    @Test
+    public void testUpdateBookWithIfMatchAnyOnlyUpdatesAnExistingBook() throws Exception {
+        BookDto bookDto = TestDataUtil.createTestBookDtoA(null);
+
+        //* asks for a current representation, there is none
+        mockMvc.perform(
+                MockMvcRequestBuilders.put("/books/" + bookDto.getIsbn())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header("If-Match", "*")
+                        .content(objectMapper.writeValueAsString(bookDto))
+        ).andExpect(MockMvcResultMatchers.status().isPreconditionFailed());
+        mockMvc.perform(MockMvcRequestBuilders.get("/books/" + bookDto.getIsbn()))
+                .andExpect(MockMvcResultMatchers.status().isNotFound());
+        mockMvc.perform(
+                MockMvcRequestBuilders.patch("/books/" + bookDto.getIsbn())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header("If-Match", "*")
+                        .content("{\"title\":\"UPDATED\"}")
+        ).andExpect(MockMvcResultMatchers.status().isPreconditionFailed());
+
+        bookService.save(bookDto.getIsbn(), TestDataUtil.createTestBookA(null));
+        mockMvc.perform(
+                MockMvcRequestBuilders.put("/books/" + bookDto.getIsbn())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header("If-Match", "*")
+                        .content(objectMapper.writeValueAsString(bookDto))
+        ).andExpect(MockMvcResultMatchers.status().isOk());
+    }
+
+    @Test
+    public void testPartialUpdateBookWithETagFromBeforeAnAuthorChangeReturnsHttp412() throws Exception {
+        AuthorEntity author = TestDataUtil.createTestAuthorA();
+        author.setId(null);
+        BookEntity book = bookService.save("111", TestDataUtil.createTestBookA(author));
+        String eTag = mockMvc.perform(MockMvcRequestBuilders.get("/books/111"))
+                .andReturn().getResponse().getHeader("ETag");
+        mockMvc.perform(
+                MockMvcRequestBuilders.patch("/authors/" + book.getAuthor().getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"UPDATED\"}")
+        ).andExpect(MockMvcResultMatchers.status().isOk());
+
+        //same book version, the author part of the tag is stale
+        mockMvc.perform(
+                MockMvcRequestBuilders.patch("/books/111")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header("If-Match", eTag)
+                        .content("{\"title\":\"UPDATED\"}")
+        ).andExpect(MockMvcResultMatchers.status().isPreconditionFailed());
+
+        String current = mockMvc.perform(MockMvcRequestBuilders.get("/books/111"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.title").value(book.getTitle()))
+                .andReturn().getResponse().getHeader("ETag");
+        mockMvc.perform(
+                MockMvcRequestBuilders.patch("/books/111")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header("If-Match", current)
+                        .content("{\"title\":\"UPDATED\"}")
+        ).andExpect(MockMvcResultMatchers.status().isOk());
+    }
+
+    @Test
+    public void testFindBookAfterDeleteReturnsHttp404() throws Exception {
+        BookEntity book = TestDataUtil.createTestBookB(null);
+        bookService.save(book.getIsbn(), book);
+        mockMvc.perform(MockMvcRequestBuilders.get("/books/" + book.getIsbn()))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+
+        mockMvc.perform(MockMvcRequestBuilders.delete("/books/" + book.getIsbn()));
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.get("/books/" + book.getIsbn())
+                        .contentType(MediaType.APPLICATION_JSON)
+        ).andExpect(MockMvcResultMatchers.status().isNotFound());
+    }
+
+    @Test
+    public void testFindBookReturnsHttp200IfBookExists() throws Exception {
+        BookEntity book = TestDataUtil.createTestBookB(null);
+        bookService.save(book.getIsbn(), book);
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.get("/books/" + book.getIsbn())
+                        .contentType(MediaType.APPLICATION_JSON)
+        ).andExpect(MockMvcResultMatchers.status().isOk());
+    }
+
+    @Test
+    public void testFindBookReturnsBookIfBookExists() throws Exception {
+        BookEntity book = TestDataUtil.createTestBookB(null);
+        bookService.save(book.getIsbn(), book);
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.get("/books/" + book.getIsbn())
+                        .contentType(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.isbn").value(book.getIsbn())
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.title").value(book.getTitle())
+        );
+    }
+
+    @Test
+    public void testPartialUpdateExistingBookReturnsHttp200() throws Exception{
+        BookEntity bookEntity = TestDataUtil.createTestBookB(null);
+        BookEntity savedBookEntity = bookService.save(bookEntity.getIsbn(), bookEntity);
+
+        BookDto bookDto = TestDataUtil.createTestBookDtoA(null);
+        String bookJson = objectMapper.writeValueAsString(bookDto);
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.patch("/books/" + savedBookEntity.getIsbn())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(bookJson)
+        ).andExpect(
+                MockMvcResultMatchers.status().isOk()
+        );
+    }
+
+    @Test
+    public void testPartialUpdateExistingBookReturnsUpdatedBook() throws Exception{
+        BookEntity bookEntity = TestDataUtil.createTestBookC(null);
+        BookEntity savedBookEntity = bookService.save(bookEntity.getIsbn(), bookEntity);
+
+        BookDto bookDto = TestDataUtil.createTestBookDtoA(null);
+        bookDto.setTitle("Testing Patch");
+        String bookJson = objectMapper.writeValueAsString(bookDto);
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.patch("/books/" + savedBookEntity.getIsbn())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(bookJson)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.isbn").value(savedBookEntity.getIsbn())
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.title").value("Testing Patch")
+        );
+    }
+
+    @Test
+    public void testPartialUpdateBookReturnsAuthor() throws Exception{
+        AuthorEntity authorEntity = TestDataUtil.createTestAuthorA();
+        authorEntity.setId(null);
+        BookEntity bookEntity = TestDataUtil.createTestBookA(authorEntity);
+        BookEntity savedBookEntity = bookService.save(bookEntity.getIsbn(), bookEntity);
+
+        BookDto bookDto = BookDto.builder().title("Testing Patch").build();
+        String bookJson = objectMapper.writeValueAsString(bookDto);
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.patch("/books/" + savedBookEntity.getIsbn())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(bookJson)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.title").value("Testing Patch")
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.author.id").value(savedBookEntity.getAuthor().getId())
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.author.name").value(authorEntity.getName())
+        );
+    }
+
+    @Test
+    public void testPartialUpdateMissingBookReturnsHttp404() throws Exception{
+        BookDto bookDto = TestDataUtil.createTestBookDtoA(null);
+        String bookJson = objectMapper.writeValueAsString(bookDto);
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.patch("/books/missing")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(bookJson)
+        ).andExpect(
+                MockMvcResultMatchers.status().isNotFound()
+        );
+    }
+
+    @Test
+    public void testPartialUpdateMissingBookLeavesNestedAuthorAlone() throws Exception{
+        AuthorEntity authorEntity = TestDataUtil.createTestAuthorA();
+        authorEntity.setId(null);
+        BookEntity savedBookEntity = bookService.save("999", TestDataUtil.createTestBookA(authorEntity));
+        Long authorId = savedBookEntity.getAuthor().getId();
+
+        AuthorDto renamedAuthor = AuthorDto.builder().id(authorId).name("Renamed").age(1).build();
+        AuthorDto newAuthor = AuthorDto.builder().name("New author").age(2).build();
+        for (AuthorDto authorDto : List.of(renamedAuthor, newAuthor)) {
+            mockMvc.perform(
+                    MockMvcRequestBuilders.patch("/books/missing")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(objectMapper.writeValueAsString(TestDataUtil.createTestBookDtoA(authorDto)))
+            ).andExpect(
+                    MockMvcResultMatchers.status().isNotFound()
+            );
+        }
+
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT count(*) FROM authors", Integer.class));
+        assertEquals(authorEntity.getName(),
+                jdbcTemplate.queryForObject("SELECT name FROM authors WHERE id = ?", String.class, authorId));
+    }
+
+    @Test
+    public void testDeleteBookEvictsItsCachedAuthor() throws Exception{
+        AuthorEntity authorEntity = TestDataUtil.createTestAuthorA();
+        authorEntity.setId(null);
+        BookEntity savedBookEntity = bookService.save("999", TestDataUtil.createTestBookA(authorEntity));
+        String authorPath = "/authors/" + savedBookEntity.getAuthor().getId();
+
+        //cached by the first GET
+        mockMvc.perform(MockMvcRequestBuilders.get(authorPath))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+        mockMvc.perform(MockMvcRequestBuilders.delete("/books/" + savedBookEntity.getIsbn()))
+                .andExpect(MockMvcResultMatchers.status().isNoContent());
+
+        //deleted with the book by CascadeType.ALL
+        mockMvc.perform(MockMvcRequestBuilders.get(authorPath))
+                .andExpect(MockMvcResultMatchers.status().isNotFound());
+    }
+
+    @Test
+    public void testDeleteBookReturnsHttp204() throws Exception{
+        BookEntity bookEntity = TestDataUtil.createTestBookA(null);
+        BookEntity savedBookEntity = bookService.save(bookEntity.getIsbn(), bookEntity);
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.delete("/books/" + savedBookEntity.getIsbn())
+                        .contentType(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                MockMvcResultMatchers.status().isNoContent()
+        );
+    }
+
+    @Test
+    public void testDeleteAllBooksReturnsHttp204() throws Exception{
+        mockMvc.perform(
+                MockMvcRequestBuilders.delete("/books")
+                        .contentType(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                MockMvcResultMatchers.status().isNoContent()
+        );
+    }
+
+    @Test
+    public void testDeleteAllBooksRemovesTheirAuthorsWithoutLoadingRows() throws Exception {
+        AuthorEntity authorA = TestDataUtil.createTestAuthorA();
+        authorA.setId(null);
+        BookEntity bookA = bookService.save("111", TestDataUtil.createTestBookA(authorA));
+        bookService.save("222", TestDataUtil.createTestBookB(bookA.getAuthor()));
+        bookService.save("333", TestDataUtil.createTestBookC(null));
+        AuthorEntity authorB = TestDataUtil.createTestAuthorB();
+        authorB.setId(null);
+        String authorBJson = objectMapper.writeValueAsString(authorB);
+        mockMvc.perform(
+                MockMvcRequestBuilders.post("/authors").contentType(MediaType.APPLICATION_JSON).content(authorBJson)
+        ).andExpect(MockMvcResultMatchers.status().isCreated());
+
+        statistics.clear();
+        mockMvc.perform(
+                MockMvcRequestBuilders.delete("/books")
+        ).andExpect(
+                MockMvcResultMatchers.status().isNoContent()
+        );
+        assertEquals(0, statistics.getEntityLoadCount());
+
+        //the author without books stays
+        mockMvc.perform(
+                MockMvcRequestBuilders.get("/authors")
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.totalElements").value(1)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.content[0].name").value(authorB.getName())
+        );
+        mockMvc.perform(MockMvcRequestBuilders.get("/books/111"))
+                .andExpect(MockMvcResultMatchers.status().isNotFound());
+        mockMvc.perform(MockMvcRequestBuilders.get("/stats"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.books").value(0))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.authors").value(1));
+    }
+
+    @Test
+    public void testDeleteBooksByAuthorReturnsRowCounts() throws Exception {
+        AuthorEntity authorA = TestDataUtil.createTestAuthorA();
+        authorA.setId(null);
+        AuthorEntity authorB = TestDataUtil.createTestAuthorB();
+        authorB.setId(null);
+        BookEntity bookA = bookService.save("111", TestDataUtil.createTestBookA(authorA));
+        bookService.save("222", TestDataUtil.createTestBookB(bookA.getAuthor()));
+        BookEntity bookC = bookService.save("333", TestDataUtil.createTestBookC(authorB));
+        Long authorAId = bookA.getAuthor().getId();
+        //cached before the delete
+        mockMvc.perform(MockMvcRequestBuilders.get("/books/111"))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+
+        statistics.clear();
+        mockMvc.perform(
+                MockMvcRequestBuilders.delete("/books?authorId=" + authorAId)
+        ).andExpect(
+                MockMvcResultMatchers.status().isOk()
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.books").value(2)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.authors").value(1)
+        );
+        assertEquals(0, statistics.getEntityLoadCount());
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/books/111"))
+                .andExpect(MockMvcResultMatchers.status().isNotFound());
+        mockMvc.perform(MockMvcRequestBuilders.get("/authors/" + authorAId))
+                .andExpect(MockMvcResultMatchers.status().isNotFound());
+        mockMvc.perform(MockMvcRequestBuilders.get("/books/333"))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+        mockMvc.perform(MockMvcRequestBuilders.get("/books/suggest?prefix=book"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].key").value(bookC.getIsbn()));
+        mockMvc.perform(MockMvcRequestBuilders.get("/stats"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.books").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.authors").value(1));
+    }
+
+    @Test
+    public void testDeleteBooksOverSeveralChunksRemovesTheirAuthorOnce() throws Exception {
+        AuthorEntity authorA = TestDataUtil.createTestAuthorA();
+        authorA.setId(null);
+        BookEntity bookA = bookService.save("111", TestDataUtil.createTestBookA(authorA));
+        bookService.save("222", TestDataUtil.createTestBookB(bookA.getAuthor()));
+        bookService.save("333", TestDataUtil.createTestBookC(bookA.getAuthor()));
+        Long authorAId = bookA.getAuthor().getId();
+
+        //bulk.delete-chunk-size=2, the author's last book goes with the second chunk
+        mockMvc.perform(
+                MockMvcRequestBuilders.delete("/books?authorId=" + authorAId)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.books").value(3)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.authors").value(1)
+        );
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/authors/" + authorAId))
+                .andExpect(MockMvcResultMatchers.status().isNotFound());
+        mockMvc.perform(MockMvcRequestBuilders.get("/stats"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.books").value(0))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.authors").value(0));
+    }
+
+    @Test
+    public void testDeleteBooksByTitleKeepsAuthorWithOtherBooks() throws Exception {
+        AuthorEntity authorA = TestDataUtil.createTestAuthorA();
+        authorA.setId(null);
+        BookEntity bookA = bookService.save("111", TestDataUtil.createTestBookA(authorA));
+        BookEntity other = TestDataUtil.createTestBookB(bookA.getAuthor());
+        other.setTitle("Other");
+        bookService.save("222", other);
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.delete("/books?title=Book")
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.books").value(1)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.authors").value(0)
+        );
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/authors/" + bookA.getAuthor().getId() + "/stats"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.books").value(1));
+    }
+
+    @Test
+    public void testPrometheusScrapeBreaksDownBookListing() throws Exception {
+        AuthorEntity authorA = TestDataUtil.createTestAuthorA();
+        authorA.setId(null);
+        bookService.save("111", TestDataUtil.createTestBookA(authorA));
+        mockMvc.perform(MockMvcRequestBuilders.get("/books"))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+        mockMvc.perform(MockMvcRequestBuilders.get("/books/111"))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+
+        String scrape = mockMvc.perform(MockMvcRequestBuilders.get("/actuator/prometheus"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        List<String> expected = List.of(
+                "http_server_requests_seconds_bucket{",
+                "http_server_requests_statements_count{method=\"GET\",uri=\"/books\"} 1",
+                "http_server_requests_sql_seconds_count{method=\"GET\",uri=\"/books\"}",
+                "service_calls_seconds_count{class=\"com.training.restApi.services.impl.BookServiceImpl\"",
+                "mapper_calls_seconds_count{mapper=\"BookMapStructMapperImpl\",method=\"mapTo\"}",
+                "spring_data_repository_invocations_seconds_count{",
+                "jdbc_statements_seconds_count{verb=\"select\"}",
+                "hikaricp_connections_acquire_seconds_count{",
+                "cache_gets_total{cache=\"books\"",
+                "hibernate_second_level_cache_requests_total{",
+                "hibernate_cache_query_requests_total{");
+        for (String line : expected) {
+            assertTrue(scrape.contains(line), line + " missing from the scrape");
+        }
+    }
+
+    @Test
+    public void testPrometheusScrapeFilesWritesRunAsQueriesUnderTheirWrite() throws Exception {
+        bookService.save("111", TestDataUtil.createTestBookA(null));
+        //SELECT ... FROM FINAL TABLE (UPDATE ...) and SELECT ... FROM OLD TABLE (DELETE ...)
+        mockMvc.perform(
+                MockMvcRequestBuilders.patch("/books/111")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"title\":\"Renamed\"}")
+        ).andExpect(MockMvcResultMatchers.status().isOk());
+        mockMvc.perform(MockMvcRequestBuilders.delete("/books?title=Renamed"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.books").value(1));
+
+        String scrape = mockMvc.perform(MockMvcRequestBuilders.get("/actuator/prometheus"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        for (String line : List.of("jdbc_statements_seconds_count{verb=\"update\"} 1",
+                "jdbc_statements_seconds_count{verb=\"delete\"} 1")) {
+            assertTrue(scrape.contains(line), line + " missing from the scrape");
+        }
+    }
+
+    @Test
+    public void testRequestOverItsQueryBudgetIsCountedAndFailsInStrictMode() throws Exception {
+        AuthorEntity authorA = TestDataUtil.createTestAuthorA();
+        authorA.setId(null);
+        bookService.save("111", TestDataUtil.createTestBookA(authorA));
+        //the listing runs one select, a budget of none is over on count and on repeats
+        queryGuard.getEndpoints().put("/books", new QueryGuardProperties.Budget(0, 0, Duration.ofSeconds(5)));
+
+        QueryBudgetExceededException exception = assertThrows(QueryBudgetExceededException.class,
+                () -> mockMvc.perform(MockMvcRequestBuilders.get("/books")));
+
+        assertTrue(exception.getMessage().startsWith("GET /books ran "), exception.getMessage());
+        assertEquals(1.0, meterRegistry.get("http.server.requests.query-budget.exceeded")
+                .tags("method", "GET", "uri", "/books", "reason", "statements").counter().count());
+        assertEquals(1.0, meterRegistry.get("http.server.requests.query-budget.exceeded")
+                .tags("method", "GET", "uri", "/books", "reason", "repeated-statement").counter().count());
+        //the other endpoints keep the default budget
+        mockMvc.perform(MockMvcRequestBuilders.get("/books/111"))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+    }
+
+    @Test
+    public void testAsyncBookWritesSubmittedTogetherAreFlushedAsOneGroup() throws Exception {
+        List<WriteTicket> tickets = submitAsyncBooks(20);
+
+        for (WriteTicket ticket : tickets) {
+            WriteTicket written = awaitWrite(ticket.getId());
+            assertEquals(WriteTicket.Status.CREATED, written.getStatus());
+            assertEquals(ticket.getKey(), written.getKey());
+        }
+        assertEquals(1, meterRegistry.get("write.behind.flush.size").summary().count());
+        assertEquals(20.0, meterRegistry.get("write.behind.flush.size").summary().totalAmount());
+        //each nested author without id is created, as 20 synchronous PUTs would create them
+        mockMvc.perform(MockMvcRequestBuilders.get("/stats"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.books").value(20))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.authors").value(20));
+    }
+
+    @Test
+    public void testAsyncPutBookReturnsHttp202UnlessConditional() throws Exception {
+        String bookJson = objectMapper.writeValueAsString(TestDataUtil.createTestBookDtoA(null));
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.put("/books/123abc")
+                        .header("Prefer", "respond-async")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(bookJson)
+        ).andExpect(
+                MockMvcResultMatchers.status().isAccepted()
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.key").value("123abc")
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.type").value("BOOK")
+        );
+
+        //If-Match is checked in the request, against a book that does not exist yet -> 412
+        mockMvc.perform(
+                MockMvcRequestBuilders.put("/books/321abc")
+                        .header("Prefer", "respond-async")
+                        .header("If-Match", "\"0\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(bookJson)
+        ).andExpect(
+                MockMvcResultMatchers.status().isPreconditionFailed()
+        );
+    }
+
+    @Test
+    public void testShutdownFlushesQueuedWritesThenRejectsNewOnes() throws Exception {
+        List<WriteTicket> tickets = submitAsyncBooks(20);
+
+        //what a clean shutdown of the context does, the queue is drained before it returns
+        writeBehindService.stop();
+
+        assertEquals(20, jdbcTemplate.queryForObject("SELECT count(*) FROM books", Integer.class));
+        for (WriteTicket ticket : tickets) {
+            assertEquals(WriteTicket.Status.CREATED, writeBehindService.status(ticket.getId()).orElseThrow().getStatus());
+        }
+        mockMvc.perform(
+                MockMvcRequestBuilders.put("/books/123abc")
+                        .header("Prefer", "respond-async")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(TestDataUtil.createTestBookDtoA(null)))
+        ).andExpect(
+                MockMvcResultMatchers.status().isServiceUnavailable()
+        ).andExpect(
+                MockMvcResultMatchers.header().string("Retry-After", "1")
+        );
+    }
+
+    @Test
+    public void testListingsReadFromAReplicaAndWritesGoToThePrimary() throws Exception {
+        //takes out replica-1, nothing listens behind it
+        replicaPool.checkHealth();
+        assertEquals(1.0, meterRegistry.get("db.replicas.healthy").gauge().value());
+
+        BookDto bookDto = TestDataUtil.createTestBookDtoA(null);
+        mockMvc.perform(
+                MockMvcRequestBuilders.put("/books/" + bookDto.getIsbn())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(bookDto))
+        ).andExpect(MockMvcResultMatchers.status().isCreated());
+        double replicaReads = readConnections("replica-0", "replica");
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.get("/books")
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.content[0].isbn").value(bookDto.getIsbn())
+        );
+        mockMvc.perform(MockMvcRequestBuilders.get("/authors"))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+
+        //one read-only transaction per listing, both on the stand-in
+        assertEquals(replicaReads + 2, readConnections("replica-0", "replica"));
+        assertEquals(0.0, readConnections("replica-1", "replica"));
+    }
+
+    @Test
+    public void testClientThatWroteReadsFromThePrimaryWithinTheStickyWindow() throws Exception {
+        replicaPool.checkHealth();
+        BookDto bookDto = TestDataUtil.createTestBookDtoA(null);
+        Cookie sticky = mockMvc.perform(
+                MockMvcRequestBuilders.put("/books/" + bookDto.getIsbn())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(bookDto))
+        ).andExpect(
+                MockMvcResultMatchers.cookie().maxAge("read-your-writes", 10)
+        ).andReturn().getResponse().getCookie("read-your-writes");
+        double replicaReads = readConnections("replica-0", "replica");
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.get("/books").cookie(sticky)
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.content[0].isbn").value(bookDto.getIsbn())
+        ).andExpect(
+                //reads alone don't extend the window
+                MockMvcResultMatchers.cookie().doesNotExist("read-your-writes")
+        );
+        assertEquals(1.0, readConnections("primary", "read-your-writes"));
+        assertEquals(replicaReads, readConnections("replica-0", "replica"));
+
+        //other clients, and a cookie whose window is over, read from the replica
+        //(other page sizes, the page above is in the query cache now)
+        mockMvc.perform(MockMvcRequestBuilders.get("/books?size=5"));
+        mockMvc.perform(MockMvcRequestBuilders.get("/books?size=6")
+                .cookie(new Cookie("read-your-writes", Long.toString(System.currentTimeMillis() - 1))));
+        assertEquals(1.0, readConnections("primary", "read-your-writes"));
+        assertEquals(replicaReads + 2, readConnections("replica-0", "replica"));
+    }
+
+    @Test
+    public void testWriteThatChangedNothingKeepsTheClientOnTheReplicas() throws Exception {
+        replicaPool.checkHealth();
+        //read-write transaction, its UPDATE matches no row
+        mockMvc.perform(
+                MockMvcRequestBuilders.patch("/books/missing")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(BookDto.builder().title("Nothing").build()))
+        ).andExpect(
+                MockMvcResultMatchers.status().isNotFound()
+        ).andExpect(
+                MockMvcResultMatchers.cookie().doesNotExist("read-your-writes")
+        );
+        double replicaReads = readConnections("replica-0", "replica");
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/books"))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+        assertEquals(replicaReads + 1, readConnections("replica-0", "replica"));
+    }
+
+    @Test
+    public void testReadsFallBackToThePrimaryWhileNoReplicaIsHealthy() throws Exception {
+        bookService.save("111", TestDataUtil.createTestBookA(null));
+        //below zero, so even the stand-in counts as lagging
+        replicaProperties.setMaxLag(Duration.ofNanos(-1));
+        replicaPool.checkHealth();
+        assertEquals(0.0, meterRegistry.get("db.replicas.healthy").gauge().value());
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.get("/books")
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.content[0].isbn").value("111")
+        );
+        assertEquals(1.0, readConnections("primary", "no-healthy-replica"));
+
+        //back in rotation with the next check it passes
+        replicaProperties.setMaxLag(Duration.ZERO);
+        replicaPool.checkHealth();
+        double replicaReads = readConnections("replica-0", "replica");
+        mockMvc.perform(MockMvcRequestBuilders.get("/books?size=5"))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+        assertEquals(replicaReads + 1, readConnections("replica-0", "replica"));
+        assertEquals(1.0, readConnections("primary", "no-healthy-replica"));
+    }
+
+    @Test
+    public void testReplicaReadsDoNotWaitForPrimaryPermits() throws Exception {
+        replicaPool.checkHealth();
+        //every db.max-concurrency permit of the primary, the statements make the lazy connections physical
+        List<Connection> held = new ArrayList<>();
+        try {
+            for (int i = 0; i < 10; i++) {
+                Connection connection = jdbcTemplate.getDataSource().getConnection();
+                held.add(connection);
+                connection.createStatement().close();
+            }
+            double replicaReads = readConnections("replica-0", "replica");
+
+            mockMvc.perform(MockMvcRequestBuilders.get("/books"))
+                    .andExpect(MockMvcResultMatchers.status().isOk());
+            assertEquals(replicaReads + 1, readConnections("replica-0", "replica"));
+        } finally {
+            for (Connection connection : held) {
+                connection.close();
+            }
+        }
+    }
+
+    @Test
+    public void testPageReadFromALaggingReplicaIsNotServedPastARecentWrite() throws Exception {
+        replicaPool.checkHealth();
+        //the stand-in is never behind, but its reads are dated as if it could be a minute behind
+        replicaProperties.setMaxLag(Duration.ofMinutes(1));
+        bookService.save("111", TestDataUtil.createTestBookA(null));
+        mockMvc.perform(MockMvcRequestBuilders.get("/books"));
+        statistics.clear();
+
+        mockMvc.perform(
+                MockMvcRequestBuilders.get("/books")
+        ).andExpect(
+                MockMvcResultMatchers.jsonPath("$.content[0].isbn").value("111")
+        );
+        //cached, but older than the write a minute-behind replica may not have had, so read again
+        assertEquals(0, statistics.getQueryCacheHitCount());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    //connections of read-only transactions that went to target, for reason
+    private double readConnections(String target, String reason) {
+        Counter counter = meterRegistry.find("db.read.connections").tags("target", target, "reason", reason).counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    //books async-0 .. async-<count - 1> of a new author, queued back to back
+    private List<WriteTicket> submitAsyncBooks(int count) {
+        List<WriteTicket> tickets = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            AuthorEntity author = TestDataUtil.createTestAuthorA();
+            author.setId(null);
+            BookEntity book = BookEntity.builder().title("Async " + i).author(author).build();
+            tickets.add(writeBehindService.submitBook("async-" + i, book).orElseThrow());
+        }
+        return tickets;
+    }
+
+    //polls GET /writes/{id} until the flush of the write has run (or 10 seconds have passed)
+    private WriteTicket awaitWrite(String id) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (true) {
+            String json = mockMvc.perform(MockMvcRequestBuilders.get("/writes/" + id))
+                    .andExpect(MockMvcResultMatchers.status().isOk())
+                    .andReturn().getResponse().getContentAsString();
+            WriteTicket ticket = objectMapper.readValue(json, WriteTicket.class);
+            if (ticket.getStatus() != WriteTicket.Status.QUEUED || System.nanoTime() > deadline) {
+                return ticket;
+            }
+            Thread.sleep(20);
+        }
+    }
 }